@@ -0,0 +1,22 @@
+package com.parkinglot12.bench;
+
+import java.util.Arrays;
+
+/**
+ * Entry point of benchmarks.jar => the JMH command line, with the GC profiler
+ * added unless a profiler is named, so every result comes with
+ * gc.alloc.rate.norm, the bytes allocated per operation
+ *
+ * Example => java -jar benchmarks/target/benchmarks.jar Query -p numberOfSlots=1000000
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        if (!Arrays.asList(args).contains("-prof")) {
+            args = Arrays.copyOf(args, args.length + 2);
+            args[args.length - 2] = "-prof";
+            args[args.length - 1] = "gc";
+        }
+        org.openjdk.jmh.Main.main(args);
+    }
+}
@@ -0,0 +1,95 @@
+package com.parkinglot12.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.parkinglot12.domain.LeaveReceipt;
+
+/**
+ * Leave of one vehicle => through ParkingLotService.leave, leaveAll and a
+ * Leave command line.
+ *
+ * Every invocation lets VEHICLES vehicles leave, one operation each, which
+ * were parked outside the timer. The lot starts every invocation at its
+ * occupancy and ends it VEHICLES vehicles short of it.
+ */
+public class LeaveBenchmark extends LotBenchmark {
+    static final int VEHICLES = ParkBenchmark.VEHICLES;
+    static final int VEHICLES_PER_CALL = ParkBenchmark.VEHICLES_PER_CALL;
+
+    private String[] spares;
+    private int[] driverAges;
+    private int[] slotNumbers;
+    private int[][] callSlotNumbers;
+    private LeaveReceipt[] receipts;
+    private int[] results;
+    private String[] leaveLines;
+
+    @Override
+    int parkedAtStart() {
+        if (numberOfSlots < VEHICLES) {
+            throw new IllegalArgumentException("Lot cannot be smaller than " + VEHICLES + " slots");
+        }
+        return Math.max(0, super.parkedAtStart() - VEHICLES);
+    }
+
+    @Override
+    int spareCount() {
+        return VEHICLES;
+    }
+
+    @Override
+    void prepare(int parked) {
+        spares = new String[VEHICLES];
+        driverAges = new int[VEHICLES];
+        for (int i = 0; i < VEHICLES; i++) {
+            spares[i] = registrationNumbers[parked + i];
+            driverAges[i] = driverAge(parked + i);
+        }
+        slotNumbers = new int[VEHICLES];
+        callSlotNumbers = new int[VEHICLES / VEHICLES_PER_CALL][VEHICLES_PER_CALL];
+        leaveLines = new String[VEHICLES];
+        receipts = new LeaveReceipt[VEHICLES_PER_CALL];
+        for (int i = 0; i < receipts.length; i++) {
+            receipts[i] = new LeaveReceipt();
+        }
+        results = new int[VEHICLES_PER_CALL];
+    }
+
+    @Setup(Level.Invocation)
+    public void parkSpares() {
+        for (int i = 0; i < VEHICLES; i++) {
+            int slotNumber = parkingLot.park(spares[i], driverAges[i]);
+            slotNumbers[i] = slotNumber;
+            callSlotNumbers[i / VEHICLES_PER_CALL][i % VEHICLES_PER_CALL] = slotNumber;
+            leaveLines[i] = lotPrefix + "Leave " + slotNumber;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VEHICLES)
+    public void leave(Blackhole blackhole) {
+        for (int slotNumber : slotNumbers) {
+            blackhole.consume(parkingLot.leave(slotNumber, receipts[0]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VEHICLES)
+    public void leaveAll(Blackhole blackhole) {
+        for (int[] slotNumbersOfCall : callSlotNumbers) {
+            blackhole.consume(parkingLot.leaveAll(slotNumbersOfCall, receipts, results));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VEHICLES)
+    public void executeLeave(Blackhole blackhole) {
+        for (String line : leaveLines) {
+            blackhole.consume(execute(line));
+        }
+    }
+}
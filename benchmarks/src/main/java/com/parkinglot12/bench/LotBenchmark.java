@@ -0,0 +1,111 @@
+package com.parkinglot12.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.parkinglot12.service.CommandExecutor;
+import com.parkinglot12.service.ParkingLotService;
+import com.parkinglot12.service.ResponseEncoder;
+
+/**
+ * One lot of numberOfSlots slots filled to an occupancy level, shared by the
+ * benchmarks. The lot is created through the CommandExecutor, so the text
+ * path benchmarks address it with their "Lot <lotId>" prefix.
+ *
+ * The 10M slot lots need a bigger heap than the default => -jvmArgs -Xmx4g
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class LotBenchmark {
+    static final int MIN_AGE = 18;
+    static final int MAX_AGE = 80;
+    // lots of one JVM, when run without forks
+    private static final AtomicInteger LOTS = new AtomicInteger();
+
+    @Param({ "1000", "100000", "10000000" })
+    public int numberOfSlots;
+
+    @Param({ "0.5", "0.9", "0.99" })
+    public double occupancy;
+
+    ParkingLotService parkingLot;
+    CommandExecutor commandExecutor;
+    // "Lot <lotId> ", starts every command line
+    String lotPrefix;
+    ResponseEncoder response;
+    // registrationNumbers[i] is parked by the driver of age driverAge(i)
+    String[] registrationNumbers;
+
+    @Setup(Level.Trial)
+    public void createLot() {
+        String lotId = "bench-" + LOTS.incrementAndGet();
+        commandExecutor = CommandExecutor.getInstance();
+        lotPrefix = "Lot " + lotId + " ";
+        commandExecutor.execute(lotPrefix + "Create_parking_lot " + numberOfSlots);
+        parkingLot = commandExecutor.getParkingLot(lotId);
+        response = new ResponseEncoder();
+
+        int parked = parkedAtStart();
+        registrationNumbers = new String[parked + spareCount()];
+        for (int i = 0; i < registrationNumbers.length; i++) {
+            registrationNumbers[i] = "KA-01-" + i;
+        }
+        for (int i = 0; i < parked; i++) {
+            parkingLot.park(registrationNumbers[i], driverAge(i));
+        }
+        prepare(parked);
+    }
+
+    /**
+     * @return number of vehicles parked before the first measurement
+     */
+    int parkedAtStart() {
+        return (int) (numberOfSlots * occupancy);
+    }
+
+    /**
+     * @return number of registration numbers kept for vehicles parked while
+     *         measuring
+     */
+    int spareCount() {
+        return 0;
+    }
+
+    /**
+     * Builds the inputs of the benchmarks once the lot is filled
+     *
+     * @param parked => registrationNumbers[0, parked) are parked
+     */
+    abstract void prepare(int parked);
+
+    static int driverAge(int i) {
+        return MIN_AGE + i % MAX_AGE;
+    }
+
+    /**
+     * Runs one command line the way a gate terminal would
+     *
+     * @return length of the result, so the JIT cannot drop the line
+     */
+    int execute(String line) {
+        response.reset();
+        commandExecutor.execute(line, response);
+        return response.length();
+    }
+}
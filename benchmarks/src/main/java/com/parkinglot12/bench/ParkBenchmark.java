@@ -0,0 +1,99 @@
+package com.parkinglot12.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.parkinglot12.domain.LeaveReceipt;
+
+/**
+ * Park of one vehicle => through ParkingLotService.park, parkAll and a Park
+ * command line.
+ *
+ * Every invocation parks VEHICLES vehicles, one operation each, and they
+ * leave again outside the timer. The lot starts every invocation VEHICLES
+ * vehicles short of its occupancy and ends it at its occupancy.
+ */
+public class ParkBenchmark extends LotBenchmark {
+    static final int VEHICLES = 100;
+    // vehicles per parkAll call, as at a gate at shift change
+    static final int VEHICLES_PER_CALL = 20;
+
+    private String[] spares;
+    private int[] driverAges;
+    private String[][] callRegistrationNumbers;
+    private int[][] callDriverAges;
+    private int[] results;
+    private String[] parkLines;
+    private LeaveReceipt receipt;
+
+    @Override
+    int parkedAtStart() {
+        if (numberOfSlots < VEHICLES) {
+            throw new IllegalArgumentException("Lot cannot be smaller than " + VEHICLES + " slots");
+        }
+        return Math.max(0, super.parkedAtStart() - VEHICLES);
+    }
+
+    @Override
+    int spareCount() {
+        return VEHICLES;
+    }
+
+    @Override
+    void prepare(int parked) {
+        spares = new String[VEHICLES];
+        driverAges = new int[VEHICLES];
+        parkLines = new String[VEHICLES];
+        for (int i = 0; i < VEHICLES; i++) {
+            spares[i] = registrationNumbers[parked + i];
+            driverAges[i] = driverAge(parked + i);
+            parkLines[i] = lotPrefix + "Park " + spares[i] + " driver_age " + driverAges[i];
+        }
+        int calls = VEHICLES / VEHICLES_PER_CALL;
+        callRegistrationNumbers = new String[calls][VEHICLES_PER_CALL];
+        callDriverAges = new int[calls][VEHICLES_PER_CALL];
+        for (int i = 0; i < VEHICLES; i++) {
+            callRegistrationNumbers[i / VEHICLES_PER_CALL][i % VEHICLES_PER_CALL] = spares[i];
+            callDriverAges[i / VEHICLES_PER_CALL][i % VEHICLES_PER_CALL] = driverAges[i];
+        }
+        results = new int[VEHICLES_PER_CALL];
+        receipt = new LeaveReceipt();
+    }
+
+    @TearDown(Level.Invocation)
+    public void leaveSpares() {
+        for (String spare : spares) {
+            int slotNumber = parkingLot.findSlotNumber(spare);
+            if (slotNumber > 0) {
+                parkingLot.leave(slotNumber, receipt);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VEHICLES)
+    public void park(Blackhole blackhole) {
+        for (int i = 0; i < VEHICLES; i++) {
+            blackhole.consume(parkingLot.park(spares[i], driverAges[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VEHICLES)
+    public void parkAll(Blackhole blackhole) {
+        for (int call = 0; call < callRegistrationNumbers.length; call++) {
+            blackhole.consume(parkingLot.parkAll(callRegistrationNumbers[call], callDriverAges[call], results));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VEHICLES)
+    public void executePark(Blackhole blackhole) {
+        for (String line : parkLines) {
+            blackhole.consume(execute(line));
+        }
+    }
+}
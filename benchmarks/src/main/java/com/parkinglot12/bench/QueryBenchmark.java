@@ -0,0 +1,182 @@
+package com.parkinglot12.bench;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import com.parkinglot12.domain.StatusSink;
+
+/**
+ * Every query command => through ParkingLotService and through its command
+ * line, on a lot held at its occupancy.
+ *
+ * Each call asks for the next of INPUTS random registration numbers, ages or
+ * slot numbers, drawn once per trial. An age range spans two ages, so at 80
+ * ages a range listing holds about 1 in 40 of the parked vehicles. The
+ * maximum stay is an hour and no vehicle reaches it, so Overstayed_vehicles
+ * measures the check of an empty list.
+ */
+public class QueryBenchmark extends LotBenchmark {
+    private static final int INPUTS = 1024;
+    private static final int PAGE_SIZE = 100;
+
+    private String[] registrationNumberInputs;
+    private int[] ageInputs;
+    private int[] slotNumberInputs;
+    private String[] slotNumberLines;
+    private String[] slotNumbersForAgeLines;
+    private String[] registrationNumbersForAgeLines;
+    private String[] countForAgesLines;
+    private String[] slotNumbersForAgesLines;
+    private String[] registrationNumbersForAgesLines;
+    private String[] statusLines;
+    private String occupiedSlotCountLine;
+    private String overstayedLine;
+    private int next;
+    private final StatusCounter statusCounter = new StatusCounter();
+
+    @Override
+    void prepare(int parked) {
+        Random random = new Random(42);
+        registrationNumberInputs = new String[INPUTS];
+        ageInputs = new int[INPUTS];
+        slotNumberInputs = new int[INPUTS];
+        slotNumberLines = new String[INPUTS];
+        slotNumbersForAgeLines = new String[INPUTS];
+        registrationNumbersForAgeLines = new String[INPUTS];
+        countForAgesLines = new String[INPUTS];
+        slotNumbersForAgesLines = new String[INPUTS];
+        registrationNumbersForAgesLines = new String[INPUTS];
+        statusLines = new String[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            registrationNumberInputs[i] = registrationNumbers[random.nextInt(Math.max(parked, 1))];
+            ageInputs[i] = MIN_AGE + random.nextInt(MAX_AGE);
+            slotNumberInputs[i] = 1 + random.nextInt(numberOfSlots);
+            String ages = ageInputs[i] + " " + (ageInputs[i] + 1);
+            slotNumberLines[i] = lotPrefix + "Slot_number_for_car_with_number " + registrationNumberInputs[i];
+            slotNumbersForAgeLines[i] = lotPrefix + "Slot_numbers_for_driver_of_age " + ageInputs[i];
+            registrationNumbersForAgeLines[i] = lotPrefix + "Vehicle_registration_number_for_driver_of_age "
+                    + ageInputs[i];
+            countForAgesLines[i] = lotPrefix + "Count_for_driver_age_between " + ages;
+            slotNumbersForAgesLines[i] = lotPrefix + "Slot_numbers_for_driver_age_between " + ages;
+            registrationNumbersForAgesLines[i] = lotPrefix + "Vehicle_registration_numbers_for_driver_age_between "
+                    + ages;
+            statusLines[i] = lotPrefix + "Status " + PAGE_SIZE + " " + slotNumberInputs[i];
+        }
+        occupiedSlotCountLine = lotPrefix + "Occupied_slot_count";
+        overstayedLine = lotPrefix + "Overstayed_vehicles";
+        parkingLot.setMaxStay(Duration.ofHours(1));
+    }
+
+    private int next() {
+        return next++ & (INPUTS - 1);
+    }
+
+    @Benchmark
+    public int slotNumberForRegistration() {
+        return parkingLot.findSlotNumber(registrationNumberInputs[next()]);
+    }
+
+    @Benchmark
+    public List<Integer> slotNumbersForDriverAge() {
+        return parkingLot.getSlotNumbersForDriverAge(ageInputs[next()]);
+    }
+
+    @Benchmark
+    public List<String> registrationNumbersForDriverAge() {
+        return parkingLot.getRegistrationNumbersForDriverAge(ageInputs[next()]);
+    }
+
+    @Benchmark
+    public int countForDriverAges() {
+        int age = ageInputs[next()];
+        return parkingLot.countForDriverAges(age, age + 1);
+    }
+
+    @Benchmark
+    public List<Integer> slotNumbersForDriverAges() {
+        int age = ageInputs[next()];
+        return parkingLot.getSlotNumbersForDriverAges(age, age + 1);
+    }
+
+    @Benchmark
+    public List<String> registrationNumbersForDriverAges() {
+        int age = ageInputs[next()];
+        return parkingLot.getRegistrationNumbersForDriverAges(age, age + 1);
+    }
+
+    @Benchmark
+    public int occupiedSlotCount() {
+        return parkingLot.getOccupiedSlotCount();
+    }
+
+    @Benchmark
+    public long statusPage() {
+        statusCounter.vehicles = 0;
+        return parkingLot.streamStatus(slotNumberInputs[next()], PAGE_SIZE, statusCounter) + statusCounter.vehicles;
+    }
+
+    @Benchmark
+    public List<String> overstayedVehicles() {
+        return parkingLot.getOverstayedRegistrationNumbers();
+    }
+
+    @Benchmark
+    public int executeSlotNumberForCarWithNumber() {
+        return execute(slotNumberLines[next()]);
+    }
+
+    @Benchmark
+    public int executeSlotNumbersForDriverOfAge() {
+        return execute(slotNumbersForAgeLines[next()]);
+    }
+
+    @Benchmark
+    public int executeVehicleRegistrationNumberForDriverOfAge() {
+        return execute(registrationNumbersForAgeLines[next()]);
+    }
+
+    @Benchmark
+    public int executeCountForDriverAgeBetween() {
+        return execute(countForAgesLines[next()]);
+    }
+
+    @Benchmark
+    public int executeSlotNumbersForDriverAgeBetween() {
+        return execute(slotNumbersForAgesLines[next()]);
+    }
+
+    @Benchmark
+    public int executeVehicleRegistrationNumbersForDriverAgeBetween() {
+        return execute(registrationNumbersForAgesLines[next()]);
+    }
+
+    @Benchmark
+    public int executeOccupiedSlotCount() {
+        return execute(occupiedSlotCountLine);
+    }
+
+    @Benchmark
+    public int executeStatus() {
+        return execute(statusLines[next()]);
+    }
+
+    @Benchmark
+    public int executeOverstayedVehicles() {
+        return execute(overstayedLine);
+    }
+
+    /**
+     * Counts the vehicles of a status page, without keeping them
+     */
+    private static class StatusCounter implements StatusSink {
+        private long vehicles;
+
+        @Override
+        public void accept(int slotNumber, String registrationNumber, int driverAge) {
+            vehicles++;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.parkinglot12;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.parkinglot12.service.CommandExecutor;
+import com.parkinglot12.service.ResponseEncoder;
+
+/**
+ * Replays a command file through the CommandExecutor and writes one result line
+ * per command line.
+ *
+ * The input is memory mapped window by window and split into lines in place.
+ * Results are rendered into one reusable ResponseEncoder and copied from there
+ * into one large reusable output buffer, so no line makes a String and the file
+ * is written with few big writes instead of one per line. Bytes are read and written as
+ * ISO-8859-1, which keeps any byte of the input unchanged in the output.
+ */
+public class BatchRunner {
+    private static final int MAP_WINDOW = 64 << 20;
+    private static final int OUTPUT_BUFFER = 1 << 20;
+
+    private final CommandExecutor commandExecutor;
+    private final ByteBuffer outputBuffer;
+    private final ResponseEncoder response;
+    private byte[] lineBuffer;
+    // the current line as characters, handed to the executor without copying
+    private final Line line;
+
+    public BatchRunner(CommandExecutor commandExecutor) {
+        this.commandExecutor = commandExecutor;
+        this.outputBuffer = ByteBuffer.allocateDirect(OUTPUT_BUFFER);
+        this.response = new ResponseEncoder();
+        this.lineBuffer = new byte[256];
+        this.line = new Line();
+    }
+
+    /**
+     * Runs every command of the input file
+     *
+     * @param input  => file with one command per line
+     * @param output => file the results are written to, replaced if it exists
+     * @return number of lines executed
+     */
+    public long run(Path input, Path output) throws IOException {
+        long lines = 0;
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            outputBuffer.clear();
+            long size = in.size();
+            int lineLength = 0;
+            for (long position = 0; position < size; position += MAP_WINDOW) {
+                MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAP_WINDOW, size - position));
+                while (window.hasRemaining()) {
+                    byte b = window.get();
+                    if (b == '\n') {
+                        execute(lineLength, out);
+                        lines++;
+                        lineLength = 0;
+                    } else {
+                        // a line may continue in the next window, so it is collected here
+                        if (lineLength == lineBuffer.length) {
+                            byte[] grown = new byte[lineBuffer.length << 1];
+                            System.arraycopy(lineBuffer, 0, grown, 0, lineLength);
+                            lineBuffer = grown;
+                        }
+                        lineBuffer[lineLength++] = b;
+                    }
+                }
+            }
+            if (lineLength > 0) {
+                execute(lineLength, out);
+                lines++;
+            }
+            flush(out);
+        }
+        return lines;
+    }
+
+    private void execute(int lineLength, FileChannel out) throws IOException {
+        // same as BufferedReader.readLine => a "\r\n" ending is not part of the line
+        if (lineLength > 0 && lineBuffer[lineLength - 1] == '\r') {
+            lineLength--;
+        }
+        line.length = lineLength;
+        response.reset();
+        commandExecutor.execute(line, response);
+        // a result bigger than the room left is written in parts
+        for (int written = outputBuffer.hasRemaining() ? response.copyTo(outputBuffer, 0) : 0;
+                written < response.length(); written = response.copyTo(outputBuffer, written)) {
+            flush(out);
+        }
+        if (!outputBuffer.hasRemaining()) {
+            flush(out);
+        }
+        outputBuffer.put((byte) '\n');
+    }
+
+    private void flush(FileChannel out) throws IOException {
+        outputBuffer.flip();
+        while (outputBuffer.hasRemaining()) {
+            out.write(outputBuffer);
+        }
+        outputBuffer.clear();
+    }
+
+    /**
+     * View of the bytes of lineBuffer as ISO-8859-1 characters
+     */
+    private class Line implements CharSequence {
+        private int length;
+
+        public int length() {
+            return length;
+        }
+
+        public char charAt(int index) {
+            return (char) (lineBuffer[index] & 0xFF);
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            return new String(lineBuffer, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            return new String(lineBuffer, 0, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.parkinglot12;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.parkinglot12.service.CommandExecutor;
+import com.parkinglot12.service.ResponseEncoder;
+
+/**
+ * TCP front end for gate terminals, speaking the same line protocol as the
+ * command files => one command per line in, one result per line out.
+ *
+ * Non blocking NIO: an acceptor thread hands new connections round robin to a
+ * few reactor threads, each with its own selector. A reactor executes every
+ * complete line it has read, in order, and queues the results on the
+ * connection, so clients may pipeline as many commands as they like and still
+ * get the results in the order they sent them. A connection whose client does
+ * not read its results stops being read until they are written.
+ *
+ * Commands run on the reactor threads. CommandExecutor is safe for that, but a
+ * journaled lot waits for its disk there as well.
+ */
+public class CommandServer implements Closeable {
+    private static final int READ_BUFFER = 16 << 10;
+    private static final int WRITE_BUFFER = 16 << 10;
+    // results queued beyond this stop the reading of a connection
+    private static final int MAX_PENDING_OUTPUT = 1 << 20;
+
+    private final CommandExecutor commandExecutor;
+    private final ServerSocketChannel serverChannel;
+    private final Reactor[] reactors;
+    private final Thread acceptor;
+    private volatile boolean running;
+
+    /**
+     * Binds the server, call start to serve
+     *
+     * @param port     => port to listen on, 0 for any free one
+     * @param reactors => number of reactor threads
+     */
+    public CommandServer(CommandExecutor commandExecutor, int port, int reactors) throws IOException {
+        if (reactors < 1) {
+            throw new IllegalArgumentException("Number of reactors cannot be less than 1");
+        }
+        this.commandExecutor = commandExecutor;
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        this.reactors = new Reactor[reactors];
+        for (int i = 0; i < reactors; i++) {
+            this.reactors[i] = new Reactor(i);
+        }
+        this.acceptor = new Thread(this::accept, "command-server-acceptor");
+    }
+
+    public void start() {
+        running = true;
+        for (Reactor reactor : reactors) {
+            reactor.thread.start();
+        }
+        acceptor.start();
+    }
+
+    /**
+     * @return port the server listens on
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    private void accept() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                reactors[next].register(channel);
+                next = (next + 1) % reactors.length;
+            } catch (IOException e) {
+                if (running) {
+                    System.out.println("Command server cannot accept: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops accepting and closes every connection
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverChannel.close();
+        for (Reactor reactor : reactors) {
+            reactor.selector.wakeup();
+        }
+        try {
+            acceptor.join();
+            for (Reactor reactor : reactors) {
+                reactor.thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One selector and the connections registered with it
+     */
+    private class Reactor {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<SocketChannel> newChannels;
+
+        Reactor(int number) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this::run, "command-server-reactor-" + number);
+            newChannels = new ConcurrentLinkedQueue<SocketChannel>();
+        }
+
+        void register(SocketChannel channel) {
+            newChannels.add(channel);
+            selector.wakeup();
+        }
+
+        private void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    for (SocketChannel channel; (channel = newChannels.poll()) != null;) {
+                        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                connection.read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.write(key);
+                            }
+                        } catch (IOException e) {
+                            connection.close(key);
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                System.out.println("Command server reactor stopped: " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    ((Connection) key.attachment()).close(key);
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // closing anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * Buffers of one client => bytes read but not yet a whole line, and
+     * results not yet written
+     */
+    private class Connection {
+        private final SocketChannel channel;
+        private ByteBuffer input;
+        private ByteBuffer output;
+        // the current line as characters, handed to the executor without copying
+        private final Line line;
+        // result of the current line, copied from there to output
+        private final ResponseEncoder response;
+        // the client shut its output => close once the results are written
+        private boolean closing;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.input = ByteBuffer.allocate(READ_BUFFER);
+            this.output = ByteBuffer.allocate(WRITE_BUFFER);
+            this.line = new Line();
+            this.response = new ResponseEncoder();
+        }
+
+        void read(SelectionKey key) throws IOException {
+            if (!input.hasRemaining()) {
+                // a line longer than the buffer
+                ByteBuffer grown = ByteBuffer.allocate(input.capacity() << 1);
+                input.flip();
+                grown.put(input);
+                input = grown;
+            }
+            int read = channel.read(input);
+            byte[] bytes = input.array();
+            int end = input.position();
+            int lineStart = 0;
+            for (int i = 0; i < end; i++) {
+                if (bytes[i] == '\n') {
+                    execute(bytes, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+            if (read == -1) {
+                // a last line without "\n" is still a command, as in the batch files
+                if (lineStart < end) {
+                    execute(bytes, lineStart, end);
+                }
+                input.clear();
+                closing = true;
+            } else {
+                // keep the start of an incomplete line for the next read
+                input.position(lineStart);
+                input.limit(end);
+                input.compact();
+            }
+            write(key);
+        }
+
+        private void execute(byte[] bytes, int start, int end) {
+            // same as BufferedReader.readLine => a "\r\n" ending is not part of the line
+            if (end > start && bytes[end - 1] == '\r') {
+                end--;
+            }
+            line.set(bytes, start, end - start);
+            response.reset();
+            commandExecutor.execute(line, response);
+            // the result and its "\n"
+            int length = response.length() + 1;
+            if (output.remaining() < length) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(output.capacity() << 1, output.position() + length));
+                output.flip();
+                grown.put(output);
+                output = grown;
+            }
+            response.copyTo(output, 0);
+            output.put((byte) '\n');
+        }
+
+        void write(SelectionKey key) throws IOException {
+            output.flip();
+            channel.write(output);
+            output.compact();
+            if (closing) {
+                if (output.position() == 0) {
+                    close(key);
+                } else if (key.interestOps() != SelectionKey.OP_WRITE) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                }
+                return;
+            }
+            int interest = SelectionKey.OP_READ;
+            if (output.position() > 0) {
+                interest = output.position() > MAX_PENDING_OUTPUT ? SelectionKey.OP_WRITE
+                        : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+            } else if (output.capacity() > WRITE_BUFFER) {
+                // a burst is over => give back the memory it took
+                output = ByteBuffer.allocate(WRITE_BUFFER);
+            }
+            if (key.interestOps() != interest) {
+                key.interestOps(interest);
+            }
+        }
+
+        void close(SelectionKey key) {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // the client is gone either way
+            }
+        }
+    }
+
+    /**
+     * View of a range of bytes as ISO-8859-1 characters
+     */
+    private static class Line implements CharSequence {
+        private byte[] bytes;
+        private int offset;
+        private int length;
+
+        void set(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public char charAt(int index) {
+            return (char) (bytes[offset + index] & 0xFF);
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            return new String(bytes, offset + start, end - start, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -1,30 +1,75 @@
 
 package com.parkinglot12;
 
-import java.io.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import com.parkinglot12.service.CommandExecutor;
 
 public class Main {
+    /**
+     * Without arguments reads ./resource/input.txt and writes output.txt. With
+     * "inputPath outputPath" runs in batch mode on those files and reports the
+     * throughput at the end. A third argument "journalDirectory" journals the
+     * lots there, so they are recovered by the next run.
+     *
+     * "serve port [journalDirectory]" runs the CommandServer on that port
+     * instead, until the process is stopped.
+     *
+     * With -Dparkinglot.metrics.period=seconds the command metrics are published
+     * over JMX, printed every period and once more at the end of the batch.
+     */
     public static void main(String[] args) throws Exception {
 
         CommandExecutor commandExecutor = CommandExecutor.getInstance();
+        BatchRunner batchRunner = new BatchRunner(commandExecutor);
 
-        File file = new File("./resource/input.txt");
-        FileWriter outpt = new FileWriter("output.txt");
-
-        BufferedReader br = new BufferedReader(new FileReader(file));
+        if (args.length == 0) {
+            batchRunner.run(Paths.get("./resource/input.txt"), Paths.get("output.txt"));
+            return;
+        }
+        if (args.length != 2 && args.length != 3) {
+            System.out.println("Usage: Main [inputPath outputPath [journalDirectory]]");
+            System.out.println("       Main serve port [journalDirectory]");
+            return;
+        }
+        if (args.length == 3) {
+            int recovered = commandExecutor.enableJournal(Paths.get(args[2]));
+            System.out.println(String.format("Recovered %d parking lots from %s", recovered, args[2]));
+        }
 
-        String st;
-        while ((st = br.readLine()) != null) {
-            outpt.write(String.valueOf(commandExecutor.execute(st)));
-            outpt.write("\n");
+        long metricsPeriod = Long.getLong("parkinglot.metrics.period", -1);
+        if (metricsPeriod >= 0) {
+            commandExecutor.publishMetrics(metricsPeriod, System.out);
+        }
 
+        if (args[0].equals("serve")) {
+            CommandServer server = new CommandServer(commandExecutor, Integer.parseInt(args[1]),
+                    Runtime.getRuntime().availableProcessors());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.close();
+                } catch (IOException e) {
+                    System.out.println("Cannot stop the command server: " + e.getMessage());
+                }
+            }));
+            server.start();
+            System.out.println("Serving commands on port " + server.getPort());
+            return;
         }
-        outpt.close();
 
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        long start = System.nanoTime();
+        long lines = batchRunner.run(input, output);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("Executed %d lines in %.3f s => %.0f lines per second", lines, seconds,
+                lines / Math.max(seconds, 1e-9)));
+        if (metricsPeriod >= 0) {
+            System.out.print(commandExecutor.getMetrics().dump());
+        }
 
     }
 
 }
-
@@ -0,0 +1,98 @@
+package com.parkinglot12.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.parkinglot12.service.CommandExecutor;
+import com.parkinglot12.service.ResponseEncoder;
+
+/**
+ * Check of the text rendered by the CommandExecutor, runnable without any
+ * build tool: java com.parkinglot12.bench.CommandOutputCheck
+ *
+ * Runs commands whose registration numbers hold characters beyond ASCII,
+ * some of them beyond ISO-8859-1, through execute(String) and compares every
+ * result with the text expected. Results are rendered as bytes, so this
+ * catches a character cut down to its low byte. Lot sizes below 1 must get
+ * the answer they always got, whatever options follow, a reservation for a
+ * registration number in use the same answer as a park, and a count of one
+ * minute the singular. Exits with 1 on the first mismatch.
+ */
+public class CommandOutputCheck {
+    private static final String LOT = "Lot output-check ";
+    private static int checked;
+
+    public static void main(String[] args) {
+        CommandExecutor commandExecutor = CommandExecutor.getInstance();
+        check(commandExecutor, "Create_parking_lot -3", "Number of slots cannot be less than 1");
+        check(commandExecutor, "Create_parking_lot 0", "Number of slots cannot be less than 1");
+        check(commandExecutor, "Create_parking_lot -3 Floor_by_floor 2 Van_slots 1",
+                "Number of slots cannot be less than 1");
+        check(commandExecutor, "Create_parking_lot 4", "Created parking of 4 slots");
+        check(commandExecutor, "Park \u0416\u20ac-1 driver_age 30",
+                "Car with vehicle registration number \"\u0416\u20ac-1\" has been parked at slot number 1");
+        check(commandExecutor, "Park \u00e9t\u00e9-2 driver_age 30",
+                "Car with vehicle registration number \"\u00e9t\u00e9-2\" has been parked at slot number 2");
+        check(commandExecutor, "Park KA-01-HH-1234 driver_age 31",
+                "Car with vehicle registration number \"KA-01-HH-1234\" has been parked at slot number 3");
+        check(commandExecutor, "Vehicle_registration_number_for_driver_of_age 30", "\u0416\u20ac-1, \u00e9t\u00e9-2");
+        check(commandExecutor, "Slot_number_for_car_with_number \u0416\u20ac-1", "1");
+        check(commandExecutor, "Vehicle_registration_numbers_for_driver_age_between 30 31",
+                "\u0416\u20ac-1, \u00e9t\u00e9-2, KA-01-HH-1234");
+        check(commandExecutor, "Leave 1", "Slot number 1 vacated, the car with vehicle registration number "
+                + "\"\u0416\u20ac-1\" left the space, the driver of the car was of age 30");
+        check(commandExecutor, "Slot_number_for_car_with_number \u0416\u20ac-1", "Not found");
+
+        // the bytes of a line beyond ISO-8859-1 carry '?' there, the next line is bytes again
+        ResponseEncoder response = new ResponseEncoder();
+        commandExecutor.execute(LOT + "Park \u0416-3 driver_age 40", response);
+        String expected = "Car with vehicle registration number \"\u0416-3\" has been parked at slot number 1";
+        compare("appendTo", expected, appendTo(response));
+        compare("copyTo", expected.replace('\u0416', '?'), copyTo(response));
+        response.reset();
+        commandExecutor.execute(LOT + "Slot_number_for_car_with_number \u0416-3", response);
+        compare("reset", "1", response.toString());
+
+        check(commandExecutor, "Reserve KA-09 1",
+                "Slot number 4 is reserved for vehicle registration number \"KA-09\" for 1 minute");
+        check(commandExecutor, "Leave 2", "Slot number 2 vacated, the car with vehicle registration number "
+                + "\"\u00e9t\u00e9-2\" left the space, the driver of the car was of age 30");
+        check(commandExecutor, "Reserve KA-10 5",
+                "Slot number 2 is reserved for vehicle registration number \"KA-10\" for 5 minutes");
+        check(commandExecutor, "Reserve KA-01-HH-1234 5", "Not a valid Command");
+        check(commandExecutor, "Reserve KA-09 5", "Not a valid Command");
+        check(commandExecutor, "Max_stay 1", "Maximum stay is 1 minute");
+        check(commandExecutor, "Max_stay 90", "Maximum stay is 90 minutes");
+        check(commandExecutor, "Max_stay 0", "Maximum stay is not limited");
+        System.out.println(checked + " results as expected");
+    }
+
+    private static void check(CommandExecutor commandExecutor, String command, String expected) {
+        compare(command, expected, commandExecutor.execute(LOT + command));
+    }
+
+    private static void compare(String what, String expected, String actual) {
+        checked++;
+        if (!expected.equals(actual)) {
+            System.out.println(what + " => expected " + expected + " but got " + actual);
+            System.exit(1);
+        }
+    }
+
+    private static String appendTo(ResponseEncoder response) {
+        StringBuilder text = new StringBuilder();
+        try {
+            response.appendTo(text);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return text.toString();
+    }
+
+    private static String copyTo(ResponseEncoder response) {
+        ByteBuffer buffer = ByteBuffer.allocate(response.length());
+        response.copyTo(buffer, 0);
+        return new String(buffer.array(), StandardCharsets.ISO_8859_1);
+    }
+}
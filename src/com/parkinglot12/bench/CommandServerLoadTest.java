@@ -0,0 +1,234 @@
+package com.parkinglot12.bench;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import com.parkinglot12.CommandServer;
+import com.parkinglot12.service.CommandExecutor;
+
+/**
+ * Load test of the CommandServer over loopback, runnable without any build
+ * tool: java com.parkinglot12.bench.CommandServerLoadTest [connections]
+ * [requestsPerConnection] [pipelineDepth] [reactors]
+ *
+ * Starts a server in process and drives it from one client selector thread.
+ * Every connection keeps pipelineDepth commands in flight => it leaves the
+ * slots its earlier parks returned, and parks new cars while it has none. A
+ * result is checked against the command it answers, so out of order results
+ * are caught.
+ *
+ * Reports the throughput and the latency percentiles of a command, from the
+ * moment it was written by the client to the moment its result was read.
+ *
+ * Example => java com.parkinglot12.bench.CommandServerLoadTest 2000 500 8 2
+ */
+public class CommandServerLoadTest {
+    private static final String LOT = "load";
+    private static final String PARKED = "\" has been parked at slot number ";
+    private static final String VACATED = "Slot number ";
+
+    // registration numbers of each run start with their own prefix
+    private final String carPrefix;
+    private final int requestsPerConnection;
+    private final int pipelineDepth;
+    private final long[] latencies;
+    private int recorded;
+    private long failures;
+    private long elapsedNanos;
+
+    CommandServerLoadTest(String carPrefix, int connections, int requestsPerConnection, int pipelineDepth) {
+        this.carPrefix = carPrefix;
+        this.requestsPerConnection = requestsPerConnection;
+        this.pipelineDepth = pipelineDepth;
+        this.latencies = new long[connections * requestsPerConnection];
+    }
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int requestsPerConnection = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int pipelineDepth = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int reactors = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        CommandExecutor commandExecutor = CommandExecutor.getInstance();
+        // a connection has at most pipelineDepth cars parked, in the warm up run and in the measured one
+        commandExecutor.execute("Lot " + LOT + " Create_parking_lot " + 2 * connections * pipelineDepth);
+        try (CommandServer server = new CommandServer(commandExecutor, 0, reactors)) {
+            server.start();
+            CommandServerLoadTest loadTest = new CommandServerLoadTest("LT-", connections, requestsPerConnection,
+                    pipelineDepth);
+            System.out.println(String.format("%d connections, %d commands each, %d in flight, %d reactors",
+                    connections, requestsPerConnection, pipelineDepth, reactors));
+            // a short first run warms up the server
+            new CommandServerLoadTest("WU-", Math.min(connections, 100), Math.min(requestsPerConnection, 1000),
+                    pipelineDepth).run(server.getPort(), Math.min(connections, 100));
+            loadTest.run(server.getPort(), connections);
+            loadTest.report();
+        }
+    }
+
+    private void run(int port, int connections) throws IOException {
+        long start;
+        try (Selector selector = Selector.open()) {
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+            for (int i = 0; i < connections; i++) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.connect(address);
+                channel.register(selector, SelectionKey.OP_CONNECT, new Client(i, channel));
+            }
+            start = System.nanoTime();
+            int open = connections;
+            while (open > 0) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Client client = (Client) key.attachment();
+                    if (key.isConnectable()) {
+                        client.channel.finishConnect();
+                        client.send();
+                    }
+                    if (key.isReadable()) {
+                        client.receive();
+                    }
+                    if (key.isWritable()) {
+                        client.flush();
+                    }
+                    if (client.received == requestsPerConnection) {
+                        key.cancel();
+                        client.channel.close();
+                        open--;
+                    } else {
+                        key.interestOps(client.output.hasRemaining()
+                                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+                    }
+                }
+            }
+        }
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    private void report() {
+        double seconds = elapsedNanos / 1e9;
+        long[] sorted = Arrays.copyOf(latencies, recorded);
+        Arrays.sort(sorted);
+        System.out.println(String.format("%d commands in %.3f s => %.0f commands per second, %d failed",
+                recorded, seconds, recorded / Math.max(seconds, 1e-9), failures));
+        System.out.println(String.format("latency(us) => p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f",
+                percentile(sorted, 50) / 1000.0, percentile(sorted, 99) / 1000.0,
+                percentile(sorted, 99.9) / 1000.0, sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1000.0));
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * One gate connection with its commands in flight
+     */
+    private class Client {
+        private final int number;
+        private final SocketChannel channel;
+        private final ByteBuffer input = ByteBuffer.allocate(8 << 10);
+        private final ByteBuffer output = ByteBuffer.allocate(8 << 10);
+        // in flight, oldest first => send time and slot left, 0 for a park
+        private final long[] sentNanos;
+        private final int[] leftSlots;
+        // slots returned by parks and not left yet
+        private final int[] parkedSlots;
+        private int parked;
+        private int sent;
+        private int received;
+        private int nextCar;
+
+        Client(int number, SocketChannel channel) {
+            this.number = number;
+            this.channel = channel;
+            this.sentNanos = new long[pipelineDepth];
+            this.leftSlots = new int[pipelineDepth];
+            this.parkedSlots = new int[pipelineDepth];
+            output.flip();
+        }
+
+        /**
+         * Tops up the commands in flight to pipelineDepth
+         */
+        void send() throws IOException {
+            output.compact();
+            long now = System.nanoTime();
+            while (sent < requestsPerConnection && sent - received < pipelineDepth && output.remaining() >= 64) {
+                int entry = sent % pipelineDepth;
+                String command;
+                if (parked > 0) {
+                    int slot = parkedSlots[--parked];
+                    command = "Lot " + LOT + " Leave " + slot + "\n";
+                    leftSlots[entry] = slot;
+                } else {
+                    command = "Lot " + LOT + " Park " + carPrefix + number + "-" + nextCar++ + " driver_age 30\n";
+                    leftSlots[entry] = 0;
+                }
+                for (int i = 0; i < command.length(); i++) {
+                    output.put((byte) command.charAt(i));
+                }
+                sentNanos[entry] = now;
+                sent++;
+            }
+            output.flip();
+            flush();
+        }
+
+        void flush() throws IOException {
+            channel.write(output);
+        }
+
+        void receive() throws IOException {
+            if (channel.read(input) == -1) {
+                throw new IOException("Server closed connection " + number);
+            }
+            byte[] bytes = input.array();
+            int end = input.position();
+            int lineStart = 0;
+            long now = System.nanoTime();
+            for (int i = 0; i < end; i++) {
+                if (bytes[i] == '\n') {
+                    check(new String(bytes, lineStart, i - lineStart, StandardCharsets.ISO_8859_1));
+                    latencies[recorded++] = now - sentNanos[received % pipelineDepth];
+                    received++;
+                    lineStart = i + 1;
+                }
+            }
+            input.position(lineStart);
+            input.limit(end);
+            input.compact();
+            send();
+        }
+
+        private void check(String result) {
+            int leftSlot = leftSlots[received % pipelineDepth];
+            if (leftSlot == 0) {
+                int at = result.indexOf(PARKED);
+                if (at < 0) {
+                    failures++;
+                    return;
+                }
+                parkedSlots[parked++] = Integer.parseInt(result.substring(at + PARKED.length()));
+            } else if (!result.startsWith(VACATED + leftSlot + " ")) {
+                failures++;
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.parkinglot12.bench;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.parkinglot12.domain.LeaveReceipt;
+import com.parkinglot12.domain.ResultCode;
+import com.parkinglot12.domain.StatusResponse;
+import com.parkinglot12.service.ParkingLotService;
+
+/**
+ * Stress test of the ticketing core under concurrent gates, runnable without
+ * any build tool: java com.parkinglot12.bench.GateStressTest [gates]
+ * [operationsPerGate] [slots]
+ *
+ * Every gate is a thread parking and leaving cars on one shared lot, one at
+ * a time and in batches. Now and then gates race to park the same shared
+ * registration number. A slot handed out while another gate still holds it
+ * is a double issue, and a leave whose receipt is not the car the gate parked
+ * there is a lost ticket.
+ *
+ * Once the gates are done the lot is checked against the cars they hold =>
+ * the status, the registration index and the occupied and free counts must
+ * all agree, and refilling the lot must hand out exactly the free slots.
+ * Exits with 1 on the first failure.
+ *
+ * Example => java com.parkinglot12.bench.GateStressTest 8 200000 5000
+ */
+public class GateStressTest {
+    private static final int MAX_BATCH = 20;
+    private static final int SHARED_REGISTRATIONS = 16;
+    private static final String SHARED = "SHARED-";
+
+    private final ParkingLotService parkingLot;
+    private final int numberOfSlots;
+    private final int operationsPerGate;
+    // slot number => gate holding it, 0 if none
+    private final AtomicIntegerArray holders;
+    private final AtomicLong parks = new AtomicLong();
+    private final AtomicLong leaves = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final Gate[] gates;
+
+    GateStressTest(int gateCount, int operationsPerGate, int numberOfSlots) {
+        this.parkingLot = ParkingLotService.create(numberOfSlots);
+        this.numberOfSlots = numberOfSlots;
+        this.operationsPerGate = operationsPerGate;
+        this.holders = new AtomicIntegerArray(numberOfSlots + 1);
+        this.gates = new Gate[gateCount];
+        for (int i = 0; i < gateCount; i++) {
+            gates[i] = new Gate(i + 1);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int gateCount = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int operationsPerGate = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        int numberOfSlots = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        GateStressTest test = new GateStressTest(gateCount, operationsPerGate, numberOfSlots);
+        long start = System.nanoTime();
+        test.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        test.check();
+        System.out.println(String.format(
+                "%d gates, %d slots => %d parks, %d leaves, %d duplicates refused in %.1f s, all consistent",
+                gateCount, numberOfSlots, test.parks.get(), test.leaves.get(), test.duplicates.get(), seconds));
+    }
+
+    private void run() throws InterruptedException {
+        Thread[] threads = new Thread[gates.length];
+        for (int i = 0; i < gates.length; i++) {
+            threads[i] = new Thread(gates[i]::run, "gate-" + gates[i].id);
+            // a gate failing ends the test, the others must not keep it alive
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Compares the lot with the cars the gates hold once they are done
+     */
+    private void check() {
+        String[] expected = new String[numberOfSlots + 1];
+        int held = 0;
+        for (Gate gate : gates) {
+            for (int i = 0; i < gate.heldCount; i++) {
+                expected[gate.heldSlots[i]] = gate.heldRegistrations[i];
+                held++;
+            }
+        }
+        check(parkingLot.getOccupiedSlotCount() == held,
+                "occupied count " + parkingLot.getOccupiedSlotCount() + " but the gates hold " + held);
+        check(parkingLot.getFreeSlotCount() == numberOfSlots - held,
+                "free count " + parkingLot.getFreeSlotCount() + " but " + (numberOfSlots - held) + " slots are empty");
+
+        List<StatusResponse> status = parkingLot.getStatus();
+        check(status.size() == held, "status lists " + status.size() + " cars but the gates hold " + held);
+        for (StatusResponse vehicle : status) {
+            check(vehicle.getRegistrationNumber().equals(expected[vehicle.getSlotNumber()]),
+                    "slot " + vehicle.getSlotNumber() + " holds " + vehicle.getRegistrationNumber() + " instead of "
+                            + expected[vehicle.getSlotNumber()]);
+        }
+
+        // every registration ever used is either found at the slot holding it or not at all
+        Map<String, Integer> slotsByRegistration = new HashMap<String, Integer>();
+        for (int slotNumber = 1; slotNumber <= numberOfSlots; slotNumber++) {
+            if (expected[slotNumber] != null) {
+                slotsByRegistration.put(expected[slotNumber], slotNumber);
+            }
+        }
+        for (Gate gate : gates) {
+            for (int sequence = 0; sequence < gate.nextSequence; sequence++) {
+                checkIndexed(gate.registrationNumber(sequence), slotsByRegistration);
+            }
+        }
+        for (int i = 0; i < SHARED_REGISTRATIONS; i++) {
+            checkIndexed(SHARED + i, slotsByRegistration);
+        }
+
+        // the free slots are exactly the ones no gate holds
+        int refilled = 0;
+        for (int slotNumber = parkingLot.park("REFILL-" + refilled, 30); slotNumber > 0;
+                slotNumber = parkingLot.park("REFILL-" + refilled, 30)) {
+            check(expected[slotNumber] == null, "refill got slot " + slotNumber + " of " + expected[slotNumber]);
+            expected[slotNumber] = "REFILL-" + refilled++;
+        }
+        check(refilled == numberOfSlots - held, "refill got " + refilled + " slots of " + (numberOfSlots - held));
+        check(parkingLot.getFreeSlotCount() == 0, "lot full but " + parkingLot.getFreeSlotCount() + " slots free");
+    }
+
+    private void checkIndexed(String registrationNumber, Map<String, Integer> slotsByRegistration) {
+        Integer expected = slotsByRegistration.get(registrationNumber);
+        int slotNumber = parkingLot.findSlotNumber(registrationNumber);
+        check(slotNumber == (expected != null ? expected : ResultCode.NOT_FOUND.getCode()),
+                registrationNumber + " looked up at " + slotNumber + " but held at " + expected);
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            System.out.println("FAILED => " + failure);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * One gate => parks and leaves cars, and keeps the ones it holds
+     */
+    private class Gate {
+        private final int id;
+        private final Random random;
+        private final int[] heldSlots;
+        private final String[] heldRegistrations;
+        private int heldCount;
+        private int nextSequence;
+
+        Gate(int id) {
+            this.id = id;
+            this.random = new Random(id);
+            this.heldSlots = new int[numberOfSlots];
+            this.heldRegistrations = new String[numberOfSlots];
+        }
+
+        String registrationNumber(int sequence) {
+            return "G" + id + "-" + sequence;
+        }
+
+        void run() {
+            LeaveReceipt[] receipts = new LeaveReceipt[MAX_BATCH];
+            for (int i = 0; i < receipts.length; i++) {
+                receipts[i] = new LeaveReceipt();
+            }
+            for (int operation = 0; operation < operationsPerGate; operation++) {
+                int count = random.nextBoolean() ? 1 : 1 + random.nextInt(MAX_BATCH);
+                if (heldCount == 0 || random.nextInt(100) < 55) {
+                    park(count);
+                } else {
+                    leave(Math.min(count, heldCount), receipts);
+                }
+            }
+        }
+
+        private void park(int count) {
+            String[] registrationNumbers = new String[count];
+            int[] driverAges = new int[count];
+            int[] results = new int[count];
+            for (int i = 0; i < count; i++) {
+                registrationNumbers[i] = random.nextInt(50) == 0 ? SHARED + random.nextInt(SHARED_REGISTRATIONS)
+                        : registrationNumber(nextSequence++);
+                driverAges[i] = 18 + random.nextInt(60);
+            }
+            if (count == 1) {
+                results[0] = parkingLot.park(registrationNumbers[0], driverAges[0]);
+            } else {
+                parkingLot.parkAll(registrationNumbers, driverAges, results);
+            }
+            for (int i = 0; i < count; i++) {
+                int result = results[i];
+                if (result > 0) {
+                    check(holders.compareAndSet(result, 0, id),
+                            "slot " + result + " issued to gate " + id + " while gate " + holders.get(result)
+                                    + " holds it");
+                    heldSlots[heldCount] = result;
+                    heldRegistrations[heldCount++] = registrationNumbers[i];
+                    parks.incrementAndGet();
+                } else if (result == ResultCode.DUPLICATE_REGISTRATION.getCode()) {
+                    check(registrationNumbers[i].startsWith(SHARED),
+                            registrationNumbers[i] + " refused as a duplicate");
+                    duplicates.incrementAndGet();
+                } else {
+                    check(result == ResultCode.LOT_FULL.getCode(), "park answered " + result);
+                }
+            }
+        }
+
+        private void leave(int count, LeaveReceipt[] receipts) {
+            int[] slotNumbers = new int[count];
+            String[] registrationNumbers = new String[count];
+            for (int i = 0; i < count; i++) {
+                int held = random.nextInt(heldCount);
+                slotNumbers[i] = heldSlots[held];
+                registrationNumbers[i] = heldRegistrations[held];
+                heldSlots[held] = heldSlots[--heldCount];
+                heldRegistrations[held] = heldRegistrations[heldCount];
+                // given up before the leave, the slot may be issued again as soon as it is free
+                holders.set(slotNumbers[i], 0);
+            }
+            int[] results = new int[count];
+            if (count == 1) {
+                results[0] = parkingLot.leave(slotNumbers[0], receipts[0]);
+            } else {
+                parkingLot.leaveAll(slotNumbers, receipts, results);
+            }
+            for (int i = 0; i < count; i++) {
+                check(results[i] == ResultCode.SUCCESS.getCode(),
+                        "leave of slot " + slotNumbers[i] + " answered " + results[i]);
+                check(registrationNumbers[i].equals(receipts[i].getRegistrationNumber()),
+                        "slot " + slotNumbers[i] + " gave back " + receipts[i].getRegistrationNumber()
+                                + " instead of " + registrationNumbers[i]);
+                leaves.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.parkinglot12.domain;
+
+
+/**
+ * What happens to an event subscriber which falls so far behind that the gates
+ * have overwritten events it has not read yet. The gates never wait for a
+ * subscriber either way.
+ */
+public enum BackpressurePolicy {
+    /**
+     * Skip to the oldest event still in the feed, counting the missed ones
+     */
+    DROP_OLDEST,
+    /**
+     * Stop the subscription, so the subscriber can resynchronize from a status
+     * dump instead of working on a feed with holes. An event the subscriber
+     * failed on is such a hole as well.
+     */
+    DISCONNECT
+}
@@ -24,4 +24,8 @@ public class Car implements Vehicle {
         return this.registrationNumber;
     }
 
+    public VehicleSize getVehicleSize() {
+        return VehicleSize.CAR;
+    }
+
 }
@@ -0,0 +1,224 @@
+package com.parkinglot12.domain;
+
+import java.util.Arrays;
+
+/**
+ * How the slots of a parking lot are spread over its floors.
+ *
+ * Floors are numbered from 0 and hold consecutive slot numbers => floor 0 has
+ * slots 1 to its size, floor 1 the next ones, and so on. Each floor has an
+ * elevator next to one of its slots, given as the position of that slot on the
+ * floor (1 for its first slot).
+ *
+ * Within a floor the slots are grouped by VehicleSize, smallest first => the
+ * motorcycle slots of the floor, then its car slots, then its van slots. A lot
+ * described by floor sizes only has car slots.
+ */
+public class FloorLayout {
+    private static final VehicleSize[] VEHICLE_SIZES = VehicleSize.values();
+    private static final int SIZES = VEHICLE_SIZES.length;
+
+    // floor * SIZES + size => first slot number of the slots of that size on
+    // that floor, one more entry past the last floor
+    private final int[] firstSlotNumbers;
+    private final int[] elevatorPositions;
+
+    /**
+     * A lot of car slots only
+     *
+     * @param floorSizes        => number of slots of each floor
+     * @param elevatorPositions => position of the elevator on each floor, 1 to
+     *                          the size of the floor
+     */
+    public FloorLayout(int[] floorSizes, int[] elevatorPositions) {
+        this(carSlotsOnly(floorSizes), elevatorPositions);
+    }
+
+    /**
+     * @param slotCounts        => per floor, number of slots of each size
+     *                          indexed by VehicleSize.ordinal
+     * @param elevatorPositions => position of the elevator on each floor, 1 to
+     *                          the size of the floor
+     */
+    public FloorLayout(int[][] slotCounts, int[] elevatorPositions) {
+        if (slotCounts == null || elevatorPositions == null || slotCounts.length == 0
+                || slotCounts.length != elevatorPositions.length) {
+            throw new IllegalArgumentException("Every floor needs a size and an elevator position");
+        }
+        firstSlotNumbers = new int[slotCounts.length * SIZES + 1];
+        firstSlotNumbers[0] = 1;
+        for (int floor = 0; floor < slotCounts.length; floor++) {
+            if (slotCounts[floor] == null || slotCounts[floor].length != SIZES) {
+                throw new IllegalArgumentException("Every floor needs a number of slots per vehicle size");
+            }
+            for (int size = 0; size < SIZES; size++) {
+                int range = floor * SIZES + size;
+                if (slotCounts[floor][size] < 0) {
+                    throw new IllegalArgumentException("Number of slots cannot be negative");
+                }
+                long next = (long) firstSlotNumbers[range] + slotCounts[floor][size];
+                if (next > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Too many slots");
+                }
+                firstSlotNumbers[range + 1] = (int) next;
+            }
+            if (getFloorSize(floor) < 1) {
+                throw new IllegalArgumentException("Floor size cannot be less than 1");
+            }
+            if (elevatorPositions[floor] < 1 || elevatorPositions[floor] > getFloorSize(floor)) {
+                throw new IllegalArgumentException("Elevator position is outside its floor");
+            }
+        }
+        this.elevatorPositions = elevatorPositions.clone();
+    }
+
+    private static int[][] carSlotsOnly(int[] floorSizes) {
+        if (floorSizes == null) {
+            return null;
+        }
+        int[][] slotCounts = new int[floorSizes.length][SIZES];
+        for (int floor = 0; floor < floorSizes.length; floor++) {
+            slotCounts[floor][VehicleSize.CAR.ordinal()] = floorSizes[floor];
+        }
+        return slotCounts;
+    }
+
+    /**
+     * Spreads the slots over floors of the same size, the first floors taking
+     * one more slot when they do not divide evenly
+     *
+     * @param numberOfSlots    => number of slots of the lot
+     * @param floors           => number of floors
+     * @param elevatorPosition => position of the elevator on every floor, kept
+     *                         within the smaller floors
+     */
+    public static FloorLayout uniform(int numberOfSlots, int floors, int elevatorPosition) {
+        int[] slotCounts = new int[SIZES];
+        slotCounts[VehicleSize.CAR.ordinal()] = numberOfSlots;
+        return uniform(slotCounts, floors, elevatorPosition);
+    }
+
+    /**
+     * Same as uniform(int, int, int) for slots of several sizes => the slots of
+     * every size are spread evenly over the floors, and the slots left over
+     * are dealt round the floors so their sizes differ by one slot at most
+     *
+     * @param slotCounts => number of slots of each size indexed by
+     *                   VehicleSize.ordinal
+     */
+    public static FloorLayout uniform(int[] slotCounts, int floors, int elevatorPosition) {
+        if (slotCounts == null || slotCounts.length != SIZES) {
+            throw new IllegalArgumentException("A number of slots is needed per vehicle size");
+        }
+        long numberOfSlots = 0;
+        for (int count : slotCounts) {
+            if (count < 0) {
+                throw new IllegalArgumentException("Number of slots cannot be negative");
+            }
+            numberOfSlots += count;
+        }
+        if (floors < 1 || floors > numberOfSlots) {
+            throw new IllegalArgumentException("Number of floors should be 1 to the number of slots");
+        }
+        int[][] floorSlotCounts = new int[floors][SIZES];
+        int[] elevatorPositions = new int[floors];
+        int nextFloor = 0;
+        for (int size = 0; size < SIZES; size++) {
+            for (int floor = 0; floor < floors; floor++) {
+                floorSlotCounts[floor][size] = slotCounts[size] / floors;
+            }
+            for (int extra = slotCounts[size] % floors; extra > 0; extra--) {
+                floorSlotCounts[nextFloor][size]++;
+                nextFloor = (nextFloor + 1) % floors;
+            }
+        }
+        for (int floor = 0; floor < floors; floor++) {
+            int floorSize = 0;
+            for (int count : floorSlotCounts[floor]) {
+                floorSize += count;
+            }
+            elevatorPositions[floor] = Math.min(elevatorPosition, floorSize);
+        }
+        return new FloorLayout(floorSlotCounts, elevatorPositions);
+    }
+
+    public int getNumberOfSlots() {
+        return firstSlotNumbers[firstSlotNumbers.length - 1] - 1;
+    }
+
+    public int getFloorCount() {
+        return elevatorPositions.length;
+    }
+
+    public int getFloorSize(int floor) {
+        return firstSlotNumbers[(floor + 1) * SIZES] - firstSlotNumbers[floor * SIZES];
+    }
+
+    public int getFirstSlotNumber(int floor) {
+        return firstSlotNumbers[floor * SIZES];
+    }
+
+    public int getElevatorPosition(int floor) {
+        return elevatorPositions[floor];
+    }
+
+    /**
+     * @return number of slots of a size on a floor
+     */
+    public int getSlotCount(int floor, VehicleSize size) {
+        int range = floor * SIZES + size.ordinal();
+        return firstSlotNumbers[range + 1] - firstSlotNumbers[range];
+    }
+
+    /**
+     * @return first slot number of the slots of a size on a floor, which are
+     *         consecutive
+     */
+    public int getFirstSlotNumber(int floor, VehicleSize size) {
+        return firstSlotNumbers[floor * SIZES + size.ordinal()];
+    }
+
+    /**
+     * @return number of slots of a size in the lot
+     */
+    public int getSlotCount(VehicleSize size) {
+        int count = 0;
+        for (int floor = 0; floor < getFloorCount(); floor++) {
+            count += getSlotCount(floor, size);
+        }
+        return count;
+    }
+
+    /**
+     * @return floor holding the slot
+     */
+    public int getFloor(int slotNumber) {
+        return range(slotNumber) / SIZES;
+    }
+
+    /**
+     * @return size of the slot
+     */
+    public VehicleSize getSlotSize(int slotNumber) {
+        return VEHICLE_SIZES[range(slotNumber) % SIZES];
+    }
+
+    /**
+     * @return floor * SIZES + size of the slot
+     */
+    private int range(int slotNumber) {
+        if (slotNumber < 1 || slotNumber > getNumberOfSlots()) {
+            throw new IllegalArgumentException("The slot number is invalid");
+        }
+        // the last range starting at or before the slot => empty ranges start
+        // where the next one does, so they are never the last
+        int found = Arrays.binarySearch(firstSlotNumbers, slotNumber);
+        if (found < 0) {
+            return -found - 2;
+        }
+        while (firstSlotNumbers[found + 1] == slotNumber) {
+            found++;
+        }
+        return found;
+    }
+}
@@ -0,0 +1,53 @@
+package com.parkinglot12.domain;
+
+
+/**
+ * What a leave reports back => the slot, the vehicle which left it and when it
+ * came and went, in milliseconds since the epoch.
+ *
+ * Filled in by the leave operation. The caller owns it and may reuse one
+ * receipt for every leave instead of getting a new object back each time.
+ */
+public class LeaveReceipt implements Vehicle {
+    private int slotNumber;
+    private String registrationNumber;
+    private int driverAge;
+    private VehicleSize vehicleSize;
+    private long parkedAt;
+    private long leftAt;
+
+    public void set(int slotNumber, String registrationNumber, int driverAge, VehicleSize vehicleSize,
+            long parkedAt, long leftAt) {
+        this.slotNumber = slotNumber;
+        this.registrationNumber = registrationNumber;
+        this.driverAge = driverAge;
+        this.vehicleSize = vehicleSize;
+        this.parkedAt = parkedAt;
+        this.leftAt = leftAt;
+    }
+
+    public int getSlotNumber() {
+        return slotNumber;
+    }
+
+    public String getRegistrationNumber() {
+        return registrationNumber;
+    }
+
+    public int getDriverAge() {
+        return driverAge;
+    }
+
+    public VehicleSize getVehicleSize() {
+        return vehicleSize;
+    }
+
+    public long getParkedAt() {
+        return parkedAt;
+    }
+
+    public long getLeftAt() {
+        return leftAt;
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.parkinglot12.domain;
+
+
+/**
+ * Expected outcomes of the parking lot operations which are not a success.
+ *
+ * Operations returning a slot number return it as is on success (always >= 1),
+ * and the negative code of one of these otherwise, so the common cases cost
+ * neither an exception nor an allocation. ResultCode.of turns such a value back
+ * into the enum.
+ */
+public enum ResultCode {
+    SUCCESS(0, ""),
+    LOT_FULL(-1, "Sorry, parking lot is full"),
+    DUPLICATE_REGISTRATION(-2, "Two car can't have same ragistration number"),
+    NOT_FOUND(-3, "Not found"),
+    NO_VEHICLE_AT_SLOT(-4, "Car is not present at this slot number");
+
+    private static final ResultCode[] BY_NEGATED_CODE = values();
+
+    private final int code;
+    private final String message;
+
+    ResultCode(int code, String message) {
+        this.code = code;
+        this.message = message;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return the reply of the text protocol for this outcome
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @param result => slot number or negative code returned by an operation
+     * @return SUCCESS for a slot number, the matching ResultCode otherwise
+     */
+    public static ResultCode of(int result) {
+        return result >= 0 ? SUCCESS : BY_NEGATED_CODE[-result];
+    }
+
+    public static boolean isSuccess(int result) {
+        return result >= 0;
+    }
+}
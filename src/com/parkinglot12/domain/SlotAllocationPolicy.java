@@ -0,0 +1,28 @@
+package com.parkinglot12.domain;
+
+
+/**
+ * Which free slot a parking vehicle is given. Every policy keeps its own
+ * index, so picking a slot never scans the lot.
+ */
+public enum SlotAllocationPolicy {
+    /**
+     * The free slot with the lowest number, nearest to the entrance
+     */
+    LOWEST_SLOT_NUMBER,
+    /**
+     * The free slot with the shortest walk to the elevator of its floor, the
+     * lower floor on a tie
+     */
+    NEAREST_TO_ELEVATOR,
+    /**
+     * The lowest floor with a free slot, and on it the slot nearest to the
+     * elevator
+     */
+    FLOOR_BY_FLOOR,
+    /**
+     * The floor with the smallest share of its slots taken, and on it the slot
+     * nearest to the elevator
+     */
+    SPREAD_FLOORS
+}
@@ -0,0 +1,12 @@
+package com.parkinglot12.domain;
+
+
+/**
+ * Receives the parked vehicles of a status dump one by one, in slot order,
+ * instead of getting them back as one list.
+ */
+public interface StatusSink {
+
+    public void accept(int slotNumber, String registrationNumber, int driverAge);
+
+}
@@ -0,0 +1,74 @@
+package com.parkinglot12.domain;
+
+
+/**
+ * A vehicle parked in or leaving a slot, as seen by an event subscriber.
+ *
+ * One instance is reused for every event handed to a subscriber, so it is only
+ * valid during the call to TicketEventHandler.onEvent.
+ */
+public class TicketEvent {
+    public enum Type {
+        PARKED, LEFT
+    }
+
+    private long sequence;
+    private Type type;
+    private int slotNumber;
+    private String registrationNumber;
+    private int driverAge;
+    private VehicleSize vehicleSize;
+    private long timestamp;
+
+    public void set(long sequence, Type type, int slotNumber, String registrationNumber, int driverAge,
+            VehicleSize vehicleSize, long timestamp) {
+        this.sequence = sequence;
+        this.type = type;
+        this.slotNumber = slotNumber;
+        this.registrationNumber = registrationNumber;
+        this.driverAge = driverAge;
+        this.vehicleSize = vehicleSize;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return position of the event in the feed of its lot, counting from 0
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getSlotNumber() {
+        return slotNumber;
+    }
+
+    public String getRegistrationNumber() {
+        return registrationNumber;
+    }
+
+    public int getDriverAge() {
+        return driverAge;
+    }
+
+    public VehicleSize getVehicleSize() {
+        return vehicleSize;
+    }
+
+    /**
+     * @return when the event happened, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return sequence + " " + type + " " + slotNumber + " " + registrationNumber + " " + driverAge + " "
+                + vehicleSize + " " + timestamp;
+    }
+
+}
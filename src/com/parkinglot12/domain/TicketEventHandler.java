@@ -0,0 +1,12 @@
+package com.parkinglot12.domain;
+
+
+/**
+ * Subscriber of the park and leave events of a parking lot. Called on the
+ * subscriber's own thread, one event at a time, in the order of the feed.
+ */
+public interface TicketEventHandler {
+
+    public void onEvent(TicketEvent event);
+
+}
@@ -0,0 +1,31 @@
+package com.parkinglot12.domain;
+
+
+
+public class Van implements Vehicle {
+
+    private String registrationNumber;
+    private int driverAge;
+
+
+    public Van(String registrationNumber, int driverAge) {
+        if(registrationNumber == null || driverAge == 0) {
+            throw new IllegalArgumentException("Both registrationNumber & driver Age should not be 0");
+        }
+        this.registrationNumber = registrationNumber;
+        this.driverAge = driverAge;
+    }
+
+    public int getDriverAge() {
+        return this.driverAge;
+    }
+
+    public String getRegistrationNumber() {
+        return this.registrationNumber;
+    }
+
+    public VehicleSize getVehicleSize() {
+        return VehicleSize.VAN;
+    }
+
+}
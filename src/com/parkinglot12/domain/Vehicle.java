@@ -7,4 +7,6 @@ public interface Vehicle {
 
     public String getRegistrationNumber();
 
+    public VehicleSize getVehicleSize();
+
 }
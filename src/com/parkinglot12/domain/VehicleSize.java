@@ -0,0 +1,50 @@
+package com.parkinglot12.domain;
+
+/**
+ * Size class of a vehicle and of the slot it parks in, smallest first.
+ *
+ * A vehicle fits a slot of its own size or of any bigger size. It is given a
+ * slot of its own size while there is one, and falls back to the next bigger
+ * size after that => a motorcycle takes a car slot before a van slot, a van
+ * only fits a van slot. The journal stores a size by its place in this order,
+ * so the order is part of the journal format.
+ */
+public enum VehicleSize {
+    MOTORCYCLE("motorcycle"),
+    CAR("car"),
+    VAN("van");
+
+    private final String noun;
+
+    VehicleSize(String noun) {
+        this.noun = noun;
+    }
+
+    /**
+     * @return what the vehicle is called in the command results, e.g. "car"
+     */
+    public String getNoun() {
+        return noun;
+    }
+
+    /**
+     * @return true if a vehicle of this size may park in a slot of slotSize
+     */
+    public boolean fits(VehicleSize slotSize) {
+        return slotSize.ordinal() >= ordinal();
+    }
+
+    /**
+     * @return a vehicle of this size
+     */
+    public Vehicle newVehicle(String registrationNumber, int driverAge) {
+        switch (this) {
+        case MOTORCYCLE:
+            return new Motorcycle(registrationNumber, driverAge);
+        case VAN:
+            return new Van(registrationNumber, driverAge);
+        default:
+            return new Car(registrationNumber, driverAge);
+        }
+    }
+}
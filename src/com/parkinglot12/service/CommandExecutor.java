@@ -1,16 +1,109 @@
 package com.parkinglot12.service;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
+import java.util.Locale;
 
-import com.parkinglot12.domain.Car;
+import javax.management.JMException;
+
+import com.parkinglot12.domain.FloorLayout;
+import com.parkinglot12.domain.LeaveReceipt;
+import com.parkinglot12.domain.ResultCode;
+import com.parkinglot12.domain.SlotAllocationPolicy;
 import com.parkinglot12.domain.StatusResponse;
+import com.parkinglot12.domain.VehicleSize;
 import com.parkinglot12.service.exceptions.ParkingLotException;
-import java.io.*;
+
 public class CommandExecutor {
-    private static CommandExecutor commandExecutor;
+    private static volatile CommandExecutor commandExecutor;
+    // most vehicles or slots a batch command may carry
+    private static final int MAX_BATCH_SIZE = 10000;
+    // ends the option naming the slots of a size in create_parking_lot, e.g. Van_slots
+    private static final String SLOTS_SUFFIX = "_slots";
+    // pre-encoded parts of the results, filled in around the values of each line
+    private static final byte[] NOT_A_VALID_COMMAND = ResponseEncoder.template("Not a valid Command");
+    private static final byte[] NULL = ResponseEncoder.template("null");
+    private static final byte[] SEPARATOR = ResponseEncoder.template(", ");
+    private static final byte[] CREATED = ResponseEncoder.template("Created parking of ");
+    private static final byte[] SLOTS = ResponseEncoder.template(" slots");
+    private static final byte[] PARKED_AT = ResponseEncoder.template("\" has been parked at slot number ");
+    private static final byte[] SLOT_NUMBER = ResponseEncoder.template("Slot number ");
+    private static final byte[] RESERVED_FOR = ResponseEncoder.template(" is reserved for vehicle registration number \"");
+    private static final byte[] RESERVED_MINUTES = ResponseEncoder.template("\" for ");
+    private static final byte[] MINUTE = ResponseEncoder.template(" minute");
+    private static final byte[] MINUTES = ResponseEncoder.template(" minutes");
+    private static final byte[] STAY_NOT_LIMITED = ResponseEncoder.template("Maximum stay is not limited");
+    private static final byte[] MAXIMUM_STAY = ResponseEncoder.template("Maximum stay is ");
+    private static final byte[] STATUS_REGISTRATION = ResponseEncoder.template("           ");
+    private static final byte[] STATUS_DRIVER_AGE = ResponseEncoder.template("      ");
+    private static final byte[] NEXT = ResponseEncoder.template("Next ");
+    // negated ResultCode => its message
+    private static final byte[][] RESULT_MESSAGES = new byte[ResultCode.values().length][];
+    // vehicle size => start of a park result naming the vehicle, e.g. "Car with ..."
+    private static final byte[][] PARKED_VEHICLES = new byte[VehicleSize.values().length][];
+    // vehicle size => the parts of a leave result naming the vehicle
+    private static final byte[][] LEFT_VEHICLES = new byte[VehicleSize.values().length][];
+    private static final byte[][] LEFT_DRIVERS = new byte[VehicleSize.values().length][];
+
+    static {
+        for (ResultCode resultCode : ResultCode.values()) {
+            RESULT_MESSAGES[-resultCode.getCode()] = ResponseEncoder.template(resultCode.getMessage());
+        }
+        for (VehicleSize vehicleSize : VehicleSize.values()) {
+            String noun = vehicleSize.getNoun();
+            PARKED_VEHICLES[vehicleSize.ordinal()] = ResponseEncoder.template(
+                    Character.toUpperCase(noun.charAt(0)) + noun.substring(1) + " with vehicle registration number \"");
+            LEFT_VEHICLES[vehicleSize.ordinal()] = ResponseEncoder.template(
+                    " vacated, the " + noun + " with vehicle registration number \"");
+            LEFT_DRIVERS[vehicleSize.ordinal()] = ResponseEncoder.template(
+                    "\" left the space, the driver of the " + noun + " was of age ");
+        }
+    }
 
-    private CommandExecutor() {
+    private final ParkingLotRegistry parkingLotRegistry;
+    // open addressing by keyword hash => keyword and the command it dispatches to
+    private final String[] keywords;
+    private final Command[] commands;
+    private final CommandName[] commandNames;
+    private final CommandMetrics metrics;
+    // every thread reuses its own tokenizer and leave receipt line after line
+    private final ThreadLocal<CommandTokenizer> tokenizers;
+    private final ThreadLocal<LeaveReceipt> leaveReceipts;
+    private final ThreadLocal<ResponseEncoder> responses;
 
+    private CommandExecutor() {
+        parkingLotRegistry = new ParkingLotRegistry();
+        keywords = new String[32];
+        commands = new Command[32];
+        commandNames = new CommandName[32];
+        String[] names = new String[CommandName.values().length];
+        for (CommandName commandName : CommandName.values()) {
+            names[commandName.ordinal()] = commandName.name();
+        }
+        metrics = new CommandMetrics(names, parkingLotRegistry);
+        tokenizers = ThreadLocal.withInitial(CommandTokenizer::new);
+        leaveReceipts = ThreadLocal.withInitial(LeaveReceipt::new);
+        responses = ThreadLocal.withInitial(ResponseEncoder::new);
+        register(CommandName.Create_parking_lot, new CreateParkingLotCommand());
+        register(CommandName.Park, new ParkCommand());
+        register(CommandName.Leave, new LeaveCommand());
+        register(CommandName.Vehicle_registration_number_for_driver_of_age, new RegistrationNumbersForDriverAgeCommand());
+        register(CommandName.Slot_numbers_for_driver_of_age, new SlotNumbersForDriverAgeCommand());
+        register(CommandName.Slot_number_for_car_with_number, new SlotNumberCommand());
+        register(CommandName.Status, new StatusCommand());
+        register(CommandName.Park_batch, new ParkBatchCommand());
+        register(CommandName.Leave_batch, new LeaveBatchCommand());
+        register(CommandName.Reserve, new ReserveCommand());
+        register(CommandName.Max_stay, new MaxStayCommand());
+        register(CommandName.Overstayed_vehicles, new OverstayedVehiclesCommand());
+        register(CommandName.Count_for_driver_age_between, new CountForDriverAgesCommand());
+        register(CommandName.Slot_numbers_for_driver_age_between, new SlotNumbersForDriverAgesCommand());
+        register(CommandName.Vehicle_registration_numbers_for_driver_age_between,
+                new RegistrationNumbersForDriverAgesCommand());
+        register(CommandName.Occupied_slot_count, new OccupiedSlotCountCommand());
     }
 
     /**
@@ -18,94 +111,180 @@ public class CommandExecutor {
      *
      * @return CommandExecutor instance
      */
-    public static CommandExecutor getInstance() {
+    public static synchronized CommandExecutor getInstance() {
         if (commandExecutor == null) {
             commandExecutor = new CommandExecutor();
         }
         return commandExecutor;
     }
 
-    private CommandName getCommandName(String commandString) {
+    private void register(CommandName commandName, Command command) {
+        String keyword = commandName.name();
+        int mask = keywords.length - 1;
+        int bucket = keyword.hashCode() & mask;
+        while (keywords[bucket] != null) {
+            bucket = (bucket + 1) & mask;
+        }
+        keywords[bucket] = keyword;
+        commands[bucket] = command;
+        commandNames[bucket] = commandName;
+    }
+
+    /**
+     * @return bucket of the command in the dispatch table, -1 if the line names
+     *         none
+     */
+    private int getCommand(CommandTokenizer tokens) {
 
-        CommandName commandName = null;
+        int command = -1;
 
-        if (commandString == null) {
+        if (tokens.size() == 0 || tokens.isEmpty(0)) {
             System.out.println("Not a valid input");
         } else {
-            String[] commandStringArray = commandString.split(" ");
-            if ("".equals(commandStringArray[0])) {
-                System.out.println("Not a valid input");
-            } else {
-                try {
-                    commandName = CommandName.valueOf(commandStringArray[0]);
-                } catch (Exception e) {
-                    System.out.println("Unknown Command");
+            int mask = keywords.length - 1;
+            for (int bucket = tokens.hash(0) & mask; keywords[bucket] != null; bucket = (bucket + 1) & mask) {
+                if (tokens.equals(0, keywords[bucket])) {
+                    command = bucket;
+                    break;
                 }
             }
+            if (command == -1) {
+                System.out.println("Unknown Command");
+            }
         }
-        return commandName;
+        return command;
 
     }
 
     /**
-     * the main function to execute the commands
+     * the main function to execute the commands. A command may be addressed to
+     * a named lot by prefixing it with "Lot lotId ", otherwise it goes to the
+     * default lot. Commands for different lots can run on different threads.
+     *
+     * The line is tokenized in place and dispatched to a reusable command, so
+     * parsing it allocates nothing. The time every command takes and every
+     * rejected line are recorded in the metrics.
      * @param commandString
      * @return boolean if the execution is success or not
      */
-    public String execute(String commandString) {
-
-        CommandName commandName = getCommandName(commandString);
-
-        if (commandName == null) {
-            return  "Not a valid Command";
-        }
-        String[] commandStringArray = commandString.split(" ");
-        Command command;
-
-        switch (commandName) {
-            case Create_parking_lot:
-                command = new CreateParkingLotCommand(commandStringArray);
-                break;
-            case Park:
-                command = new ParkCommand(commandStringArray);
-                break;
-            case Leave:
-                command = new LeaveCommand(commandStringArray);
-                break;
-            case Vehicle_registration_number_for_driver_of_age:
-                command = new RegistrationNumbersForDriverAgeCommand(commandStringArray);
-                break;
-            case Slot_numbers_for_driver_of_age:
-                command = new SlotNumbersForDriverAgeCommand(commandStringArray);
-                break;
-            case Slot_number_for_car_with_number:
-                command = new SlotNumberCommand(commandStringArray);
-                break;
-            default:
-                System.out.println("Unknown Command");
-                return "Not a valid Command";
+    public String execute(CharSequence commandString) {
+        ResponseEncoder response = responses.get();
+        response.reset();
+        execute(commandString, response);
+        return response.toString();
+    }
+
+    /**
+     * Same as execute(CharSequence), with the result rendered at the end of the
+     * caller's encoder instead of returned, so a line costs no String at all
+     *
+     * @param response => receives the result, without a line ending
+     */
+    public void execute(CharSequence commandString, ResponseEncoder response) {
+        long start = System.nanoTime();
+
+        if (commandString == null) {
+            System.out.println("Not a valid input");
+            metrics.reject(CommandMetrics.Rejection.INVALID_COMMAND);
+            response.append(NOT_A_VALID_COMMAND);
+            return;
         }
+        CommandTokenizer tokens = tokenizers.get();
+        tokens.reset(commandString);
+
+        int bucket = getCommand(tokens);
+
+        if (bucket == -1) {
+            metrics.reject(CommandMetrics.Rejection.INVALID_COMMAND);
+            response.append(NOT_A_VALID_COMMAND);
+            return;
+        }
+        execute(commands[bucket], tokens, response);
+        metrics.record(commandNames[bucket].ordinal(), System.nanoTime() - start);
+    }
 
+    private void execute(Command command, CommandTokenizer tokens, ResponseEncoder response) {
         try {
-            command.validate();
+            command.validate(tokens);
         } catch (IllegalArgumentException e) {
             System.out.println("Please provide a valid argument");
-            return "Not a valid Command";
+            metrics.reject(CommandMetrics.Rejection.INVALID_ARGUMENT);
+            response.append(NOT_A_VALID_COMMAND);
+            return;
         }
 
-        String output = "";
+        // a command failing halfway leaves nothing of its result behind
+        int mark = response.length();
         try {
-            output = command.execute();
+            command.execute(tokens, response);
         } catch (ParkingLotException e) {
-//            System.out.print(e.getMessage());
-            return e.getMessage();
+            metrics.reject(CommandMetrics.Rejection.FAILED);
+            response.truncate(mark);
+            response.append(e.getMessage());
         } catch(Exception e) {
             System.out.println("Unknown System Issue");
             e.printStackTrace();
-            return "Not a valid Command";
+            metrics.reject(CommandMetrics.Rejection.ERROR);
+            response.truncate(mark);
+            response.append(NOT_A_VALID_COMMAND);
         }
+    }
+
+    /**
+     * Renders the message of a negative result code
+     */
+    private static void appendResult(ResponseEncoder response, int result) {
+        response.append(RESULT_MESSAGES[-result]);
+    }
+
+    /**
+     * @return the metrics of this executor
+     */
+    public CommandMetricsMBean getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Publishes the metrics as the MBean com.parkinglot12:type=CommandMetrics
+     * and, if a period is given, prints them to out every period
+     *
+     * @param dumpPeriodSeconds => 0 for JMX only
+     * @param out               => stream the periodic dump goes to
+     */
+    public void publishMetrics(long dumpPeriodSeconds, PrintStream out) throws JMException {
+        metrics.publish(dumpPeriodSeconds, out);
+    }
+
+    /**
+     * Makes the lots of this executor survive a restart => every lot is
+     * journaled under the given directory, and the lots journaled there by an
+     * earlier run are recovered. Call it before the first command.
+     *
+     * @param directory => directory of the journals
+     * @return number of lots recovered
+     */
+    public int enableJournal(Path directory) throws IOException {
+        return parkingLotRegistry.enableJournal(directory);
+    }
 
-        return output;
+    /**
+     * Programmatic API of a lot created through this executor
+     *
+     * @param lotId => id of the lot, "default" for commands without a "Lot" prefix
+     * @return ParkingLotService of the lot
+     */
+    public ParkingLotService getParkingLot(String lotId) {
+        return parkingLotRegistry.get(lotId);
+    }
+
+    /**
+     * @return ParkingLotService of the lot the command is addressed to
+     */
+    private ParkingLotService parkingLotFor(CommandTokenizer tokens) {
+        if (tokens.hasLotId()) {
+            return parkingLotRegistry.get(tokens.getLine(), tokens.lotIdStart(), tokens.lotIdEnd());
+        }
+        return parkingLotRegistry.get(ParkingLotRegistry.DEFAULT_LOT_ID);
     }
 
     /**
@@ -114,101 +293,394 @@ public class CommandExecutor {
      */
     private enum CommandName {
         Create_parking_lot, Park, Leave, Vehicle_registration_number_for_driver_of_age,
-        Slot_numbers_for_driver_of_age, Slot_number_for_car_with_number
+        Slot_numbers_for_driver_of_age, Slot_number_for_car_with_number, Status, Park_batch, Leave_batch,
+        Reserve, Max_stay, Overstayed_vehicles, Count_for_driver_age_between, Slot_numbers_for_driver_age_between,
+        Vehicle_registration_numbers_for_driver_age_between, Occupied_slot_count
     }
 
     /**
-     * Command Interface which validates & executes the command
+     * Command Interface which validates & executes the command. Commands hold
+     * no state of their own, one instance serves every line.
      *
      */
     private interface Command {
-        public void validate();
+        public void validate(CommandTokenizer tokens);
 
-        public String execute();
+        /**
+         * @param response => receives the result of the line
+         */
+        public void execute(CommandTokenizer tokens, ResponseEncoder response);
     }
 
     /**
-     * Command Implementing create_parking_lot
+     * Command Implementing create_parking_lot => "Create_parking_lot
+     * <numberOfSlots> [<policy> <floors> [<elevatorPosition>]] [<size>_slots
+     * <count> ...]" where policy is one of SlotAllocationPolicy written like a
+     * command, e.g. Nearest_to_elevator, and the slots are spread evenly over
+     * the floors. Motorcycle_slots and Van_slots take that many of the slots
+     * for vehicles of that size, the others are car slots.
      *
      */
     private class CreateParkingLotCommand implements Command {
-        private String[] commandStringArray;
 
-        CreateParkingLotCommand(String[] s) {
-            commandStringArray = s;
+        public void validate(CommandTokenizer tokens) {
+            int options = firstOption(tokens);
+            if ((options != 2 && options != 4 && options != 5) || (tokens.size() - options) % 2 != 0) {
+                throw new IllegalArgumentException(
+                        "create_parking_lot command should have 1, 3 or 4 arguments and then pairs of slot counts");
+            }
+            int numberOfSlots = tokens.parseInt(1);
+            if (numberOfSlots < 1) {
+                // refused by the registry with its own message, whatever the options
+                return;
+            }
+            if (options > 2) {
+                policyOf(tokens);
+                int floors = tokens.parseInt(3);
+                if (floors < 1 || floors > numberOfSlots) {
+                    throw new IllegalArgumentException("Number of floors should be 1 to the number of slots");
+                }
+                if (options > 4 && tokens.parseInt(4) < 1) {
+                    throw new IllegalArgumentException("Elevator position cannot be less than 1");
+                }
+            }
+            int[] slotCounts = slotCountsOf(tokens, options);
+            if (slotCounts[VehicleSize.CAR.ordinal()] < 0) {
+                throw new IllegalArgumentException("More slots of other sizes than slots in the lot");
+            }
+        }
+
+        public void execute(CommandTokenizer tokens, ResponseEncoder response) {
+            int numberOfSlots = tokens.parseInt(1);
+            String lotId = tokens.hasLotId()
+                    ? tokens.getLine().subSequence(tokens.lotIdStart(), tokens.lotIdEnd()).toString()
+                    : ParkingLotRegistry.DEFAULT_LOT_ID;
+            int options = firstOption(tokens);
+            if (tokens.size() == 2 || numberOfSlots < 1) {
+                parkingLotRegistry.create(lotId, numberOfSlots);
+            } else {
+                int floors = options > 2 ? tokens.parseInt(3) : 1;
+                int elevatorPosition = options > 4 ? tokens.parseInt(4) : 1;
+                SlotAllocationPolicy policy = options > 2 ? policyOf(tokens) : SlotAllocationPolicy.LOWEST_SLOT_NUMBER;
+                parkingLotRegistry.create(lotId,
+                        FloorLayout.uniform(slotCountsOf(tokens, options), floors, elevatorPosition), policy);
+            }
+            response.append(CREATED).append(tokens.getLine(), tokens.start(1), tokens.end(1)).append(SLOTS);
+        }
+
+        private SlotAllocationPolicy policyOf(CommandTokenizer tokens) {
+            return SlotAllocationPolicy.valueOf(tokens.toString(2).toUpperCase(Locale.ROOT));
         }
 
-        public void validate() {
-            if (commandStringArray.length != 2) {
-                throw new IllegalArgumentException("create_parking_lot command should have exactly 1 argument");
+        /**
+         * @return index of the first "<size>_slots" token, the number of tokens
+         *         if there is none
+         */
+        private int firstOption(CommandTokenizer tokens) {
+            for (int i = 2; i < tokens.size(); i++) {
+                if (tokens.toString(i).toLowerCase(Locale.ROOT).endsWith(SLOTS_SUFFIX)) {
+                    return i;
+                }
             }
+            return tokens.size();
         }
 
-        public String execute() {
-            int numberOfSlots = Integer.parseInt(commandStringArray[1]);
-            TicketingSystem.createInstance(numberOfSlots);
-            return "Created parking of " + commandStringArray[1] + " slots";
+        /**
+         * @return number of slots of each size by VehicleSize.ordinal, the car
+         *         slots being the ones left
+         */
+        private int[] slotCountsOf(CommandTokenizer tokens, int options) {
+            int[] slotCounts = new int[VehicleSize.values().length];
+            long others = 0;
+            boolean[] given = new boolean[slotCounts.length];
+            for (int i = options; i < tokens.size(); i += 2) {
+                String option = tokens.toString(i).toLowerCase(Locale.ROOT);
+                VehicleSize size = vehicleSizeOf(option.substring(0, option.length() - SLOTS_SUFFIX.length()));
+                if (size == VehicleSize.CAR || given[size.ordinal()]) {
+                    throw new IllegalArgumentException("Slot count " + tokens.toString(i) + " is not allowed here");
+                }
+                int count = tokens.parseInt(i + 1);
+                if (count < 0) {
+                    throw new IllegalArgumentException("Number of slots cannot be negative");
+                }
+                given[size.ordinal()] = true;
+                slotCounts[size.ordinal()] = count;
+                others += count;
+            }
+            slotCounts[VehicleSize.CAR.ordinal()] = (int) Math.max(Integer.MIN_VALUE, tokens.parseInt(1) - others);
+            return slotCounts;
         }
     }
 
     /**
-     * holds the responsibility of implementing park command
+     * holds the responsibility of implementing park command => "Park
+     * <registrationNumber> driver_age <driverAge> [<vehicleSize>]" where the
+     * size is one of VehicleSize, e.g. Motorcycle, and a car by default
      *
      */
     private class ParkCommand implements Command {
 
-        private String[] commandStringArray;
+        public void validate(CommandTokenizer tokens) {
+            if (tokens.size() != 4 && tokens.size() != 5) {
+                throw new IllegalArgumentException("park command should have 4 or 5 arguments");
+            }
+            if (tokens.size() > 4) {
+                vehicleSizeOf(tokens.toString(4));
+            }
+        }
 
-        ParkCommand(String[] s) {
-            commandStringArray = s;
+        public void execute(CommandTokenizer tokens, ResponseEncoder response) {
+            ParkingLotService parkingLot = parkingLotFor(tokens);
+            /**
+             * park refuses to give two car the same ragistration number.
+             */
+            String registrationNumber = tokens.toString(1);
+            VehicleSize vehicleSize = tokens.size() > 4 ? vehicleSizeOf(tokens.toString(4)) : VehicleSize.CAR;
+            parkOutput(response, registrationNumber, vehicleSize,
+                    parkingLot.park(registrationNumber, tokens.parseInt(3), vehicleSize));
         }
+    }
 
-        public void validate() {
-            if (commandStringArray.length != 4) {
-                throw new IllegalArgumentException("park command should have exactly 4 arguments");
+    private static VehicleSize vehicleSizeOf(String token) {
+        return VehicleSize.valueOf(token.toUpperCase(Locale.ROOT));
+    }
+
+    private void parkOutput(ResponseEncoder response, String registrationNumber, VehicleSize vehicleSize,
+            int allocatedSlotNumber) {
+        if (allocatedSlotNumber < 0) {
+            appendRefusal(response, allocatedSlotNumber);
+        } else {
+            response.append(PARKED_VEHICLES[vehicleSize.ordinal()]).append(registrationNumber).append(PARKED_AT)
+                    .append(allocatedSlotNumber);
+        }
+    }
+
+    /**
+     * Renders a park or reserve refused with a negative result code
+     */
+    private void appendRefusal(ResponseEncoder response, int result) {
+        if (result == ResultCode.DUPLICATE_REGISTRATION.getCode()) {
+            // an invalid argument, counted as one like the lines refused by validate
+            metrics.reject(CommandMetrics.Rejection.INVALID_ARGUMENT);
+            response.append(NOT_A_VALID_COMMAND);
+        } else {
+            appendResult(response, result);
+        }
+    }
+
+    /**
+     * Renders a number of minutes, e.g. "1 minute" or "5 minutes"
+     */
+    private static ResponseEncoder appendMinutes(ResponseEncoder response, int minutes) {
+        return response.append(minutes).append(minutes == 1 ? MINUTE : MINUTES);
+    }
+
+    /**
+     * holds the responsibility of implementing leave command
+     *
+     */
+    private class LeaveCommand implements Command {
+
+        public void validate(CommandTokenizer tokens) {
+            if (tokens.size() != 2) {
+                throw new IllegalArgumentException("leave command should have exactly 1 argument");
             }
         }
 
-        public String execute() {
-            TicketingSystem ticketingSystem = TicketingSystem.getInstance();
-            /**
-             * checking whether we are giving two car the same ragistration number.
-             */
-            boolean carPresentAlready=ticketingSystem.ragistrationNumberAvailable(commandStringArray[1]);
-            if(carPresentAlready){
-                throw new IllegalArgumentException("Two car can't have same ragistration number");
+        public void execute(CommandTokenizer tokens, ResponseEncoder response) {
+            ParkingLotService parkingLot = parkingLotFor(tokens);
+            LeaveReceipt vehicle = leaveReceipts.get();
+            leaveOutput(response, tokens, 1, parkingLot.leave(tokens.parseInt(1), vehicle), vehicle);
+        }
+    }
+
+    /**
+     * @param slotNumber => token holding the slot number, written as given
+     */
+    private static void leaveOutput(ResponseEncoder response, CommandTokenizer tokens, int slotNumber, int result,
+            LeaveReceipt vehicle) {
+        if (result < 0) {
+            appendResult(response, result);
+            return;
+        }
+        int size = vehicle.getVehicleSize().ordinal();
+        response.append(SLOT_NUMBER).append(tokens.getLine(), tokens.start(slotNumber), tokens.end(slotNumber))
+                .append(LEFT_VEHICLES[size]).append(vehicle.getRegistrationNumber()).append(LEFT_DRIVERS[size])
+                .append(vehicle.getDriverAge());
+    }
+
+    /**
+     * holds the responsibility of implementing park batch command => "Park_batch
+     * <registrationNumber> driver_age <driverAge> ..." parks every vehicle of
+     * the line in one go and answers one line per vehicle, the same line Park
+     * would have answered
+     *
+     */
+    private class ParkBatchCommand implements Command {
+
+        public void validate(CommandTokenizer tokens) {
+            int arguments = tokens.size() - 1;
+            if (arguments < 3 || arguments % 3 != 0 || arguments / 3 > MAX_BATCH_SIZE) {
+                throw new IllegalArgumentException(
+                        "park batch command should have 1 to " + MAX_BATCH_SIZE + " groups of 3 arguments");
             }
-            else {
-                int allocatedSlotNumber = ticketingSystem
-                        .issueParkingTicket(new Car(commandStringArray[1], Integer.parseInt(commandStringArray[3])));
-                return "Car with vehicle registration number \"" + commandStringArray[1] + "\" has been parked at slot number " + allocatedSlotNumber;
+            // a bad age would otherwise only show up halfway through the batch
+            for (int i = 3; i <= arguments; i += 3) {
+                int driverAge = tokens.parseInt(i);
+                if (driverAge < 1 || driverAge > Short.MAX_VALUE) {
+                    throw new IllegalArgumentException("Driver Age is out of range");
+                }
+            }
+        }
+
+        public void execute(CommandTokenizer tokens, ResponseEncoder response) {
+            ParkingLotService parkingLot = parkingLotFor(tokens);
+            int count = (tokens.size() - 1) / 3;
+            String[] registrationNumbers = new String[count];
+            int[] driverAges = new int[count];
+            for (int i = 0; i < count; i++) {
+                registrationNumbers[i] = tokens.toString(1 + 3 * i);
+                driverAges[i] = tokens.parseInt(3 + 3 * i);
+            }
+            int[] results = new int[count];
+            parkingLot.parkAll(registrationNumbers, driverAges, results);
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    response.append('\n');
+                }
+                parkOutput(response, registrationNumbers[i], VehicleSize.CAR, results[i]);
             }
         }
     }
 
     /**
-     * holds the responsibility of implementing leave command
+     * holds the responsibility of implementing leave batch command =>
+     * "Leave_batch <slotNumber> ..." empties every slot of the line in one go
+     * and answers one line per slot, the same line Leave would have answered
      *
      */
-    private class LeaveCommand implements Command {
-        private String[] commandStringArray;
+    private class LeaveBatchCommand implements Command {
 
-        LeaveCommand(String[] s) {
-            commandStringArray = s;
+        public void validate(CommandTokenizer tokens) {
+            int arguments = tokens.size() - 1;
+            if (arguments < 1 || arguments > MAX_BATCH_SIZE) {
+                throw new IllegalArgumentException(
+                        "leave batch command should have 1 to " + MAX_BATCH_SIZE + " arguments");
+            }
+            for (int i = 1; i <= arguments; i++) {
+                tokens.parseInt(i);
+            }
         }
 
-        public void validate() {
-            if (commandStringArray.length != 2) {
-                throw new IllegalArgumentException("leave command should have exactly 1 argument");
+        public void execute(CommandTokenizer tokens, ResponseEncoder response) {
+            ParkingLotService parkingLot = parkingLotFor(tokens);
+            int count = tokens.size() - 1;
+            int[] slotNumbers = new int[count];
+            LeaveReceipt[] receipts = new LeaveReceipt[count];
+            for (int i = 0; i < count; i++) {
+                slotNumbers[i] = tokens.parseInt(1 + i);
+                receipts[i] = new LeaveReceipt();
+            }
+            int[] results = new int[count];
+            parkingLot.leaveAll(slotNumbers, receipts, results);
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    response.append('\n');
+                }
+                leaveOutput(response, tokens, 1 + i, results[i], receipts[i]);
             }
         }
+    }
+
+    /**
+     * holds the responsibility of implementing reserve command => "Reserve
+     * <registrationNumber> <minutes> [<vehicleSize>]" holds a slot for the
+     * vehicle for that many minutes, its next Park takes that slot
+     *
+     */
+    private class ReserveCommand implements Command {
 
-        public String execute() {
-            TicketingSystem ticketingSystem = TicketingSystem.getInstance();
-            String car_registration_number=ticketingSystem.getVehicleRegistrationFromSlotNumber(Integer.parseInt(commandStringArray[1]));
-            int driver_age=ticketingSystem.getDriverAge(Integer.parseInt(commandStringArray[1]));
-            ticketingSystem.exitVehicle(Integer.parseInt(commandStringArray[1]));
-            return "Slot number " + commandStringArray[1] + " vacated, the car with vehicle registration number \""+ car_registration_number + "\" left the space, the driver of the car was of age "+driver_age;
+        public void validate(CommandTokenizer tokens) {
+            if (tokens.size() != 3 && tokens.size() != 4) {
+                throw new IllegalArgumentException("reserve command should have 2 or 3 arguments");
+            }
+            if (tokens.parseInt(2) < 1) {
+                throw new IllegalArgumentException("Reservation cannot be shorter than 1 minute");
+            }
+            if (tokens.size() > 3) {
+                vehicleSizeOf(tokens.toString(3));
+            }
+        }
+
+        public void execute(CommandTokenizer tokens, ResponseEncoder response) {
+            ParkingLotService parkingLot = parkingLotFor(tokens);
+            String registrationNumber = tokens.toString(1);
+            VehicleSize vehicleSize = tokens.size() > 3 ? vehicleSizeOf(tokens.toString(3)) : VehicleSize.CAR;
+            int minutes = tokens.parseInt(2);
+            int slotNumber = parkingLot.reserve(registrationNumber, vehicleSize, Duration.ofMinutes(minutes));
+            if (slotNumber < 0) {
+                appendRefusal(response, slotNumber);
+                return;
+            }
+            response.append(SLOT_NUMBER).append(slotNumber).append(RESERVED_FOR).append(registrationNumber)
+                    .append(RESERVED_MINUTES);
+            appendMinutes(response, minutes);
+        }
+    }
+
+    /**
+     * holds the responsibility of implementing max stay command => "Max_stay
+     * <minutes>" flags the vehicles parked longer than that, 0 lifts the limit
+     *
+     */
+    private class MaxStayCommand implements Command {
+
+        public void validate(CommandTokenizer tokens) {
+            if (tokens.size() != 2) {
+                throw new IllegalArgumentException("max stay command should have exactly 1 argument");
+            }
+            if (tokens.parseInt(1) < 0) {
+                throw new IllegalArgumentException("Maximum stay cannot be negative");
+            }
+        }
+
+        public void execute(CommandTokenizer tokens, ResponseEncoder response) {
+            ParkingLotService parkingLot = parkingLotFor(tokens);
+            int minutes = tokens.parseInt(1);
+            parkingLot.setMaxStay(Duration.ofMinutes(minutes));
+            if (minutes == 0) {
+                response.append(STAY_NOT_LIMITED);
+            } else {
+                appendMinutes(response.append(MAXIMUM_STAY), minutes);
+            }
+        }
+    }
+
+    /**
+     * holds the responsibility of implementing overstayed vehicles command =>
+     * registration numbers of the vehicles parked longer than the maximum stay
+     *
+     */
+    private class OverstayedVehiclesCommand implements Command {
+
+        public void validate(CommandTokenizer tokens) {
+            if (tokens.size() != 1) {
+                throw new IllegalArgumentException("overstayed vehicles command takes no argument");
+            }
+        }
+
+        public void execute(CommandTokenizer tokens, ResponseEncoder response) {
+            ParkingLotService parkingLot = parkingLotFor(tokens);
+            int start = response.length();
+            for (String registrationNumber : parkingLot.getOverstayedRegistrationNumbers()) {
+                if (response.length() > start) {
+                    response.append(SEPARATOR);
+                }
+                response.append(registrationNumber);
+            }
+            if (response.length() == start) {
+                appendResult(response, ResultCode.NOT_FOUND.getCode());
+            }
         }
     }
 
@@ -218,33 +690,28 @@ public class CommandExecutor {
      *
      */
     private class RegistrationNumbersForDriverAgeCommand implements Command {
-        private String[] commandStringArray;
-
-        RegistrationNumbersForDriverAgeCommand(String[] s) {
-            commandStringArray = s;
-        }
 
-        public void validate() {
-            if (commandStringArray.length != 2) {
+        public void validate(CommandTokenizer tokens) {
+            if (tokens.size() != 2) {
                 throw new IllegalArgumentException(
                         "registration_numbers_for_cars_with_colour command should have exactly 1 argument");
             }
         }
 
-        public String execute() {
-            TicketingSystem ticketingSystem = TicketingSystem.getInstance();
-            List<String> registrationNumbersList = ticketingSystem
-                    .getRegistrationNumbersFromDriverAge(Integer.parseInt(commandStringArray[1]));
-            StringBuilder outputStringBuilder = new StringBuilder();
+        public void execute(CommandTokenizer tokens, ResponseEncoder response) {
+            ParkingLotService parkingLot = parkingLotFor(tokens);
+            List<String> registrationNumbersList = parkingLot
+                    .getRegistrationNumbersForDriverAge(tokens.parseInt(1));
+            int start = response.length();
             for (String registrationNumber : registrationNumbersList) {
-                if (outputStringBuilder.length() > 0) {
-                    outputStringBuilder.append(", ");
+                if (response.length() > start) {
+                    response.append(SEPARATOR);
                 }
-                outputStringBuilder.append(registrationNumber);
+                response.append(registrationNumber);
+            }
+            if (response.length() == start) {
+                response.append(NULL);
             }
-            if(outputStringBuilder.toString().length()==0)
-                return "null";
-            return outputStringBuilder.toString();
         }
     }
 
@@ -254,30 +721,125 @@ public class CommandExecutor {
      *
      */
     private class SlotNumbersForDriverAgeCommand implements Command {
-        private String[] commandStringArray;
-
-        SlotNumbersForDriverAgeCommand(String[] s) {
-            commandStringArray = s;
-        }
 
-        public void validate() {
-            if (commandStringArray.length != 2) {
+        public void validate(CommandTokenizer tokens) {
+            if (tokens.size() != 2) {
                 throw new IllegalArgumentException(
                         "slot_numbers_for_cars_with_colour command should have exactly 1 argument");
             }
         }
 
-        public String execute() {
-            TicketingSystem ticketingSystem = TicketingSystem.getInstance();
-            List<Integer> slotNumbersList = ticketingSystem.getSlotNumbersFromDriverAge(Integer.parseInt(commandStringArray[1]));
-            StringBuilder outputStringBuilder = new StringBuilder();
+        public void execute(CommandTokenizer tokens, ResponseEncoder response) {
+            ParkingLotService parkingLot = parkingLotFor(tokens);
+            List<Integer> slotNumbersList = parkingLot.getSlotNumbersForDriverAge(tokens.parseInt(1));
+            int start = response.length();
             for (int slotNumber : slotNumbersList) {
-                if (outputStringBuilder.length() > 0) {
-                    outputStringBuilder.append(", ");
+                if (response.length() > start) {
+                    response.append(SEPARATOR);
                 }
-                outputStringBuilder.append(slotNumber);
+                response.append(slotNumber);
             }
-            return outputStringBuilder.toString();
+        }
+    }
+
+    /**
+     * Checks the "<fromAge> <toAge>" arguments of the driver age range commands
+     */
+    private static void validateAgeRange(CommandTokenizer tokens, String command) {
+        if (tokens.size() != 3) {
+            throw new IllegalArgumentException(command + " command should have exactly 2 arguments");
+        }
+        int fromAge = tokens.parseInt(1);
+        if (fromAge < 1 || tokens.parseInt(2) < fromAge) {
+            throw new IllegalArgumentException("Driver age range should be 1 or more, lowest first");
+        }
+    }
+
+    /**
+     * holds the responsibility of implementing count for driver age between
+     * command => "Count_for_driver_age_between <fromAge> <toAge>" number of
+     * parked vehicles whose driver is fromAge to toAge old
+     *
+     */
+    private class CountForDriverAgesCommand implements Command {
+
+        public void validate(CommandTokenizer tokens) {
+            validateAgeRange(tokens, "count for driver age between");
+        }
+
+        public void execute(CommandTokenizer tokens, ResponseEncoder response) {
+            ParkingLotService parkingLot = parkingLotFor(tokens);
+            response.append(parkingLot.countForDriverAges(tokens.parseInt(1), tokens.parseInt(2)));
+        }
+    }
+
+    /**
+     * holds the responsibility of implementing slot numbers for driver age
+     * between command => slot numbers of the vehicles whose driver is fromAge
+     * to toAge old, in slot order
+     *
+     */
+    private class SlotNumbersForDriverAgesCommand implements Command {
+
+        public void validate(CommandTokenizer tokens) {
+            validateAgeRange(tokens, "slot numbers for driver age between");
+        }
+
+        public void execute(CommandTokenizer tokens, ResponseEncoder response) {
+            ParkingLotService parkingLot = parkingLotFor(tokens);
+            int start = response.length();
+            for (int slotNumber : parkingLot.getSlotNumbersForDriverAges(tokens.parseInt(1), tokens.parseInt(2))) {
+                if (response.length() > start) {
+                    response.append(SEPARATOR);
+                }
+                response.append(slotNumber);
+            }
+        }
+    }
+
+    /**
+     * holds the responsibility of implementing vehicle registration numbers for
+     * driver age between command => registration numbers of the vehicles whose
+     * driver is fromAge to toAge old, in slot order
+     *
+     */
+    private class RegistrationNumbersForDriverAgesCommand implements Command {
+
+        public void validate(CommandTokenizer tokens) {
+            validateAgeRange(tokens, "vehicle registration numbers for driver age between");
+        }
+
+        public void execute(CommandTokenizer tokens, ResponseEncoder response) {
+            ParkingLotService parkingLot = parkingLotFor(tokens);
+            int start = response.length();
+            for (String registrationNumber : parkingLot.getRegistrationNumbersForDriverAges(tokens.parseInt(1),
+                    tokens.parseInt(2))) {
+                if (response.length() > start) {
+                    response.append(SEPARATOR);
+                }
+                response.append(registrationNumber);
+            }
+            if (response.length() == start) {
+                response.append(NULL);
+            }
+        }
+    }
+
+    /**
+     * holds the responsibility of implementing occupied slot count command =>
+     * number of slots holding a vehicle
+     *
+     */
+    private class OccupiedSlotCountCommand implements Command {
+
+        public void validate(CommandTokenizer tokens) {
+            if (tokens.size() != 1) {
+                throw new IllegalArgumentException("occupied slot count command takes no argument");
+            }
+        }
+
+        public void execute(CommandTokenizer tokens, ResponseEncoder response) {
+            response.append(parkingLotFor(tokens).getOccupiedSlotCount());
         }
     }
 
@@ -287,23 +849,68 @@ public class CommandExecutor {
      *
      */
     private class SlotNumberCommand implements Command {
-        private String[] commandStringArray;
-
-        SlotNumberCommand(String[] s) {
-            commandStringArray = s;
-        }
 
-        public void validate() {
-            if (commandStringArray.length != 2) {
+        public void validate(CommandTokenizer tokens) {
+            if (tokens.size() != 2) {
                 throw new IllegalArgumentException(
                         "slot_number_for_registration_number command should have exactly 1 argument");
             }
         }
 
-        public String execute() {
-            TicketingSystem ticketingSystem = TicketingSystem.getInstance();
-            int slotNumber = ticketingSystem.getSlotNumberFromRegistrationNumber(commandStringArray[1]);
-            return "" + slotNumber;
+        public void execute(CommandTokenizer tokens, ResponseEncoder response) {
+            ParkingLotService parkingLot = parkingLotFor(tokens);
+            int slotNumber = parkingLot.findSlotNumber(tokens.getLine(), tokens.start(1), tokens.end(1));
+            if (slotNumber < 0) {
+                appendResult(response, slotNumber);
+            } else {
+                response.append(slotNumber);
+            }
+        }
+    }
+
+    /**
+     * holds the responsibility of implementing status command => "Status
+     * [pageSize [fromSlotNumber]]" lists one page of the parked vehicles in slot
+     * order, one per line, and ends with "Next <slotNumber>" when there are more
+     *
+     */
+    private class StatusCommand implements Command {
+        private static final int DEFAULT_PAGE_SIZE = 100;
+        private static final int MAX_PAGE_SIZE = 10000;
+
+        public void validate(CommandTokenizer tokens) {
+            if (tokens.size() > 3) {
+                throw new IllegalArgumentException("status command should have at most 2 arguments");
+            }
+            if (tokens.size() > 1) {
+                int pageSize = tokens.parseInt(1);
+                if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+                    throw new IllegalArgumentException("status page size should be 1 to " + MAX_PAGE_SIZE);
+                }
+            }
+            if (tokens.size() > 2) {
+                tokens.parseInt(2);
+            }
+        }
+
+        public void execute(CommandTokenizer tokens, ResponseEncoder response) {
+            ParkingLotService parkingLot = parkingLotFor(tokens);
+            int pageSize = tokens.size() > 1 ? tokens.parseInt(1) : DEFAULT_PAGE_SIZE;
+            int fromSlotNumber = tokens.size() > 2 ? tokens.parseInt(2) : 1;
+            int start = response.length();
+            int next = parkingLot.streamStatus(fromSlotNumber, pageSize, (slotNumber, registrationNumber, driverAge) -> {
+                if (response.length() > start) {
+                    response.append('\n');
+                }
+                response.append(slotNumber).append(STATUS_REGISTRATION).append(registrationNumber)
+                        .append(STATUS_DRIVER_AGE).append(driverAge);
+            });
+            if (next != -1) {
+                if (response.length() > start) {
+                    response.append('\n');
+                }
+                response.append(NEXT).append(next);
+            }
         }
     }
 
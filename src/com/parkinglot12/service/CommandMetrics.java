@@ -0,0 +1,191 @@
+package com.parkinglot12.service;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Latency and outcome metrics of a CommandExecutor => one LatencyHistogram
+ * per command, counts of rejected lines, and per lot the slot gauges and the
+ * parks and leaves its TicketingSystem turned away.
+ *
+ * Recording costs a nanoTime pair and an atomic increment per command, and
+ * nothing is allocated until the metrics are read.
+ */
+class CommandMetrics implements CommandMetricsMBean {
+    static final String OBJECT_NAME = "com.parkinglot12:type=CommandMetrics";
+
+    /**
+     * Why a line was rejected before or while it ran
+     */
+    enum Rejection {
+        INVALID_COMMAND, INVALID_ARGUMENT, FAILED, ERROR
+    }
+
+    private final String[] commandNames;
+    private final LatencyHistogram[] latencies;
+    private final LongAdder[] rejections;
+    private final ParkingLotRegistry parkingLotRegistry;
+    private ScheduledExecutorService dumper;
+
+    /**
+     * @param commandNames       => command index => name
+     * @param parkingLotRegistry => lots whose gauges are reported
+     */
+    CommandMetrics(String[] commandNames, ParkingLotRegistry parkingLotRegistry) {
+        this.commandNames = commandNames.clone();
+        this.parkingLotRegistry = parkingLotRegistry;
+        latencies = new LatencyHistogram[commandNames.length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        rejections = new LongAdder[Rejection.values().length];
+        for (int i = 0; i < rejections.length; i++) {
+            rejections[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param command => index of the command in commandNames
+     * @param nanos   => time the command took
+     */
+    void record(int command, long nanos) {
+        latencies[command].record(nanos);
+    }
+
+    void reject(Rejection rejection) {
+        rejections[rejection.ordinal()].increment();
+    }
+
+    /**
+     * Registers the MBean with the platform MBean server and, if a period is
+     * given, prints the dump to out every period
+     *
+     * @param dumpPeriodSeconds => 0 for no periodic dump
+     */
+    synchronized void publish(long dumpPeriodSeconds, PrintStream out) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!server.isRegistered(name)) {
+            server.registerMBean(new StandardMBean(this, CommandMetricsMBean.class), name);
+        }
+        if (dumpPeriodSeconds > 0 && dumper == null) {
+            dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "command-metrics-dump");
+                thread.setDaemon(true);
+                return thread;
+            });
+            dumper.scheduleAtFixedRate(() -> out.print(dump()), dumpPeriodSeconds, dumpPeriodSeconds,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public String[] getCommandNames() {
+        return commandNames.clone();
+    }
+
+    @Override
+    public long[] getCommandCounts() {
+        long[] counts = new long[commandNames.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = LatencyHistogram.count(latencies[i].snapshot());
+        }
+        return counts;
+    }
+
+    @Override
+    public double getLatencyMicros(String commandName, double percentile) {
+        for (int i = 0; i < commandNames.length; i++) {
+            if (commandNames[i].equals(commandName)) {
+                return LatencyHistogram.valueAtPercentile(latencies[i].snapshot(), percentile) / 1000.0;
+            }
+        }
+        throw new IllegalArgumentException("Unknown command " + commandName);
+    }
+
+    @Override
+    public long getInvalidCommandCount() {
+        return rejections[Rejection.INVALID_COMMAND.ordinal()].sum();
+    }
+
+    @Override
+    public long getInvalidArgumentCount() {
+        return rejections[Rejection.INVALID_ARGUMENT.ordinal()].sum();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return rejections[Rejection.FAILED.ordinal()].sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return rejections[Rejection.ERROR.ordinal()].sum();
+    }
+
+    @Override
+    public String[] getLotIds() {
+        List<String> lotIds = new ArrayList<String>(parkingLotRegistry.getLotIds());
+        Collections.sort(lotIds);
+        return lotIds.toArray(new String[0]);
+    }
+
+    @Override
+    public int getFreeSlots(String lotId) {
+        return parkingLotRegistry.get(lotId).getFreeSlotCount();
+    }
+
+    @Override
+    public int getOccupiedSlots(String lotId) {
+        return parkingLotRegistry.get(lotId).getOccupiedSlotCount();
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-46s %10s %10s %10s %10s %10s%n", "command", "count", "p50(us)", "p99(us)",
+                "p99.9(us)", "max(us)"));
+        for (int i = 0; i < commandNames.length; i++) {
+            long[] snapshot = latencies[i].snapshot();
+            long count = LatencyHistogram.count(snapshot);
+            if (count == 0) {
+                continue;
+            }
+            out.append(String.format("%-46s %10d %10.1f %10.1f %10.1f %10.1f%n", commandNames[i], count,
+                    LatencyHistogram.valueAtPercentile(snapshot, 50) / 1000.0,
+                    LatencyHistogram.valueAtPercentile(snapshot, 99) / 1000.0,
+                    LatencyHistogram.valueAtPercentile(snapshot, 99.9) / 1000.0,
+                    LatencyHistogram.maxValue(snapshot) / 1000.0));
+        }
+        out.append(String.format("rejected => invalid command %d, invalid argument %d, failed %d, error %d%n",
+                getInvalidCommandCount(), getInvalidArgumentCount(), getFailedCount(), getErrorCount()));
+        for (String lotId : getLotIds()) {
+            ParkingLotService service;
+            try {
+                service = parkingLotRegistry.get(lotId);
+            } catch (IllegalStateException e) {
+                // removed meanwhile
+                continue;
+            }
+            TicketingSystem ticketingSystem = service.getTicketingSystem();
+            out.append(String.format(
+                    "lot %s => slots %d, occupied %d, free %d, lot full %d, duplicate %d, no vehicle %d%n",
+                    lotId, service.getNumberOfSlots(), service.getOccupiedSlotCount(), service.getFreeSlotCount(),
+                    ticketingSystem.getLotFullCount(), ticketingSystem.getDuplicateCount(),
+                    ticketingSystem.getNoVehicleCount()));
+        }
+        return out.toString();
+    }
+}
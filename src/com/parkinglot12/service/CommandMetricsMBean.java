@@ -0,0 +1,52 @@
+package com.parkinglot12.service;
+
+/**
+ * Metrics of a CommandExecutor as seen over JMX, registered as
+ * com.parkinglot12:type=CommandMetrics. Latencies are in microseconds.
+ */
+public interface CommandMetricsMBean {
+
+    public String[] getCommandNames();
+
+    /**
+     * @return commands executed so far, in the order of getCommandNames
+     */
+    public long[] getCommandCounts();
+
+    /**
+     * @return latency of a command at a percentile (0 to 100) since start
+     */
+    public double getLatencyMicros(String commandName, double percentile);
+
+    /**
+     * @return lines which were not a known command
+     */
+    public long getInvalidCommandCount();
+
+    /**
+     * @return commands whose arguments failed validation
+     */
+    public long getInvalidArgumentCount();
+
+    /**
+     * @return commands which failed with a ParkingLotException
+     */
+    public long getFailedCount();
+
+    /**
+     * @return commands which failed with an unexpected error
+     */
+    public long getErrorCount();
+
+    public String[] getLotIds();
+
+    public int getFreeSlots(String lotId);
+
+    public int getOccupiedSlots(String lotId);
+
+    /**
+     * @return every metric as text, the same as the periodic dump
+     */
+    public String dump();
+
+}
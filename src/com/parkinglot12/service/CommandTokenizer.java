@@ -0,0 +1,180 @@
+package com.parkinglot12.service;
+
+/**
+ * Splits a command line into tokens in one pass, without copying it.
+ *
+ * Tokens are kept as offsets into the line and read back through the accessors,
+ * so splitting and parsing a line allocates nothing. Tokens are separated by
+ * single spaces and trailing empty tokens are dropped, exactly like
+ * String.split(" ") which the commands used to be parsed with.
+ *
+ * A line may start with "Lot lotId" to address a named lot; the accessors then
+ * number the tokens from the command name, which is token 0.
+ *
+ * One instance is reused line after line by a single thread.
+ */
+class CommandTokenizer {
+    private static final String LOT_KEYWORD = "Lot";
+
+    private CharSequence line;
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int count;
+    // index of the command name => 2 when the line starts with "Lot lotId", else 0
+    private int base;
+
+    /**
+     * Tokenizes a line, forgetting the previous one
+     *
+     * @param line => the command line, not null
+     */
+    void reset(CharSequence line) {
+        this.line = line;
+        count = 0;
+        base = 0;
+        int length = line.length();
+        int start = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i == length || line.charAt(i) == ' ') {
+                add(start, i);
+                start = i + 1;
+            }
+        }
+        // String.split drops trailing empty tokens, but never the first one
+        while (count > 1 && starts[count - 1] == ends[count - 1]) {
+            count--;
+        }
+        base = count > 0 && equals(0, LOT_KEYWORD) ? 2 : 0;
+    }
+
+    private void add(int start, int end) {
+        if (count == starts.length) {
+            int[] grownStarts = new int[count << 1];
+            int[] grownEnds = new int[count << 1];
+            System.arraycopy(starts, 0, grownStarts, 0, count);
+            System.arraycopy(ends, 0, grownEnds, 0, count);
+            starts = grownStarts;
+            ends = grownEnds;
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    CharSequence getLine() {
+        return line;
+    }
+
+    /**
+     * @return true if the line names a lot, which may still be missing its command
+     */
+    boolean hasLotId() {
+        return base == 2;
+    }
+
+    /**
+     * @return number of tokens from the command name on
+     */
+    int size() {
+        return Math.max(count - base, 0);
+    }
+
+    int start(int token) {
+        return starts[base + token];
+    }
+
+    int end(int token) {
+        return ends[base + token];
+    }
+
+    int lotIdStart() {
+        return starts[1];
+    }
+
+    int lotIdEnd() {
+        return ends[1];
+    }
+
+    boolean isEmpty(int token) {
+        return start(token) == end(token);
+    }
+
+    /**
+     * @return true if the token is exactly the given text
+     */
+    boolean equals(int token, String text) {
+        int start = starts[base + token];
+        int length = ends[base + token] - start;
+        if (length != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return same value as String.hashCode of the token
+     */
+    int hash(int token) {
+        int hash = 0;
+        for (int i = start(token), end = end(token); i < end; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+        return hash;
+    }
+
+    /**
+     * Parses the token in place, with the same rules and the same failures as
+     * Integer.parseInt
+     */
+    int parseInt(int token) {
+        int start = start(token);
+        int end = end(token);
+        int i = start;
+        boolean negative = false;
+        int limit = -Integer.MAX_VALUE;
+        if (i < end) {
+            char first = line.charAt(i);
+            if (first == '-') {
+                negative = true;
+                limit = Integer.MIN_VALUE;
+                i++;
+            } else if (first == '+') {
+                i++;
+            }
+        }
+        if (i == end) {
+            throw numberFormatException(token);
+        }
+        // accumulate negatively so that Integer.MIN_VALUE fits
+        int result = 0;
+        int multiplyLimit = limit / 10;
+        for (; i < end; i++) {
+            int digit = Character.digit(line.charAt(i), 10);
+            if (digit < 0 || result < multiplyLimit) {
+                throw numberFormatException(token);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw numberFormatException(token);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private NumberFormatException numberFormatException(int token) {
+        return new NumberFormatException("For input string: \"" + toString(token) + "\"");
+    }
+
+    /**
+     * @return the token as a new String => only for values that are kept
+     */
+    String toString(int token) {
+        return line.subSequence(start(token), end(token)).toString();
+    }
+}
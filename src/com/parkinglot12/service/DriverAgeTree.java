@@ -0,0 +1,49 @@
+package com.parkinglot12.service;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Number of parked vehicles per driver age as a Fenwick tree, so the count of
+ * any range of ages takes O(log A) for the 32767 possible ages.
+ *
+ * Every cell is changed by an atomic add, and adds commute, so parks and
+ * leaves of many gates update it without a lock. A count read while a park
+ * or leave is under way may or may not include it.
+ *
+ * A range count is the difference of two prefix sums read one after the
+ * other, so parks and leaves between the two reads may leave it below 0. It
+ * is cut to 0 then.
+ */
+class DriverAgeTree {
+    // ages are 1 to 32767, the tree is indexed by age
+    private static final int SIZE = 1 << 15;
+
+    private final AtomicIntegerArray tree = new AtomicIntegerArray(SIZE);
+
+    /**
+     * @param delta => 1 for a vehicle parked, -1 for one gone
+     */
+    void add(int driverAge, int delta) {
+        for (int i = driverAge; i < SIZE; i += i & -i) {
+            tree.getAndAdd(i, delta);
+        }
+    }
+
+    /**
+     * @return number of vehicles whose driver is fromAge to toAge old, both
+     *         inclusive
+     */
+    int count(int fromAge, int toAge) {
+        fromAge = Math.max(fromAge, 1);
+        toAge = Math.min(toAge, SIZE - 1);
+        return fromAge > toAge ? 0 : Math.max(0, prefix(toAge) - prefix(fromAge - 1));
+    }
+
+    private int prefix(int driverAge) {
+        int sum = 0;
+        for (int i = driverAge; i > 0; i -= i & -i) {
+            sum += tree.get(i);
+        }
+        return sum;
+    }
+}
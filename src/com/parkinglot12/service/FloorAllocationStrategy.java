@@ -0,0 +1,246 @@
+package com.parkinglot12.service;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import com.parkinglot12.domain.FloorLayout;
+import com.parkinglot12.domain.SlotAllocationPolicy;
+import com.parkinglot12.domain.VehicleSize;
+
+/**
+ * The floor aware policies of SlotAllocationPolicy, over the slots of one
+ * VehicleSize. Indexes count the slots of that size only, floor after floor,
+ * which are all the slots of a lot with a single size.
+ *
+ * Every floor has a FreeSlotIndex of its own over its slots ranked by the walk
+ * to its elevator => rank 0 is the slot nearest to the elevator, then the two
+ * slots one step further (the one towards the start of the floor first), and
+ * so on. The lowest free rank is the nearest free slot of the floor, found in
+ * O(log64 n).
+ *
+ * The floor is picked by a tournament tree over the floors: a node holds the
+ * better floor of its two children by the key of the policy, the lower floor
+ * on a tie, so the root is the best floor of the lot. A claim or release
+ * recomputes the nodes from its floor up to the root => O(log floors).
+ * Between racing gates a node may be stale for a moment; a gate sent to a floor
+ * which has filled up rebuilds the tree and asks again, so the tree heals
+ * itself and only those rare misses ever look at every floor.
+ */
+class FloorAllocationStrategy implements SlotAllocationStrategy {
+    private final SlotAllocationPolicy policy;
+    private final FreeSlotIndex occupancy;
+    // floors holding slots of the size, in floor order
+    private final Floor[] floors;
+    // floor => its first index, to find the floor of an index
+    private final int[] firstIndexes;
+    // node => best floor of its subtree, -1 for none; the root is node 1 and
+    // the leaf of floor f is node leafBase + f
+    private final AtomicIntegerArray nodes;
+    private final int leafBase;
+
+    /**
+     * @param occupancy => claims of the slots of the size, by index
+     */
+    FloorAllocationStrategy(SlotAllocationPolicy policy, FreeSlotIndex occupancy, FloorLayout layout,
+            VehicleSize size) {
+        if (layout.getSlotCount(size) != occupancy.getCapacity()) {
+            throw new IllegalArgumentException("Floor layout does not match the number of slots");
+        }
+        this.policy = policy;
+        this.occupancy = occupancy;
+        Floor[] withSlots = new Floor[layout.getFloorCount()];
+        int floorCount = 0;
+        int firstIndex = 0;
+        for (int floor = 0; floor < layout.getFloorCount(); floor++) {
+            int slots = layout.getSlotCount(floor, size);
+            if (slots == 0) {
+                continue;
+            }
+            // the elevator measured from the first slot of the size, which may be outside them
+            int elevator = layout.getElevatorPosition(floor) - 1
+                    - (layout.getFirstSlotNumber(floor, size) - layout.getFirstSlotNumber(floor));
+            int nearest = Math.max(0, Math.min(elevator, slots - 1));
+            withSlots[floorCount++] = new Floor(firstIndex, slots, nearest, Math.abs(elevator - nearest));
+            firstIndex += slots;
+        }
+        floors = Arrays.copyOf(withSlots, floorCount);
+        firstIndexes = new int[floorCount];
+        for (int floor = 0; floor < floorCount; floor++) {
+            firstIndexes[floor] = floors[floor].firstIndex;
+        }
+        leafBase = floorCount == 1 ? 1 : Integer.highestOneBit(floorCount - 1) << 1;
+        nodes = new AtomicIntegerArray(leafBase << 1);
+        for (int leaf = 0; leaf < leafBase; leaf++) {
+            nodes.set(leafBase + leaf, leaf < floorCount ? leaf : -1);
+        }
+        rebuild();
+    }
+
+    @Override
+    public int allocate() {
+        while (occupancy.getOccupiedCount() < occupancy.getCapacity()) {
+            int floor = nodes.get(1);
+            int rank = floors[floor].ranks.allocate();
+            if (rank == -1) {
+                // the tree was stale or a release is still on its way, go again
+                rebuild();
+                Thread.onSpinWait();
+                continue;
+            }
+            update(floor);
+            int index = floors[floor].indexOf(rank);
+            occupancy.occupy(index);
+            return index;
+        }
+        return -1;
+    }
+
+    @Override
+    public int allocate(int[] indexes, int count) {
+        int claimed = 0;
+        while (claimed < count) {
+            int index = allocate();
+            if (index == -1) {
+                break;
+            }
+            indexes[claimed++] = index;
+        }
+        return claimed;
+    }
+
+    @Override
+    public void release(int index) {
+        // the lot's index first, so a gate never claims on a floor a slot the lot still holds
+        occupancy.release(index);
+        int floor = floorOf(index);
+        floors[floor].ranks.release(floors[floor].rankOf(index));
+        update(floor);
+    }
+
+    @Override
+    public void release(int[] indexes, int count) {
+        occupancy.release(indexes, count);
+        // indexes are in order, so each floor is a single run and its path is recomputed once
+        for (int i = 0; i < count;) {
+            int floor = floorOf(indexes[i]);
+            Floor slots = floors[floor];
+            for (; i < count && indexes[i] < slots.firstIndex + slots.size; i++) {
+                slots.ranks.release(slots.rankOf(indexes[i]));
+            }
+            update(floor);
+        }
+    }
+
+    @Override
+    public void restored() {
+        for (int index = occupancy.nextOccupied(0); index != -1; index = occupancy.nextOccupied(index + 1)) {
+            Floor slots = floors[floorOf(index)];
+            slots.ranks.occupy(slots.rankOf(index));
+        }
+        rebuild();
+    }
+
+    private int floorOf(int index) {
+        int found = Arrays.binarySearch(firstIndexes, index);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    private void rebuild() {
+        for (int node = leafBase - 1; node >= 1; node--) {
+            nodes.set(node, better(nodes.get(node << 1), nodes.get((node << 1) + 1)));
+        }
+    }
+
+    private void update(int floor) {
+        for (int node = (leafBase + floor) >>> 1; node >= 1; node >>>= 1) {
+            nodes.set(node, better(nodes.get(node << 1), nodes.get((node << 1) + 1)));
+        }
+    }
+
+    /**
+     * @param lower  => floor of the left child
+     * @param higher => floor of the right child
+     */
+    private int better(int lower, int higher) {
+        if (lower == -1) {
+            return higher;
+        }
+        if (higher == -1) {
+            return lower;
+        }
+        return key(higher) < key(lower) ? higher : lower;
+    }
+
+    /**
+     * @return how the policy ranks a floor, lower is better
+     */
+    private long key(int floor) {
+        FreeSlotIndex ranks = floors[floor].ranks;
+        switch (policy) {
+        case NEAREST_TO_ELEVATOR:
+            int rank = ranks.lowestFree();
+            return rank == -1 ? Long.MAX_VALUE : (long) floors[floor].gap + floors[floor].distanceOf(rank);
+        case FLOOR_BY_FLOOR:
+            return ranks.getFreeCount() == 0 ? Long.MAX_VALUE : 0;
+        case SPREAD_FLOORS:
+            // share of the floor taken, so floors of different sizes fill alike
+            return ((long) ranks.getOccupiedCount() << 31) / ranks.getCapacity();
+        default:
+            throw new IllegalStateException("Not a floor policy " + policy);
+        }
+    }
+
+    /**
+     * Slots of one floor and their ranks by the walk to its elevator
+     */
+    private static class Floor {
+        private final int firstIndex;
+        private final int size;
+        // offset of the slot nearest to the elevator from the first slot
+        private final int elevator;
+        // steps from the elevator to that slot, when the elevator is beside
+        // slots of another size
+        private final int gap;
+        // distance up to which there are slots on both sides of the elevator
+        private final int reach;
+        private final FreeSlotIndex ranks;
+
+        Floor(int firstIndex, int size, int elevator, int gap) {
+            this.firstIndex = firstIndex;
+            this.size = size;
+            this.elevator = elevator;
+            this.gap = gap;
+            this.reach = Math.min(elevator, size - 1 - elevator);
+            this.ranks = new FreeSlotIndex(size);
+        }
+
+        int indexOf(int rank) {
+            int offset;
+            if (rank <= 2 * reach) {
+                offset = (rank & 1) == 1 ? elevator - (rank + 1) / 2 : elevator + rank / 2;
+            } else if (elevator > size - 1 - elevator) {
+                // only the side towards the start of the floor is left
+                offset = elevator - (rank - reach);
+            } else {
+                offset = elevator + (rank - reach);
+            }
+            return firstIndex + offset;
+        }
+
+        int rankOf(int index) {
+            int distance = index - firstIndex - elevator;
+            if (distance == 0) {
+                return 0;
+            }
+            int steps = Math.abs(distance);
+            if (steps > reach) {
+                return steps + reach;
+            }
+            return distance < 0 ? 2 * steps - 1 : 2 * steps;
+        }
+
+        int distanceOf(int rank) {
+            return rank <= 2 * reach ? (rank + 1) / 2 : rank - reach;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.parkinglot12.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hierarchical bitset that tracks which slots are occupied and finds the lowest
+ * free one without scanning.
+ *
+ * Level 0 holds one bit per slot (1 = occupied). Every level above holds one bit
+ * per word of the level below, set when that word is completely full. Finding
+ * the lowest free slot is a walk from the single top word down to level 0,
+ * taking the lowest clear bit at each step => O(log64 n).
+ *
+ * Safe for many threads without a lock: a slot is claimed by a CAS on its level
+ * 0 word, and the upper levels are only hints. Whoever marks a word full
+ * re-checks the word below afterwards and undoes the mark if a slot was freed
+ * meanwhile, and whoever frees a slot clears the marks above it, so a stale
+ * hint never outlives the operation that raced with it.
+ *
+ * Every level is kept in pages of 64 words which are allocated the first time
+ * a bit of them is set. A missing page reads as all zero => free and not full,
+ * so a new index costs a few page references whatever its capacity, and slots
+ * that were never used need no memory.
+ *
+ * Indexes are 0 based, callers translate to slot numbers.
+ */
+class FreeSlotIndex {
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle PAGES = MethodHandles.arrayElementVarHandle(long[][].class);
+    private static final int WORD_SHIFT = 6;
+    private static final int WORD_MASK = 63;
+    private static final int PAGE_SHIFT = 6;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    private static final long FULL = -1L;
+
+    private final int capacity;
+    // levels[level][page][word] => levels[0] has one bit per slot,
+    // levels[levels.length - 1] the single top word
+    private final long[][][] levels;
+    // number of words in each level
+    private final int[] wordCounts;
+    private final AtomicInteger occupiedCount = new AtomicInteger();
+
+    FreeSlotIndex(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity cannot be less than 1");
+        }
+        this.capacity = capacity;
+
+        int depth = 1;
+        for (int words = wordsFor(capacity); words > 1; words = wordsFor(words)) {
+            depth++;
+        }
+        levels = new long[depth][][];
+        wordCounts = new int[depth];
+
+        int bits = capacity;
+        for (int level = 0; level < depth; level++) {
+            int words = wordsFor(bits);
+            levels[level] = new long[(words + PAGE_MASK) >>> PAGE_SHIFT][];
+            wordCounts[level] = words;
+            // bits past the end never exist => mark them full so they are never picked
+            int tail = bits & WORD_MASK;
+            if (tail != 0) {
+                page(level, words - 1)[(words - 1) & PAGE_MASK] = FULL << tail;
+            }
+            bits = words;
+        }
+    }
+
+    private static int wordsFor(int bits) {
+        return (bits + WORD_MASK) >>> WORD_SHIFT;
+    }
+
+    private long word(int level, int word) {
+        long[] page = (long[]) PAGES.getVolatile(levels[level], word >>> PAGE_SHIFT);
+        return page == null ? 0 : (long) WORDS.getVolatile(page, word & PAGE_MASK);
+    }
+
+    /**
+     * @return page holding the word, allocated if it does not exist yet
+     */
+    private long[] page(int level, int word) {
+        long[][] pages = levels[level];
+        int index = word >>> PAGE_SHIFT;
+        long[] page = (long[]) PAGES.getVolatile(pages, index);
+        if (page == null) {
+            long[] created = new long[1 << PAGE_SHIFT];
+            page = PAGES.compareAndSet(pages, index, null, created) ? created : (long[]) PAGES.getVolatile(pages, index);
+        }
+        return page;
+    }
+
+    private long getAndSetBits(int level, int word, long bits) {
+        return (long) WORDS.getAndBitwiseOr(page(level, word), word & PAGE_MASK, bits);
+    }
+
+    private long getAndClearBits(int level, int word, long bits) {
+        long[] page = (long[]) PAGES.getVolatile(levels[level], word >>> PAGE_SHIFT);
+        // a missing page has no bit set
+        return page == null ? 0 : (long) WORDS.getAndBitwiseAnd(page, word & PAGE_MASK, ~bits);
+    }
+
+    /**
+     * Marks the lowest free index occupied
+     *
+     * @return the index which was marked occupied, -1 if everything is occupied
+     */
+    int allocate() {
+        while (occupiedCount.get() < capacity) {
+            int word = 0;
+            for (int level = levels.length - 1; level > 0 && word != -1; level--) {
+                long bits = word(level, word);
+                word = bits == FULL ? -1 : (word << WORD_SHIFT) | Long.numberOfTrailingZeros(~bits);
+            }
+            if (word == -1) {
+                // a release is still clearing its marks, go again
+                Thread.onSpinWait();
+                continue;
+            }
+            long[] leaves = page(0, word);
+            long bits = (long) WORDS.getVolatile(leaves, word & PAGE_MASK);
+            if (bits == FULL) {
+                // someone filled it and has not marked it yet
+                markFull(word);
+                continue;
+            }
+            long bit = Long.lowestOneBit(~bits);
+            if (WORDS.compareAndSet(leaves, word & PAGE_MASK, bits, bits | bit)) {
+                occupiedCount.incrementAndGet();
+                if ((bits | bit) == FULL) {
+                    markFull(word);
+                }
+                return (word << WORD_SHIFT) | Long.numberOfTrailingZeros(bit);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Same as allocate for several indexes at once => each level 0 word on the
+     * way gives all the free bits needed from it with a single CAS, and the
+     * walk down the levels is done once per word instead of once per index
+     *
+     * @param indexes => receives the indexes which were marked occupied
+     * @param count   => number of indexes wanted
+     * @return number of indexes marked occupied, less than count once
+     *         everything is occupied
+     */
+    int allocate(int[] indexes, int count) {
+        int claimed = 0;
+        while (claimed < count && occupiedCount.get() < capacity) {
+            int word = 0;
+            for (int level = levels.length - 1; level > 0 && word != -1; level--) {
+                long bits = word(level, word);
+                word = bits == FULL ? -1 : (word << WORD_SHIFT) | Long.numberOfTrailingZeros(~bits);
+            }
+            if (word == -1) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long[] leaves = page(0, word);
+            long bits = (long) WORDS.getVolatile(leaves, word & PAGE_MASK);
+            if (bits == FULL) {
+                markFull(word);
+                continue;
+            }
+            // the lowest free bits of the word, as many as are still wanted
+            long taken = 0;
+            long free = ~bits;
+            for (int wanted = count - claimed; wanted > 0 && free != 0; wanted--) {
+                long bit = Long.lowestOneBit(free);
+                taken |= bit;
+                free ^= bit;
+            }
+            if (WORDS.compareAndSet(leaves, word & PAGE_MASK, bits, bits | taken)) {
+                occupiedCount.addAndGet(Long.bitCount(taken));
+                if ((bits | taken) == FULL) {
+                    markFull(word);
+                }
+                for (; taken != 0; taken &= taken - 1) {
+                    indexes[claimed++] = (word << WORD_SHIFT) | Long.numberOfTrailingZeros(taken);
+                }
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * Marks a given free index occupied
+     *
+     * @param index => index to be occupied
+     */
+    void occupy(int index) {
+        checkIndex(index);
+        int word = index >>> WORD_SHIFT;
+        long bit = 1L << index;
+        long previous = getAndSetBits(0, word, bit);
+        if ((previous & bit) != 0) {
+            throw new IllegalStateException("The slot is already occupied");
+        }
+        occupiedCount.incrementAndGet();
+        if ((previous | bit) == FULL) {
+            markFull(word);
+        }
+    }
+
+    /**
+     * Marks a given occupied index free
+     *
+     * @param index => index to be released
+     */
+    void release(int index) {
+        checkIndex(index);
+        int word = index >>> WORD_SHIFT;
+        long bit = 1L << index;
+        long previous = getAndClearBits(0, word, bit);
+        if ((previous & bit) == 0) {
+            throw new IllegalStateException("The slot is already empty");
+        }
+        occupiedCount.decrementAndGet();
+
+        // a word that was full is not anymore => clear its mark one level up, and so on
+        for (int level = 1; level < levels.length && previous == FULL; level++) {
+            int child = word;
+            word = child >>> WORD_SHIFT;
+            previous = getAndClearBits(level, word, 1L << child);
+        }
+    }
+
+    /**
+     * Same as release for several indexes at once => runs of indexes in the
+     * same level 0 word are cleared with a single atomic operation
+     *
+     * @param indexes => indexes to be released
+     * @param count   => number of indexes in the array
+     */
+    void release(int[] indexes, int count) {
+        for (int i = 0; i < count;) {
+            int word = indexes[i] >>> WORD_SHIFT;
+            long bits = 0;
+            for (; i < count && indexes[i] >>> WORD_SHIFT == word; i++) {
+                checkIndex(indexes[i]);
+                bits |= 1L << indexes[i];
+            }
+            long previous = getAndClearBits(0, word, bits);
+            if ((previous & bits) != bits) {
+                throw new IllegalStateException("The slot is already empty");
+            }
+            occupiedCount.addAndGet(-Long.bitCount(bits));
+            for (int level = 1; level < levels.length && previous == FULL; level++) {
+                int child = word;
+                word = child >>> WORD_SHIFT;
+                previous = getAndClearBits(level, word, 1L << child);
+            }
+        }
+    }
+
+    /**
+     * Marks a full word full one level up, and so on while the levels fill up.
+     * Each mark is re-checked against the word below and undone if that word
+     * is not full anymore.
+     */
+    private void markFull(int word) {
+        for (int level = 1; level < levels.length; level++) {
+            int child = word;
+            word = child >>> WORD_SHIFT;
+            long bit = 1L << child;
+            long after = getAndSetBits(level, word, bit) | bit;
+            if (word(level - 1, child) != FULL) {
+                getAndClearBits(level, word, bit);
+                return;
+            }
+            if (after != FULL) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finds the lowest free index without marking it
+     *
+     * @return the lowest free index, -1 if everything is occupied or a racing
+     *         claim or release hides it for the moment
+     */
+    int lowestFree() {
+        if (occupiedCount.get() >= capacity) {
+            return -1;
+        }
+        int word = 0;
+        for (int level = levels.length - 1; level >= 0; level--) {
+            long bits = word(level, word);
+            if (bits == FULL) {
+                return -1;
+            }
+            word = (word << WORD_SHIFT) | Long.numberOfTrailingZeros(~bits);
+        }
+        return word;
+    }
+
+    boolean isOccupied(int index) {
+        checkIndex(index);
+        return (word(0, index >>> WORD_SHIFT) & (1L << index)) != 0;
+    }
+
+    /**
+     * @param fromIndex => index to start looking from, inclusive
+     * @return the first occupied index >= fromIndex, -1 if there is none
+     */
+    int nextOccupied(int fromIndex) {
+        if (fromIndex < 0) {
+            fromIndex = 0;
+        }
+        if (fromIndex >= capacity) {
+            return -1;
+        }
+        int words = wordCounts[0];
+        int word = fromIndex >>> WORD_SHIFT;
+        long bits = word(0, word) & (-1L << fromIndex);
+        // the padding bits of the last word are set as well, so bound the result
+        while (bits == 0) {
+            if (++word >= words) {
+                return -1;
+            }
+            if ((word & PAGE_MASK) == 0 && PAGES.getVolatile(levels[0], word >>> PAGE_SHIFT) == null) {
+                // a missing page holds no occupied slot
+                word += PAGE_MASK;
+                continue;
+            }
+            bits = word(0, word);
+        }
+        int index = (word << WORD_SHIFT) + Long.numberOfTrailingZeros(bits);
+        return index < capacity ? index : -1;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getOccupiedCount() {
+        return occupiedCount.get();
+    }
+
+    int getFreeCount() {
+        return capacity - occupiedCount.get();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= capacity) {
+            throw new IllegalStateException("The slot number is invalid");
+        }
+    }
+}
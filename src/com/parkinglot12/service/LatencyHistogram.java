@@ -0,0 +1,98 @@
+package com.parkinglot12.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram in the style of HdrHistogram => log linear buckets, 32 per
+ * power of two, so any recorded value is known within about 3%, from one
+ * nanosecond up to hours, in a fixed array of counters.
+ *
+ * Recording is one atomic increment and never allocates, so it can sit on the
+ * command path of every thread. Readers see counts which may be a few records
+ * apart from each other, which is fine for reporting.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * @param nanos => duration to record, negative values count as 0
+     */
+    void record(long nanos) {
+        counts.getAndIncrement(bucketFor(Math.max(nanos, 0)));
+    }
+
+    private static int bucketFor(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return highest value which falls in the bucket
+     */
+    private static long highestValueOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            // one bucket per value below 64
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = (bucket & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * @return copy of the bucket counts, so several figures can be read from
+     *         the same moment
+     */
+    long[] snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return copy;
+    }
+
+    static long count(long[] snapshot) {
+        long count = 0;
+        for (long bucketCount : snapshot) {
+            count += bucketCount;
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile => 0 to 100
+     * @return value at or below which the given percentage of the records fall,
+     *         0 if nothing was recorded
+     */
+    static long valueAtPercentile(long[] snapshot, double percentile) {
+        long count = count(snapshot);
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * Math.min(percentile, 100.0) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highestValueOf(i);
+            }
+        }
+        return highestValueOf(snapshot.length - 1);
+    }
+
+    static long maxValue(long[] snapshot) {
+        for (int i = snapshot.length - 1; i >= 0; i--) {
+            if (snapshot[i] != 0) {
+                return highestValueOf(i);
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,43 @@
+package com.parkinglot12.service;
+
+import java.util.Arrays;
+
+/**
+ * SlotAllocationPolicy.LOWEST_SLOT_NUMBER => the lot's FreeSlotIndex already
+ * finds the lowest free slot, so it is the whole index.
+ */
+class LowestSlotNumberStrategy implements SlotAllocationStrategy {
+    private final FreeSlotIndex occupancy;
+
+    LowestSlotNumberStrategy(FreeSlotIndex occupancy) {
+        this.occupancy = occupancy;
+    }
+
+    @Override
+    public int allocate() {
+        return occupancy.allocate();
+    }
+
+    @Override
+    public int allocate(int[] indexes, int count) {
+        int claimed = occupancy.allocate(indexes, count);
+        // a release racing with the claim may have handed out a lower word last
+        Arrays.sort(indexes, 0, claimed);
+        return claimed;
+    }
+
+    @Override
+    public void release(int index) {
+        occupancy.release(index);
+    }
+
+    @Override
+    public void release(int[] indexes, int count) {
+        occupancy.release(indexes, count);
+    }
+
+    @Override
+    public void restored() {
+        // restore works on the FreeSlotIndex itself
+    }
+}
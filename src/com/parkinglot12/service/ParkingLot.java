@@ -1,57 +1,135 @@
 package com.parkinglot12.service;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+import com.parkinglot12.domain.FloorLayout;
+import com.parkinglot12.domain.ResultCode;
+import com.parkinglot12.domain.SlotAllocationPolicy;
+import com.parkinglot12.domain.VehicleSize;
 import com.parkinglot12.service.exceptions.ParkingLotException;
 
 class ParkingLot {
-    private static ParkingLot parkingLot;
-    private Map<Integer, Slot> slots;
+    private static final VehicleSize[] VEHICLE_SIZES = VehicleSize.values();
+
+    private SlotStore slotStore;
+    private FreeSlotIndex freeSlots;
+    private final FloorLayout floorLayout;
+    private final SlotAllocationPolicy allocationPolicy;
+    // slot size => picks the slot of every park in the pool of that size, see
+    // SlotAllocationPolicy; null if the lot has no slots of the size
+    private final SlotAllocationStrategy[] allocationStrategies;
+    // the strategy of all the slots when they have one size, else null
+    private final SlotAllocationStrategy allocationStrategy;
 
     /**
-     * VisibleForTesting(otherwise = PRIVATE)
+     * Created by ParkingLotRegistry => one per parking lot
      */
     protected ParkingLot(int numberOfSlots) {
-        slots = new HashMap<Integer, Slot>();
-        for (int i = 1; i <= numberOfSlots; i++) {
-            slots.put(i, new Slot(i));
-        }
+        this(FloorLayout.uniform(numberOfSlots, 1, 1), SlotAllocationPolicy.LOWEST_SLOT_NUMBER);
     }
 
     /**
-     * Singleton Class => Returns a single instance of the class
-     *
-     * @param numberOfSlots => number of slots in the parking lot
-     * @return ParkingLot instance
+     * A lot spread over floors, whose slots are given out by a policy
      */
-    static ParkingLot getInstance(int numberOfSlots) {
-        if (parkingLot == null) {
-            parkingLot = new ParkingLot(numberOfSlots);
+    ParkingLot(FloorLayout floorLayout, SlotAllocationPolicy allocationPolicy) {
+        slotStore = new SlotStore(floorLayout.getNumberOfSlots());
+        freeSlots = slotStore.getOccupancy();
+        this.floorLayout = floorLayout;
+        this.allocationPolicy = allocationPolicy;
+        allocationStrategies = new SlotAllocationStrategy[VEHICLE_SIZES.length];
+        SlotAllocationStrategy onlyStrategy = null;
+        for (VehicleSize size : VEHICLE_SIZES) {
+            int slots = floorLayout.getSlotCount(size);
+            if (slots == floorLayout.getNumberOfSlots()) {
+                // a single pool => its slot indexes are the lot's, no mapping needed
+                onlyStrategy = allocationPolicy == SlotAllocationPolicy.LOWEST_SLOT_NUMBER
+                        ? new LowestSlotNumberStrategy(freeSlots)
+                        : new FloorAllocationStrategy(allocationPolicy, freeSlots, floorLayout, size);
+                allocationStrategies[size.ordinal()] = onlyStrategy;
+            } else if (slots > 0) {
+                allocationStrategies[size.ordinal()] = new SizeClassStrategy(allocationPolicy, freeSlots,
+                        floorLayout, size);
+            }
         }
-        return parkingLot;
+        allocationStrategy = onlyStrategy;
     }
 
     /**
-     * Finds the next available slot and marks it unavailable
+     * Finds the next available car slot (by the allocation policy, the one
+     * nearest to the entrance unless told otherwise) and marks it unavailable
      *
      * @return slot number which was marked unavailable
      */
     int fillAvailableSlot() {
-        int nextAvailableSlotNumber = -1;
-        for (int i = 1; i <= slots.size(); i++) {
-            Slot s = slots.get(i);
-            if (s.status) {
-                nextAvailableSlotNumber = s.slotNumber;
-                s.status = false;
-                break;
+        int slotNumber = claimAvailableSlot();
+        if (slotNumber != ResultCode.LOT_FULL.getCode()) {
+            return slotNumber;
+        } else {
+            throw new ParkingLotException(ResultCode.LOT_FULL.getMessage());
+        }
+    }
+
+    /**
+     * Same as fillAvailableSlot, but reports a full lot as a result code
+     *
+     * @return slot number which was marked unavailable, or the code of
+     *         ResultCode.LOT_FULL
+     */
+    int claimAvailableSlot() {
+        return claimAvailableSlot(VehicleSize.CAR);
+    }
+
+    /**
+     * Same as claimAvailableSlot for a vehicle of a given size => a slot of its
+     * own size, else one of the next bigger size which has a free slot
+     *
+     * @return slot number which was marked unavailable, or the code of
+     *         ResultCode.LOT_FULL if no slot the vehicle fits is free
+     */
+    int claimAvailableSlot(VehicleSize vehicleSize) {
+        for (int size = vehicleSize.ordinal(); size < VEHICLE_SIZES.length; size++) {
+            SlotAllocationStrategy strategy = allocationStrategies[size];
+            if (strategy == null) {
+                continue;
+            }
+            int index = strategy.allocate();
+            if (index != -1) {
+                return index + 1;
             }
         }
-        if (nextAvailableSlotNumber != -1) {
-            return nextAvailableSlotNumber;
-        } else {
-            throw new ParkingLotException("Sorry, parking lot is full");
+        return ResultCode.LOT_FULL.getCode();
+    }
+
+    /**
+     * Same as claimAvailableSlot for several cars in one pass
+     *
+     * @param slotNumbers => receives the slot numbers which were marked
+     *                    unavailable, best first
+     * @param count       => number of slots wanted
+     * @return number of slots marked unavailable, less than count if the lot
+     *         filled up
+     */
+    int claimAvailableSlots(int[] slotNumbers, int count) {
+        int claimed = 0;
+        int[] indexes = slotNumbers;
+        for (int size = VehicleSize.CAR.ordinal(); size < VEHICLE_SIZES.length && claimed < count; size++) {
+            SlotAllocationStrategy strategy = allocationStrategies[size];
+            if (strategy == null) {
+                continue;
+            }
+            if (claimed > 0 && indexes == slotNumbers) {
+                indexes = new int[count];
+            }
+            int claimedOfSize = strategy.allocate(indexes, count - claimed);
+            if (indexes != slotNumbers) {
+                System.arraycopy(indexes, 0, slotNumbers, claimed, claimedOfSize);
+            }
+            claimed += claimedOfSize;
         }
+        for (int i = 0; i < claimed; i++) {
+            slotNumbers[i]++;
+        }
+        return claimed;
     }
 
     /**
@@ -60,30 +138,96 @@ class ParkingLot {
      * @param slotNumber => the slot number to be made empty
      */
     void emptySlot(int slotNumber) {
-        if (slots.containsKey(slotNumber)) {
-            if (slots.get(slotNumber).status) {
-                throw new IllegalStateException("The slot is already empty");
-            } else {
-                slots.get(slotNumber).status = true;
+        strategyFor(slotNumber).release(slotNumber - 1);
+    }
+
+    /**
+     * Same as emptySlot for several slots in one pass
+     *
+     * @param slotNumbers => the slot numbers to be made empty
+     * @param count       => number of slot numbers in the array
+     */
+    void emptySlots(int[] slotNumbers, int count) {
+        int[] indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = slotNumbers[i] - 1;
+        }
+        // neighbours share a word, so sorting lets them be released together
+        Arrays.sort(indexes);
+        if (allocationStrategy != null) {
+            allocationStrategy.release(indexes, count);
+            return;
+        }
+        // every pool gets its slots, still in order
+        byte[] sizes = new byte[count];
+        for (int i = 0; i < count; i++) {
+            sizes[i] = (byte) floorLayout.getSlotSize(indexes[i] + 1).ordinal();
+        }
+        int[] ofSize = new int[count];
+        for (int size = 0; size < VEHICLE_SIZES.length; size++) {
+            int found = 0;
+            for (int i = 0; i < count; i++) {
+                if (sizes[i] == size) {
+                    ofSize[found++] = indexes[i];
+                }
+            }
+            if (found > 0) {
+                allocationStrategies[size].release(ofSize, found);
             }
-        } else {
-            throw new IllegalStateException("The slot number is invalid");
         }
     }
 
+    private SlotAllocationStrategy strategyFor(int slotNumber) {
+        return allocationStrategy != null ? allocationStrategy
+                : allocationStrategies[floorLayout.getSlotSize(slotNumber).ordinal()];
+    }
+
     /**
-     * private Class => Slot is an entity known only to parking lot.
-     *
+     * Recovery only => brings the allocation indexes up to date once the
+     * journal has restored the slots
      */
-    private class Slot {
-        // unique slot identifier
-        private int slotNumber;
-        // boolean status to maintain isAvailable => true=available, false=not available
-        private boolean status;
-
-        Slot(int slotNumber) {
-            this.slotNumber = slotNumber;
-            this.status = true;
+    void restored() {
+        for (SlotAllocationStrategy strategy : allocationStrategies) {
+            if (strategy != null) {
+                strategy.restored();
+            }
         }
     }
-}
\ No newline at end of file
+
+    FloorLayout getFloorLayout() {
+        return floorLayout;
+    }
+
+    SlotAllocationPolicy getAllocationPolicy() {
+        return allocationPolicy;
+    }
+
+    /**
+     * @return storage engine holding the slots of this parking lot
+     */
+    SlotStore getSlotStore() {
+        return slotStore;
+    }
+
+    /**
+     * @return total number of slots in the parking lot
+     */
+    int getNumberOfSlots() {
+        return freeSlots.getCapacity();
+    }
+
+    /**
+     * @return number of slots available right now
+     */
+    int getFreeSlotCount() {
+        return freeSlots.getFreeCount();
+    }
+
+    /**
+     * @return number of slots claimed right now, by a vehicle or by a
+     *         reservation
+     */
+    int getClaimedSlotCount() {
+        return freeSlots.getOccupiedCount();
+    }
+}
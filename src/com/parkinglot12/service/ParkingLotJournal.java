@@ -0,0 +1,698 @@
+package com.parkinglot12.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+import com.parkinglot12.domain.FloorLayout;
+import com.parkinglot12.domain.SlotAllocationPolicy;
+import com.parkinglot12.domain.Vehicle;
+import com.parkinglot12.domain.VehicleSize;
+import com.parkinglot12.service.exceptions.ParkingLotException;
+
+/**
+ * Write ahead journal of one parking lot, so its vehicles survive a restart.
+ *
+ * Every park and leave is appended to an in memory buffer while the slot is
+ * still locked (see TicketEventListener), and the gate then waits in commit
+ * until the event is on disk. Commits use group commit: one waiting thread
+ * writes and fsyncs everything appended so far as one batch while the others
+ * wait for it, so a burst of gate events shares a single fsync.
+ *
+ * Files in the lot directory =>
+ * journal-N.log  => header (magic, number of slots), then batches of
+ *                   (length, CRC32C, records); a park record carries the
+ *                   size and the entry time of the vehicle
+ * snapshot-N.snap => every parked vehicle and its entry time at the time
+ *                   journal-N was started, followed by a CRC32C of the file
+ * layout.properties => floors, slot sizes and allocation policy, for lots
+ *                   other than a single floor of car slots
+ *
+ * When the current journal grows past SNAPSHOT_THRESHOLD a new journal is
+ * started and a snapshot is written by a background thread while gates keep
+ * running. The snapshot reads slot by slot, so it may already hold some events
+ * of the new journal; replaying them again gives the same result because every
+ * record sets the whole state of its slot. The rows read may also hold events
+ * whose batch is not on disk yet, so every event appended by the end of the
+ * read is committed before the snapshot is put in place => a snapshot never
+ * holds an event a crash could still take back. Once the snapshot is
+ * complete, older journals and snapshots are deleted.
+ *
+ * Recovery loads the newest valid snapshot and replays only the journals
+ * started after it. A batch torn by a crash fails its CRC and ends the replay
+ * of its file; no gate was told that batch succeeded. Vehicles recovered from
+ * records older than entry times are taken as parked at the time of recovery.
+ */
+class ParkingLotJournal implements TicketEventListener {
+    private static final int JOURNAL_MAGIC = 0x504C4A31;
+    // version 3 stores the entry time of every vehicle, version 2 its size,
+    // version 1 only had cars
+    private static final int SNAPSHOT_MAGIC = 0x504C5333;
+    private static final int SNAPSHOT_MAGIC_SIZES = 0x504C5332;
+    private static final int SNAPSHOT_MAGIC_CARS = 0x504C5331;
+    private static final byte PARK = 1;
+    private static final byte LEAVE = 2;
+    // a PARK record followed by the VehicleSize ordinal
+    private static final byte PARK_VEHICLE = 3;
+    // a PARK_VEHICLE record followed by the entry time, the only park written now
+    private static final byte PARK_AT = 4;
+    private static final VehicleSize[] VEHICLE_SIZES = VehicleSize.values();
+    private static final int BATCH_HEADER = 8;
+    private static final long SNAPSHOT_THRESHOLD = 64L << 20;
+    private static final String LAYOUT_FILE = "layout.properties";
+
+    private final Path directory;
+    private final SlotStore slotStore;
+
+    // events not written yet, and the count of events ever appended => guarded by appendLock
+    private final Object appendLock = new Object();
+    private ByteBuffer pending;
+    private long appendedCount;
+
+    // guarded by commitLock
+    private final Object commitLock = new Object();
+    private boolean committing;
+    private long durableCount;
+    private IOException failure;
+
+    // only touched by the committing thread
+    private ByteBuffer writing;
+    private final ByteBuffer batchHeader;
+    private final CRC32C crc;
+    private FileChannel journal;
+    private long generation;
+
+    private volatile boolean snapshotRunning;
+
+    private ParkingLotJournal(Path directory, SlotStore slotStore, long generation) throws IOException {
+        this.directory = directory;
+        this.slotStore = slotStore;
+        this.pending = ByteBuffer.allocate(1 << 16);
+        this.writing = ByteBuffer.allocate(1 << 16);
+        this.batchHeader = ByteBuffer.allocate(BATCH_HEADER);
+        this.crc = new CRC32C();
+        startJournal(generation);
+    }
+
+    /**
+     * Creates a new, empty parking lot journaled in the given directory
+     *
+     * @param directory     => directory of the lot, must not hold a journal yet
+     * @param numberOfSlots => number of slots in the parking lot
+     * @return TicketingSystem of the new lot
+     */
+    static TicketingSystem create(Path directory, int numberOfSlots) throws IOException {
+        return create(directory, FloorLayout.uniform(numberOfSlots, 1, 1), SlotAllocationPolicy.LOWEST_SLOT_NUMBER);
+    }
+
+    /**
+     * Same as create(Path, int) for a lot spread over floors
+     */
+    static TicketingSystem create(Path directory, FloorLayout floorLayout, SlotAllocationPolicy allocationPolicy)
+            throws IOException {
+        Files.createDirectories(directory);
+        if (!journalFiles(directory, ".log").isEmpty() || !journalFiles(directory, ".snap").isEmpty()) {
+            throw new ParkingLotException("Parking lot journal already exists in " + directory);
+        }
+        if (floorLayout.getFloorCount() > 1 || allocationPolicy != SlotAllocationPolicy.LOWEST_SLOT_NUMBER
+                || floorLayout.getSlotCount(VehicleSize.CAR) != floorLayout.getNumberOfSlots()) {
+            // before the first journal, so a journal is never recovered without its layout
+            writeLayout(directory, floorLayout, allocationPolicy);
+        }
+        ParkingLot parkingLot = new ParkingLot(floorLayout, allocationPolicy);
+        ParkingLotJournal journal = new ParkingLotJournal(directory, parkingLot.getSlotStore(), 1);
+        return new TicketingSystem(parkingLot, journal);
+    }
+
+    /**
+     * Rebuilds a parking lot from its journal directory and keeps journaling it
+     *
+     * @param directory => directory of the lot
+     * @return TicketingSystem of the recovered lot
+     */
+    static TicketingSystem recover(Path directory) throws IOException {
+        List<Long> snapshots = journalFiles(directory, ".snap");
+        List<Long> journals = journalFiles(directory, ".log");
+        if (snapshots.isEmpty() && journals.isEmpty()) {
+            throw new IOException("No parking lot journal in " + directory);
+        }
+
+        // newest snapshot which is complete, a crash may have cut the last one short
+        ByteBuffer snapshot = null;
+        long snapshotGeneration = 0;
+        for (int i = snapshots.size() - 1; i >= 0 && snapshot == null; i--) {
+            snapshot = readSnapshot(fileFor(directory, snapshots.get(i), ".snap"));
+            snapshotGeneration = snapshots.get(i);
+        }
+        if (snapshot == null) {
+            snapshotGeneration = 0;
+        }
+
+        int numberOfSlots = snapshot != null ? snapshot.getInt(4) : -1;
+        List<MappedByteBuffer> tail = new ArrayList<MappedByteBuffer>();
+        for (long journalGeneration : journals) {
+            if (journalGeneration < snapshotGeneration) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(fileFor(directory, journalGeneration, ".log"),
+                    StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.remaining() < 8 || buffer.getInt(0) != JOURNAL_MAGIC) {
+                    // the header of a journal is written before any event => nothing was lost
+                    continue;
+                }
+                if (numberOfSlots == -1) {
+                    numberOfSlots = buffer.getInt(4);
+                } else if (numberOfSlots != buffer.getInt(4)) {
+                    throw new IOException("Journal " + journalGeneration + " belongs to another parking lot");
+                }
+                tail.add(buffer);
+            }
+        }
+        if (numberOfSlots < 1) {
+            throw new IOException("No readable parking lot journal in " + directory);
+        }
+
+        ParkingLot parkingLot;
+        Properties layout = readLayout(directory);
+        if (layout == null) {
+            parkingLot = new ParkingLot(numberOfSlots);
+        } else {
+            FloorLayout floorLayout = toFloorLayout(layout);
+            if (floorLayout.getNumberOfSlots() != numberOfSlots) {
+                throw new IOException("Floor layout does not match the journal in " + directory);
+            }
+            parkingLot = new ParkingLot(floorLayout, SlotAllocationPolicy.valueOf(layout.getProperty("policy")));
+        }
+        SlotStore slotStore = parkingLot.getSlotStore();
+        long restoredAt = System.currentTimeMillis();
+        if (snapshot != null) {
+            loadSnapshot(snapshot, slotStore, restoredAt);
+        }
+        for (MappedByteBuffer buffer : tail) {
+            replay(buffer, slotStore, restoredAt);
+        }
+        slotStore.rebuildRegistrationTable();
+        parkingLot.restored();
+
+        long last = Math.max(snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1),
+                journals.isEmpty() ? 0 : journals.get(journals.size() - 1));
+        ParkingLotJournal journal = new ParkingLotJournal(directory, slotStore, last + 1);
+        TicketingSystem ticketingSystem = new TicketingSystem(parkingLot, journal);
+        if (!tail.isEmpty()) {
+            // so the next restart does not replay the same tail again
+            journal.startSnapshot(journal.generation);
+        }
+        return ticketingSystem;
+    }
+
+    /**
+     * @return true if the directory holds a parking lot journal
+     */
+    static boolean exists(Path directory) throws IOException {
+        return Files.isDirectory(directory)
+                && (!journalFiles(directory, ".log").isEmpty() || !journalFiles(directory, ".snap").isEmpty());
+    }
+
+    @Override
+    public void parked(int slotNumber, String registrationNumber, int driverAge, VehicleSize vehicleSize,
+            long timestamp) {
+        synchronized (appendLock) {
+            int length = registrationNumber.length();
+            ensurePending(1 + 4 + 2 + 2 + 3 * length + 1 + 8);
+            int start = pending.position();
+            pending.put(PARK_AT).putInt(slotNumber)
+                    .putShort((short) driverAge).putShort((short) 0);
+            boolean ascii = true;
+            for (int i = 0; i < length && ascii; i++) {
+                char c = registrationNumber.charAt(i);
+                ascii = c < 0x80;
+                pending.put((byte) c);
+            }
+            if (!ascii) {
+                pending.position(start + 9);
+                byte[] bytes = registrationNumber.getBytes(StandardCharsets.UTF_8);
+                pending.put(bytes);
+                length = bytes.length;
+            }
+            pending.putShort(start + 7, (short) length);
+            pending.put((byte) vehicleSize.ordinal()).putLong(timestamp);
+            appendedCount++;
+        }
+    }
+
+    @Override
+    public void left(int slotNumber, String registrationNumber, int driverAge, VehicleSize vehicleSize,
+            long parkedAt, long timestamp) {
+        synchronized (appendLock) {
+            ensurePending(1 + 4);
+            pending.put(LEAVE).putInt(slotNumber);
+            appendedCount++;
+        }
+    }
+
+    private void ensurePending(int bytes) {
+        if (pending.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() << 1, pending.position() + bytes));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+    }
+
+    /**
+     * Waits until every event appended so far is on disk, writing them itself
+     * if no other thread is doing so
+     */
+    void commit() {
+        long target;
+        synchronized (appendLock) {
+            target = appendedCount;
+        }
+        synchronized (commitLock) {
+            while (durableCount < target && committing && failure == null) {
+                try {
+                    commitLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ParkingLotException("Interrupted while writing the journal");
+                }
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Parking lot journal is not writable", failure);
+            }
+            if (durableCount >= target) {
+                return;
+            }
+            committing = true;
+        }
+
+        long written = 0;
+        IOException error = null;
+        try {
+            written = writeBatch();
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            synchronized (commitLock) {
+                committing = false;
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durableCount = written;
+                }
+                commitLock.notifyAll();
+            }
+        }
+        if (error != null) {
+            throw new UncheckedIOException("Parking lot journal is not writable", error);
+        }
+    }
+
+    /**
+     * @return count of events which are on disk after the write
+     */
+    private long writeBatch() throws IOException {
+        long count;
+        synchronized (appendLock) {
+            ByteBuffer swap = writing;
+            writing = pending;
+            pending = swap;
+            pending.clear();
+            count = appendedCount;
+        }
+        writing.flip();
+        if (writing.hasRemaining()) {
+            crc.reset();
+            crc.update(writing.duplicate());
+            batchHeader.clear();
+            batchHeader.putInt(writing.remaining()).putInt((int) crc.getValue()).flip();
+            ByteBuffer[] batch = { batchHeader, writing };
+            while (writing.hasRemaining()) {
+                journal.write(batch);
+            }
+            journal.force(false);
+        }
+        writing.clear();
+
+        if (journal.position() > SNAPSHOT_THRESHOLD && !snapshotRunning) {
+            journal.close();
+            startJournal(generation + 1);
+            startSnapshot(generation);
+        }
+        return count;
+    }
+
+    private void startJournal(long newGeneration) throws IOException {
+        FileChannel channel = FileChannel.open(fileFor(directory, newGeneration, ".log"), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(8).putInt(JOURNAL_MAGIC).putInt(slotStore.getCapacity());
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(true);
+        journal = channel;
+        generation = newGeneration;
+    }
+
+    private void startSnapshot(long snapshotGeneration) {
+        snapshotRunning = true;
+        Thread thread = new Thread(() -> {
+            try {
+                writeSnapshot(snapshotGeneration);
+            } catch (IOException e) {
+                // the journals are kept, so nothing is lost => retried on the next roll over
+                System.out.println("Parking lot snapshot failed: " + e.getMessage());
+            } finally {
+                snapshotRunning = false;
+            }
+        }, "parking-lot-snapshot");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Writes every parked vehicle to snapshot-N.snap, then deletes what the
+     * snapshot makes obsolete
+     */
+    private void writeSnapshot(long snapshotGeneration) throws IOException {
+        Path temporary = fileFor(directory, snapshotGeneration, ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32C checksum = new CRC32C();
+            OutputStream unclosed = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(unclosed, checksum));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(slotStore.getCapacity());
+            for (int slotNumber = slotStore.nextOccupiedSlotNumber(1); slotNumber != -1;
+                    slotNumber = slotStore.nextOccupiedSlotNumber(slotNumber + 1)) {
+                // read apart from the vehicle => if another one parked in between,
+                // its record in the new journal puts both right again
+                long parkedAt = slotStore.getParkedAt(slotNumber);
+                Vehicle vehicle = slotStore.getVehicle(slotNumber);
+                if (vehicle == null) {
+                    continue;
+                }
+                byte[] registration = vehicle.getRegistrationNumber().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(slotNumber);
+                out.writeShort(vehicle.getDriverAge());
+                out.writeShort(registration.length);
+                out.write(registration);
+                out.writeByte(vehicle.getVehicleSize().ordinal());
+                out.writeLong(parkedAt);
+            }
+            out.writeInt(0);
+            out.flush();
+            unclosed.write(ByteBuffer.allocate(4).putInt((int) checksum.getValue()).array());
+            unclosed.flush();
+            channel.force(true);
+        }
+        // every event the rows showed was appended before they were read
+        try {
+            commit();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(temporary, fileFor(directory, snapshotGeneration, ".snap"), StandardCopyOption.ATOMIC_MOVE);
+
+        for (long old : journalFiles(directory, ".log")) {
+            if (old < snapshotGeneration) {
+                Files.deleteIfExists(fileFor(directory, old, ".log"));
+            }
+        }
+        for (long old : journalFiles(directory, ".snap")) {
+            if (old < snapshotGeneration) {
+                Files.deleteIfExists(fileFor(directory, old, ".snap"));
+            }
+        }
+    }
+
+    /**
+     * @return the snapshot positioned after its header, null if it is not
+     *         complete
+     */
+    private static ByteBuffer readSnapshot(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int magic = buffer.remaining() < 16 ? 0 : buffer.getInt(0);
+            if (magic != SNAPSHOT_MAGIC && magic != SNAPSHOT_MAGIC_SIZES && magic != SNAPSHOT_MAGIC_CARS) {
+                return null;
+            }
+            int end = buffer.limit() - 4;
+            CRC32C checksum = new CRC32C();
+            ByteBuffer content = buffer.duplicate();
+            content.limit(end);
+            checksum.update(content);
+            if ((int) checksum.getValue() != buffer.getInt(end)) {
+                return null;
+            }
+            buffer.position(8);
+            buffer.limit(end);
+            return buffer;
+        }
+    }
+
+    /**
+     * @param restoredAt => entry time of the vehicles of a snapshot older than
+     *                   entry times
+     */
+    private static void loadSnapshot(ByteBuffer snapshot, SlotStore slotStore, long restoredAt)
+            throws IOException {
+        int magic = snapshot.getInt(0);
+        boolean sized = magic != SNAPSHOT_MAGIC_CARS;
+        byte[] registration = new byte[64];
+        while (true) {
+            int slotNumber = snapshot.getInt();
+            if (slotNumber == 0) {
+                return;
+            }
+            int driverAge = snapshot.getShort();
+            int length = snapshot.getShort() & 0xFFFF;
+            if (length > registration.length) {
+                registration = new byte[length];
+            }
+            snapshot.get(registration, 0, length);
+            VehicleSize vehicleSize = sized ? vehicleSize(snapshot.get()) : VehicleSize.CAR;
+            long parkedAt = magic == SNAPSHOT_MAGIC ? snapshot.getLong() : restoredAt;
+            checkSlotNumber(slotNumber, slotStore);
+            slotStore.restore(slotNumber, decode(registration, length), driverAge, vehicleSize, parkedAt);
+        }
+    }
+
+    /**
+     * Applies the valid batches of one journal file
+     *
+     * @param restoredAt => entry time of the vehicles of park records older
+     *                   than entry times
+     */
+    private static void replay(ByteBuffer buffer, SlotStore slotStore, long restoredAt) throws IOException {
+        CRC32C checksum = new CRC32C();
+        byte[] registration = new byte[64];
+        int position = 8;
+        while (position + BATCH_HEADER <= buffer.limit()) {
+            int length = buffer.getInt(position);
+            int expected = buffer.getInt(position + 4);
+            int start = position + BATCH_HEADER;
+            if (length <= 0 || start + length > buffer.limit()) {
+                break;
+            }
+            ByteBuffer batch = buffer.duplicate();
+            batch.position(start).limit(start + length);
+            checksum.reset();
+            checksum.update(batch.duplicate());
+            if ((int) checksum.getValue() != expected) {
+                break;
+            }
+            while (batch.hasRemaining()) {
+                byte type = batch.get();
+                int slotNumber = batch.getInt();
+                checkSlotNumber(slotNumber, slotStore);
+                if (type == PARK || type == PARK_VEHICLE || type == PARK_AT) {
+                    int driverAge = batch.getShort();
+                    int registrationLength = batch.getShort() & 0xFFFF;
+                    if (registrationLength > registration.length) {
+                        registration = new byte[registrationLength];
+                    }
+                    batch.get(registration, 0, registrationLength);
+                    VehicleSize vehicleSize = type != PARK ? vehicleSize(batch.get()) : VehicleSize.CAR;
+                    long parkedAt = type == PARK_AT ? batch.getLong() : restoredAt;
+                    slotStore.restore(slotNumber, decode(registration, registrationLength), driverAge,
+                            vehicleSize, parkedAt);
+                } else if (type == LEAVE) {
+                    slotStore.restoreEmpty(slotNumber);
+                } else {
+                    throw new IOException("Unknown journal record " + type);
+                }
+            }
+            position = start + length;
+        }
+    }
+
+    private static VehicleSize vehicleSize(byte ordinal) throws IOException {
+        if (ordinal < 0 || ordinal >= VEHICLE_SIZES.length) {
+            throw new IOException("Unknown vehicle size " + ordinal);
+        }
+        return VEHICLE_SIZES[ordinal];
+    }
+
+    private static void checkSlotNumber(int slotNumber, SlotStore slotStore) throws IOException {
+        if (!slotStore.isValidSlotNumber(slotNumber)) {
+            throw new IOException("Journal names slot " + slotNumber + " which does not exist");
+        }
+    }
+
+    private static String decode(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] < 0) {
+                return new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+        }
+        return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Stops journaling => writes what is pending and closes the journal
+     */
+    void close() throws IOException {
+        commit();
+        synchronized (commitLock) {
+            journal.close();
+        }
+    }
+
+    private static void writeLayout(Path directory, FloorLayout floorLayout, SlotAllocationPolicy allocationPolicy)
+            throws IOException {
+        StringBuilder floorSizes = new StringBuilder();
+        StringBuilder elevatorPositions = new StringBuilder();
+        for (int floor = 0; floor < floorLayout.getFloorCount(); floor++) {
+            if (floor > 0) {
+                floorSizes.append(',');
+                elevatorPositions.append(',');
+            }
+            floorSizes.append(floorLayout.getFloorSize(floor));
+            elevatorPositions.append(floorLayout.getElevatorPosition(floor));
+        }
+        Properties layout = new Properties();
+        layout.setProperty("policy", allocationPolicy.name());
+        layout.setProperty("floorSizes", floorSizes.toString());
+        layout.setProperty("elevatorPositions", elevatorPositions.toString());
+        // the car slots of a floor are the ones of no other size
+        for (VehicleSize size : VEHICLE_SIZES) {
+            if (size == VehicleSize.CAR || floorLayout.getSlotCount(size) == 0) {
+                continue;
+            }
+            StringBuilder slotCounts = new StringBuilder();
+            for (int floor = 0; floor < floorLayout.getFloorCount(); floor++) {
+                slotCounts.append(floor > 0 ? "," : "").append(floorLayout.getSlotCount(floor, size));
+            }
+            layout.setProperty(size.getNoun() + "Slots", slotCounts.toString());
+        }
+        Path temporary = directory.resolve(LAYOUT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            layout.store(Channels.newOutputStream(channel), null);
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(LAYOUT_FILE), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the layout of the lot, null for a lot on the default single floor
+     */
+    private static Properties readLayout(Path directory) throws IOException {
+        Path file = directory.resolve(LAYOUT_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Properties layout = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            layout.load(in);
+        }
+        return layout;
+    }
+
+    private static FloorLayout toFloorLayout(Properties layout) throws IOException {
+        int[] floorSizes = parseInts(layout.getProperty("floorSizes"));
+        int[][] slotCounts = new int[floorSizes.length][VEHICLE_SIZES.length];
+        for (int floor = 0; floor < floorSizes.length; floor++) {
+            slotCounts[floor][VehicleSize.CAR.ordinal()] = floorSizes[floor];
+        }
+        for (VehicleSize size : VEHICLE_SIZES) {
+            String list = layout.getProperty(size.getNoun() + "Slots");
+            if (size == VehicleSize.CAR || list == null) {
+                continue;
+            }
+            int[] counts = parseInts(list);
+            if (counts.length != floorSizes.length) {
+                throw new IOException("Floor layout is incomplete");
+            }
+            for (int floor = 0; floor < floorSizes.length; floor++) {
+                slotCounts[floor][size.ordinal()] = counts[floor];
+                slotCounts[floor][VehicleSize.CAR.ordinal()] -= counts[floor];
+            }
+        }
+        try {
+            return new FloorLayout(slotCounts, parseInts(layout.getProperty("elevatorPositions")));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Floor layout is invalid: " + e.getMessage());
+        }
+    }
+
+    private static int[] parseInts(String list) throws IOException {
+        if (list == null) {
+            throw new IOException("Floor layout is incomplete");
+        }
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i]);
+        }
+        return values;
+    }
+
+    private static Path fileFor(Path directory, long generation, String suffix) {
+        String kind = ".log".equals(suffix) ? "journal-" : "snapshot-";
+        return directory.resolve(kind + generation + suffix);
+    }
+
+    /**
+     * @return generations of the journal (.log) or snapshot (.snap) files, in
+     *         ascending order
+     */
+    private static List<Long> journalFiles(Path directory, String suffix) throws IOException {
+        String prefix = ".log".equals(suffix) ? "journal-" : "snapshot-";
+        List<Long> generations = new ArrayList<Long>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+}
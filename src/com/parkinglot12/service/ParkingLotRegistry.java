@@ -0,0 +1,249 @@
+package com.parkinglot12.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.parkinglot12.domain.FloorLayout;
+import com.parkinglot12.domain.SlotAllocationPolicy;
+import com.parkinglot12.service.exceptions.ParkingLotException;
+
+/**
+ * All the parking lots served by this process, keyed by lot id.
+ *
+ * Every lot has its own ParkingLotService, TicketingSystem and ParkingLot and
+ * shares no state with the others, so lots can be driven in parallel from different threads.
+ *
+ * Once a journal directory is set, every lot is journaled in a subdirectory of
+ * it named after its lot id (see ParkingLotJournal) and survives a restart.
+ */
+class ParkingLotRegistry {
+    /**
+     * Lot used by commands which do not name one
+     */
+    static final String DEFAULT_LOT_ID = "default";
+
+    private final ConcurrentMap<String, ParkingLotService> services;
+    // copy of the map, looked up by the command path without making a String
+    private volatile Lookup lookup;
+    // null => lots live in memory only
+    private volatile Path journalDirectory;
+
+    ParkingLotRegistry() {
+        services = new ConcurrentHashMap<String, ParkingLotService>();
+        lookup = new Lookup(new String[2], new ParkingLotService[2]);
+    }
+
+    /**
+     * Creates a new parking lot
+     *
+     * @param lotId         => id the lot is addressed by
+     * @param numberOfSlots => number of slots in the parking lot
+     * @return ParkingLotService of the new lot
+     */
+    ParkingLotService create(String lotId, int numberOfSlots) {
+        if (numberOfSlots < 1) {
+            throw new ParkingLotException("Number of slots cannot be less than 1");
+        }
+        return create(lotId, FloorLayout.uniform(numberOfSlots, 1, 1), SlotAllocationPolicy.LOWEST_SLOT_NUMBER);
+    }
+
+    /**
+     * Creates a new parking lot spread over floors
+     *
+     * @param lotId            => id the lot is addressed by
+     * @param floorLayout      => floors of the lot
+     * @param allocationPolicy => how the slot of a parking vehicle is picked
+     * @return ParkingLotService of the new lot
+     */
+    ParkingLotService create(String lotId, FloorLayout floorLayout, SlotAllocationPolicy allocationPolicy) {
+        if (lotId == null) {
+            throw new IllegalArgumentException("lotId cannot be null");
+        }
+        if (floorLayout == null || allocationPolicy == null) {
+            throw new IllegalArgumentException("floorLayout and allocationPolicy cannot be null");
+        }
+        Path directory = journalDirectory;
+        TicketingSystem ticketingSystem;
+        if (directory == null) {
+            ticketingSystem = new TicketingSystem(new ParkingLot(floorLayout, allocationPolicy));
+        } else {
+            if (services.containsKey(lotId)) {
+                throw new ParkingLotException("Parking lot " + lotId + " is already created");
+            }
+            try {
+                ticketingSystem = ParkingLotJournal.create(directoryFor(directory, lotId), floorLayout,
+                        allocationPolicy);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Journal of parking lot " + lotId + " cannot be created", e);
+            }
+        }
+        ParkingLotService service = new ParkingLotService(ticketingSystem);
+        if (services.putIfAbsent(lotId, service) != null) {
+            throw new ParkingLotException("Parking lot " + lotId + " is already created");
+        }
+        refreshLookup();
+        return service;
+    }
+
+    /**
+     * @param lotId => id of the lot
+     * @return ParkingLotService of the lot
+     */
+    ParkingLotService get(String lotId) {
+        ParkingLotService service = services.get(lotId);
+        if (service == null) {
+            throw new IllegalStateException("Parking Lot is not initialized");
+        }
+        return service;
+    }
+
+    /**
+     * Same as get(String) for a lot id given as a range of characters
+     *
+     * @param chars => characters holding the lot id
+     * @param start => index of the first character of the lot id
+     * @param end   => index after the last character of the lot id
+     * @return ParkingLotService of the lot
+     */
+    ParkingLotService get(CharSequence chars, int start, int end) {
+        Lookup current = lookup;
+        String[] ids = current.lotIds;
+        int length = end - start;
+        // same value as String.hashCode of the lot id
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+        int mask = ids.length - 1;
+        for (int bucket = hash & mask; ids[bucket] != null; bucket = (bucket + 1) & mask) {
+            String id = ids[bucket];
+            if (id.length() != length) {
+                continue;
+            }
+            int j = 0;
+            while (j < length && id.charAt(j) == chars.charAt(start + j)) {
+                j++;
+            }
+            if (j == length) {
+                return current.services[bucket];
+            }
+        }
+        throw new IllegalStateException("Parking Lot is not initialized");
+    }
+
+    /**
+     * Forgets a parking lot, together with its journal
+     *
+     * @param lotId => id of the lot
+     */
+    void remove(String lotId) {
+        ParkingLotService service = services.remove(lotId);
+        if (service == null) {
+            throw new ParkingLotException("Parking lot " + lotId + " does not exist");
+        }
+        refreshLookup();
+        Path directory = journalDirectory;
+        try {
+            service.getTicketingSystem().close();
+            if (directory != null) {
+                Path lotDirectory = directoryFor(directory, lotId);
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(lotDirectory)) {
+                    for (Path file : files) {
+                        Files.delete(file);
+                    }
+                }
+                Files.delete(lotDirectory);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal of parking lot " + lotId + " cannot be removed", e);
+        }
+    }
+
+    /**
+     * Journals every lot created from now on in the given directory, and brings
+     * back the lots journaled there before
+     *
+     * @param directory => directory holding one subdirectory per lot
+     * @return number of lots recovered
+     */
+    synchronized int enableJournal(Path directory) throws IOException {
+        if (journalDirectory != null) {
+            throw new IllegalStateException("Journal is already enabled");
+        }
+        Files.createDirectories(directory);
+        int recovered = 0;
+        try (DirectoryStream<Path> lots = Files.newDirectoryStream(directory)) {
+            for (Path lotDirectory : lots) {
+                if (!ParkingLotJournal.exists(lotDirectory)) {
+                    continue;
+                }
+                String lotId = URLDecoder.decode(lotDirectory.getFileName().toString(), StandardCharsets.UTF_8);
+                ParkingLotService service = new ParkingLotService(ParkingLotJournal.recover(lotDirectory));
+                if (services.putIfAbsent(lotId, service) != null) {
+                    service.getTicketingSystem().close();
+                    throw new ParkingLotException("Parking lot " + lotId + " is already created");
+                }
+                recovered++;
+            }
+        }
+        journalDirectory = directory;
+        refreshLookup();
+        return recovered;
+    }
+
+    private static Path directoryFor(Path journalDirectory, String lotId) {
+        // lot ids may hold characters a file name cannot
+        return journalDirectory.resolve(URLEncoder.encode(lotId, StandardCharsets.UTF_8));
+    }
+
+    private synchronized void refreshLookup() {
+        // at most half full, so a miss ends at an empty bucket soon
+        int capacity = Integer.highestOneBit(Math.max(services.size(), 1) * 2) * 2;
+        String[] ids = new String[capacity];
+        ParkingLotService[] systems = new ParkingLotService[capacity];
+        int mask = capacity - 1;
+        int size = 0;
+        for (Map.Entry<String, ParkingLotService> entry : services.entrySet()) {
+            if (size == capacity / 2) {
+                // lots created while copying wait for their own refresh
+                break;
+            }
+            int bucket = entry.getKey().hashCode() & mask;
+            while (ids[bucket] != null) {
+                bucket = (bucket + 1) & mask;
+            }
+            ids[bucket] = entry.getKey();
+            systems[bucket] = entry.getValue();
+            size++;
+        }
+        lookup = new Lookup(ids, systems);
+    }
+
+    Set<String> getLotIds() {
+        return services.keySet();
+    }
+
+    /**
+     * Open addressing by lot id hash, linear probing => lotIds[bucket] is served
+     * by services[bucket]. Replaced as a whole when a lot is created or removed
+     */
+    private static class Lookup {
+        private final String[] lotIds;
+        private final ParkingLotService[] services;
+
+        Lookup(String[] lotIds, ParkingLotService[] services) {
+            this.lotIds = lotIds;
+            this.services = services;
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package com.parkinglot12.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+
+import com.parkinglot12.domain.BackpressurePolicy;
+import com.parkinglot12.domain.FloorLayout;
+import com.parkinglot12.domain.LeaveReceipt;
+import com.parkinglot12.domain.ResultCode;
+import com.parkinglot12.domain.SlotAllocationPolicy;
+import com.parkinglot12.domain.StatusResponse;
+import com.parkinglot12.domain.StatusSink;
+import com.parkinglot12.domain.TicketEventHandler;
+import com.parkinglot12.domain.VehicleSize;
+
+/**
+ * Programmatic API of one parking lot.
+ *
+ * The expected outcomes of parking, leaving and looking up ("lot full",
+ * "duplicate registration", "not found", "no vehicle at slot") come back as
+ * result codes instead of exceptions, see ResultCode. Exceptions are left for
+ * real faults like invalid arguments. The text protocol of CommandExecutor is
+ * built on this API.
+ *
+ * Safe to call from many threads at once.
+ */
+public class ParkingLotService {
+    private final TicketingSystem ticketingSystem;
+
+    ParkingLotService(TicketingSystem ticketingSystem) {
+        this.ticketingSystem = ticketingSystem;
+    }
+
+    /**
+     * Creates a parking lot on its own, not known to any CommandExecutor
+     *
+     * @param numberOfSlots => number of slots in the parking lot
+     * @return ParkingLotService of the new lot
+     */
+    public static ParkingLotService create(int numberOfSlots) {
+        if (numberOfSlots < 1) {
+            throw new IllegalArgumentException("Number of slots cannot be less than 1");
+        }
+        return new ParkingLotService(new TicketingSystem(new ParkingLot(numberOfSlots)));
+    }
+
+    /**
+     * Creates a parking lot spread over floors on its own, not known to any
+     * CommandExecutor
+     *
+     * @param floorLayout      => floors of the lot
+     * @param allocationPolicy => how the slot of a parking vehicle is picked
+     * @return ParkingLotService of the new lot
+     */
+    public static ParkingLotService create(FloorLayout floorLayout, SlotAllocationPolicy allocationPolicy) {
+        if (floorLayout == null || allocationPolicy == null) {
+            throw new IllegalArgumentException("floorLayout and allocationPolicy cannot be null");
+        }
+        return create(floorLayout, allocationPolicy, Clock.systemUTC());
+    }
+
+    /**
+     * Same as create(FloorLayout, SlotAllocationPolicy) with the clock giving
+     * entry and exit times and expiring the timers, e.g. a fixed clock moved
+     * by hand
+     */
+    public static ParkingLotService create(FloorLayout floorLayout, SlotAllocationPolicy allocationPolicy,
+            Clock clock) {
+        if (floorLayout == null || allocationPolicy == null || clock == null) {
+            throw new IllegalArgumentException("floorLayout, allocationPolicy and clock cannot be null");
+        }
+        return new ParkingLotService(
+                new TicketingSystem(new ParkingLot(floorLayout, allocationPolicy), null, clock));
+    }
+
+    TicketingSystem getTicketingSystem() {
+        return ticketingSystem;
+    }
+
+    /**
+     * Parks a car at the nearest free slot
+     *
+     * @param registrationNumber => registration number of the vehicle
+     * @param driverAge          => age of the driver, 1 to 32767
+     * @return slot number given to the vehicle, or the code of
+     *         ResultCode.LOT_FULL / DUPLICATE_REGISTRATION
+     */
+    public int park(String registrationNumber, int driverAge) {
+        return ticketingSystem.parkVehicle(registrationNumber, driverAge, VehicleSize.CAR);
+    }
+
+    /**
+     * Parks a vehicle at the nearest free slot it fits => one of its own size,
+     * else one of the next bigger size, see VehicleSize
+     *
+     * @param registrationNumber => registration number of the vehicle
+     * @param driverAge          => age of the driver, 1 to 32767
+     * @param vehicleSize        => size of the vehicle
+     * @return slot number given to the vehicle, or the code of
+     *         ResultCode.LOT_FULL / DUPLICATE_REGISTRATION
+     */
+    public int park(String registrationNumber, int driverAge, VehicleSize vehicleSize) {
+        return ticketingSystem.parkVehicle(registrationNumber, driverAge, vehicleSize);
+    }
+
+    /**
+     * Takes the vehicle out of a slot
+     *
+     * @param slotNumber => the slot from which the vehicle leaves
+     * @param receipt    => filled in with the vehicle which left, may be reused
+     * @return the code of ResultCode.SUCCESS or NO_VEHICLE_AT_SLOT
+     */
+    public int leave(int slotNumber, LeaveReceipt receipt) {
+        if (receipt == null) {
+            throw new IllegalArgumentException("receipt cannot be null");
+        }
+        return ticketingSystem.leaveSlot(slotNumber, receipt);
+    }
+
+    /**
+     * Parks several cars in one go, as if park was called for each in
+     * order, but claiming their slots in one pass and writing the journal
+     * once. Meant for the rush at a shift change.
+     *
+     * @param registrationNumbers => registration numbers of the vehicles
+     * @param driverAges          => ages of their drivers, 1 to 32767
+     * @param results             => per vehicle, filled in with what park
+     *                            would have returned
+     * @return number of vehicles parked
+     */
+    public int parkAll(String[] registrationNumbers, int[] driverAges, int[] results) {
+        if (registrationNumbers == null || driverAges == null || results == null) {
+            throw new IllegalArgumentException("registrationNumbers, driverAges and results cannot be null");
+        }
+        int count = registrationNumbers.length;
+        if (driverAges.length < count || results.length < count) {
+            throw new IllegalArgumentException("driverAges and results must have an entry per vehicle");
+        }
+        return ticketingSystem.parkVehicles(registrationNumbers, driverAges, count, results);
+    }
+
+    /**
+     * Takes the vehicles out of several slots in one go, as if leave was called
+     * for each in order, but freeing the slots in one pass and writing the
+     * journal once
+     *
+     * @param slotNumbers => the slots from which the vehicles leave
+     * @param receipts    => per slot, filled in with the vehicle which left
+     * @param results     => per slot, filled in with what leave would have
+     *                    returned
+     * @return number of vehicles which left
+     */
+    public int leaveAll(int[] slotNumbers, LeaveReceipt[] receipts, int[] results) {
+        if (slotNumbers == null || receipts == null || results == null) {
+            throw new IllegalArgumentException("slotNumbers, receipts and results cannot be null");
+        }
+        int count = slotNumbers.length;
+        if (receipts.length < count || results.length < count) {
+            throw new IllegalArgumentException("receipts and results must have an entry per slot");
+        }
+        for (int i = 0; i < count; i++) {
+            if (receipts[i] == null) {
+                throw new IllegalArgumentException("receipt cannot be null");
+            }
+        }
+        return ticketingSystem.leaveSlots(slotNumbers, count, receipts, results);
+    }
+
+    /**
+     * Holds a slot for a vehicle which is on its way. Its park takes the slot,
+     * and the slot goes back to the lot if it has not parked within the hold.
+     * Reservations live in memory only, a journaled lot does not keep them
+     * over a restart.
+     *
+     * @param registrationNumber => registration number of the vehicle
+     * @param vehicleSize        => size of the vehicle, it gets a slot it fits
+     * @param hold               => how long the slot is held
+     * @return slot number reserved, or the code of ResultCode.LOT_FULL /
+     *         DUPLICATE_REGISTRATION when the vehicle is parked or holds a
+     *         reservation already
+     */
+    public int reserve(String registrationNumber, VehicleSize vehicleSize, Duration hold) {
+        if (hold == null) {
+            throw new IllegalArgumentException("hold cannot be null");
+        }
+        return ticketingSystem.reserveSlot(registrationNumber, vehicleSize, hold.toMillis());
+    }
+
+    /**
+     * Sets how long a vehicle may stay before it shows up in
+     * getOverstayedRegistrationNumbers, counted from its entry time. Applies to
+     * the vehicles parked already as well.
+     *
+     * @param maxStay => Duration.ZERO for no limit
+     */
+    public void setMaxStay(Duration maxStay) {
+        if (maxStay == null) {
+            throw new IllegalArgumentException("maxStay cannot be null");
+        }
+        ticketingSystem.setMaxStay(maxStay.toMillis());
+    }
+
+    /**
+     * @return registration numbers of the vehicles parked longer than the
+     *         maximum stay, in slot order
+     */
+    public List<String> getOverstayedRegistrationNumbers() {
+        return ticketingSystem.getOverstayedRegistrationNumbers();
+    }
+
+    /**
+     * @return entry time of the vehicle at the slot in milliseconds since the
+     *         epoch, or the code of ResultCode.NO_VEHICLE_AT_SLOT
+     */
+    public long getParkedAt(int slotNumber) {
+        return ticketingSystem.getParkedAt(slotNumber);
+    }
+
+    /**
+     * Starts keeping the history of the lot => every park and leave from now
+     * on, and the vehicles parked now as of their entry time. The history
+     * queries below need it. It lives in memory, a restart starts it over.
+     */
+    public void recordHistory() {
+        ticketingSystem.recordHistory();
+    }
+
+    /**
+     * @param fromMillis => start of the range, rounded down to a whole hour
+     * @param toMillis   => end of the range, exclusive
+     * @return average number of parked vehicles in each hour of the range
+     */
+    public double[] getAverageOccupancyByHour(long fromMillis, long toMillis) {
+        checkRange(fromMillis, toMillis);
+        return ticketingSystem.getHistory().averageOccupancyByHour(fromMillis, toMillis);
+    }
+
+    /**
+     * Stays of the vehicles which left within a range, by length
+     *
+     * @param bucketSeconds => length of stay each bucket covers
+     * @param buckets       => number of buckets, the last one also takes the
+     *                      longer stays
+     * @return number of stays per bucket
+     */
+    public long[] getStayHistogram(long fromMillis, long toMillis, int bucketSeconds, int buckets) {
+        checkRange(fromMillis, toMillis);
+        return ticketingSystem.getHistory().stayHistogram(fromMillis, toMillis, bucketSeconds, buckets);
+    }
+
+    /**
+     * @return number of parks within a range indexed by the age of the driver,
+     *         up to the oldest one
+     */
+    public long[] getDriverAgeDistribution(long fromMillis, long toMillis) {
+        checkRange(fromMillis, toMillis);
+        return ticketingSystem.getHistory().driverAgeDistribution(fromMillis, toMillis);
+    }
+
+    /**
+     * @return number of different registration numbers parked within a range
+     */
+    public int getDistinctVehicleCount(long fromMillis, long toMillis) {
+        checkRange(fromMillis, toMillis);
+        return ticketingSystem.getHistory().distinctVehicles(fromMillis, toMillis);
+    }
+
+    private static void checkRange(long fromMillis, long toMillis) {
+        if (toMillis < fromMillis) {
+            throw new IllegalArgumentException("Range cannot end before it starts");
+        }
+        if (toMillis - fromMillis < 0 || toMillis - fromMillis > 400 * 24 * TicketHistory.HOUR_MILLIS) {
+            throw new IllegalArgumentException("Range cannot be longer than 400 days");
+        }
+    }
+
+    /**
+     * @param registrationNumber => registration number of the vehicle
+     * @return slot number the vehicle is parked at, or the code of
+     *         ResultCode.NOT_FOUND
+     */
+    public int findSlotNumber(String registrationNumber) {
+        return ticketingSystem.findSlotNumber(registrationNumber);
+    }
+
+    /**
+     * Same as findSlotNumber(String) for a registration number given as a range
+     * of characters
+     */
+    int findSlotNumber(CharSequence chars, int start, int end) {
+        return ticketingSystem.findSlotNumber(chars, start, end);
+    }
+
+    /**
+     * @return slot numbers of the vehicles whose driver has given age, in slot
+     *         order
+     */
+    public List<Integer> getSlotNumbersForDriverAge(int driverAge) {
+        return ticketingSystem.getSlotNumbersFromDriverAge(driverAge);
+    }
+
+    /**
+     * @return registration numbers of the vehicles whose driver has given age,
+     *         in slot order
+     */
+    public List<String> getRegistrationNumbersForDriverAge(int driverAge) {
+        return ticketingSystem.getRegistrationNumbersFromDriverAge(driverAge);
+    }
+
+    /**
+     * @return number of parked vehicles whose driver is fromAge to toAge old,
+     *         both inclusive, counted in O(log ages)
+     */
+    public int countForDriverAges(int fromAge, int toAge) {
+        return ticketingSystem.countForDriverAges(fromAge, toAge);
+    }
+
+    /**
+     * @return slot numbers of the vehicles whose driver is fromAge to toAge
+     *         old, both inclusive, in slot order
+     */
+    public List<Integer> getSlotNumbersForDriverAges(int fromAge, int toAge) {
+        return ticketingSystem.getSlotNumbersFromDriverAges(fromAge, toAge);
+    }
+
+    /**
+     * @return registration numbers of the vehicles whose driver is fromAge to
+     *         toAge old, both inclusive, in slot order
+     */
+    public List<String> getRegistrationNumbersForDriverAges(int fromAge, int toAge) {
+        return ticketingSystem.getRegistrationNumbersFromDriverAges(fromAge, toAge);
+    }
+
+    /**
+     * @return every parked vehicle, in slot order
+     */
+    public List<StatusResponse> getStatus() {
+        return ticketingSystem.getStatus();
+    }
+
+    /**
+     * Opens a point-in-time view of the parked vehicles for reports => it reads
+     * without ever holding up park or leave, and sees none made after it
+     *
+     * @return the snapshot, close it once read
+     */
+    public ParkingLotSnapshot snapshot() {
+        return ticketingSystem.snapshot();
+    }
+
+    /**
+     * Streams the parked vehicles to a sink page by page, in slot order, without
+     * building a list of them
+     *
+     * @param fromSlotNumber => 1 for the first page, then the token returned by
+     *                       the previous page
+     * @param pageSize       => most vehicles handed over by this call
+     * @param sink           => receives the vehicles
+     * @return resume token for the next page, -1 once every vehicle was handed
+     *         over
+     */
+    public int streamStatus(int fromSlotNumber, int pageSize, StatusSink sink) {
+        if (sink == null) {
+            throw new IllegalArgumentException("sink cannot be null");
+        }
+        return ticketingSystem.streamStatus(fromSlotNumber, pageSize, sink);
+    }
+
+    /**
+     * Subscribes to the feed of park and leave events of this lot. The handler
+     * runs on its own thread and the gates never wait for it; a handler too
+     * slow for the feed is dealt with by the policy.
+     *
+     * @param handler => gets every event published from now on, in order
+     * @param policy  => what happens once the handler falls too far behind
+     * @return the subscription, close it to stop
+     */
+    public TicketSubscription subscribe(TicketEventHandler handler, BackpressurePolicy policy) {
+        if (handler == null || policy == null) {
+            throw new IllegalArgumentException("handler and policy cannot be null");
+        }
+        return ticketingSystem.subscribe(handler, policy);
+    }
+
+    public FloorLayout getFloorLayout() {
+        return ticketingSystem.getFloorLayout();
+    }
+
+    public SlotAllocationPolicy getAllocationPolicy() {
+        return ticketingSystem.getAllocationPolicy();
+    }
+
+    public int getNumberOfSlots() {
+        return ticketingSystem.getNumberOfSlots();
+    }
+
+    public int getFreeSlotCount() {
+        return ticketingSystem.getFreeSlotCount();
+    }
+
+    /**
+     * @return number of slots holding a vehicle, reserved slots not counted
+     */
+    public int getOccupiedSlotCount() {
+        return ticketingSystem.getOccupiedSlotCount();
+    }
+}
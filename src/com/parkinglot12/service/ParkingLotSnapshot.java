@@ -0,0 +1,106 @@
+package com.parkinglot12.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.parkinglot12.domain.StatusResponse;
+import com.parkinglot12.domain.StatusSink;
+
+/**
+ * The parked vehicles of a lot as they were when the snapshot was opened.
+ *
+ * Reading it never locks the gates and never sees a park or leave made after
+ * it was opened, however long the read takes. Opening one costs O(1); while
+ * any is open every slot a gate changes keeps its old row, which is dropped
+ * once the last snapshot closes => close it as soon as the reports are read.
+ */
+public class ParkingLotSnapshot implements AutoCloseable {
+    private final SlotStore slotStore;
+    private final long epoch;
+    private volatile boolean closed;
+
+    ParkingLotSnapshot(SlotStore slotStore) {
+        this.slotStore = slotStore;
+        this.epoch = slotStore.openSnapshot();
+    }
+
+    /**
+     * Same as ParkingLotService.streamStatus, at the snapshot
+     *
+     * @return resume token for the next page, -1 once every vehicle was handed
+     *         over
+     */
+    public int streamStatus(int fromSlotNumber, int pageSize, StatusSink sink) {
+        if (sink == null) {
+            throw new IllegalArgumentException("sink cannot be null");
+        }
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size cannot be less than 1");
+        }
+        ensureOpen();
+        return slotStore.forEachVehicleAt(epoch, fromSlotNumber, pageSize, sink);
+    }
+
+    /**
+     * @return every vehicle parked at the snapshot, in slot order
+     */
+    public List<StatusResponse> getStatus() {
+        ensureOpen();
+        List<StatusResponse> statusResponseList = new ArrayList<StatusResponse>();
+        slotStore.forEachVehicleAt(epoch, 1, Integer.MAX_VALUE, (slotNumber, registrationNumber,
+                driverAge) -> statusResponseList.add(new StatusResponse(slotNumber, registrationNumber, driverAge)));
+        return statusResponseList;
+    }
+
+    /**
+     * @return number of vehicles parked at the snapshot whose driver is fromAge
+     *         to toAge old, both inclusive
+     */
+    public int countForDriverAges(int fromAge, int toAge) {
+        ensureOpen();
+        int[] count = new int[1];
+        slotStore.forEachSlotNumberForDriverAgesAt(epoch, fromAge, toAge, slotNumber -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * @return slot numbers of the vehicles parked at the snapshot whose driver
+     *         is fromAge to toAge old, both inclusive, in slot order
+     */
+    public List<Integer> getSlotNumbersForDriverAges(int fromAge, int toAge) {
+        ensureOpen();
+        // the live count is only a hint of the size
+        List<Integer> slotNumbers = new ArrayList<Integer>(slotStore.countForDriverAges(fromAge, toAge));
+        slotStore.forEachSlotNumberForDriverAgesAt(epoch, fromAge, toAge, slotNumbers::add);
+        return slotNumbers;
+    }
+
+    /**
+     * @return registration numbers of the vehicles parked at the snapshot whose
+     *         driver is fromAge to toAge old, both inclusive, in slot order
+     */
+    public List<String> getRegistrationNumbersForDriverAges(int fromAge, int toAge) {
+        ensureOpen();
+        List<String> registrationNumbers = new ArrayList<String>(slotStore.countForDriverAges(fromAge, toAge));
+        slotStore.forEachVehicleForDriverAgesAt(epoch, fromAge, toAge,
+                (slotNumber, registrationNumber, driverAge) -> registrationNumbers.add(registrationNumber));
+        return registrationNumbers;
+    }
+
+    /**
+     * Releases the snapshot, closing it again does nothing
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            slotStore.closeSnapshot(epoch);
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("snapshot is closed");
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.parkinglot12.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns registration numbers into keys of two longs (high and low), so they
+ * are stored, hashed and compared as two words instead of as Strings.
+ *
+ * A registration of up to 20 characters out of '-', '0'-'9', 'A'-'Z' and
+ * 'a'-'z' is packed => 6 bits per character, 10 characters per word from the
+ * most significant bits down, code 0 marking the end. The codes follow ASCII
+ * order, so packed keys compare like the registrations themselves. Anything
+ * else is interned => kept as its String in a table, with INTERNED as the high
+ * word and its id as the low word. Either way equal registrations get equal
+ * keys, and the key decodes back to the exact original text.
+ *
+ * One codec per lot. A registration is interned while it is parked, by the
+ * caller holding whatever serializes the parks and leaves of that
+ * registration; lookups and decoding are safe from any thread.
+ */
+class RegistrationCodec {
+    // high word of an interned registration, packed ones never set its top bit
+    static final long INTERNED = Long.MIN_VALUE;
+    // low word of an unpackable registration which is not interned
+    static final long NOT_INTERNED = -1;
+    private static final int CHAR_BITS = 6;
+    private static final int CHARS_PER_WORD = 10;
+    private static final int MAX_PACKED_LENGTH = 2 * CHARS_PER_WORD;
+    private static final char[] ALPHABET = "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz"
+            .toCharArray();
+    // ASCII character => its code, 0 if it cannot be packed
+    private static final byte[] CODES = new byte[128];
+
+    static {
+        for (int i = 0; i < ALPHABET.length; i++) {
+            CODES[ALPHABET[i]] = (byte) (i + 1);
+        }
+    }
+
+    // interned registration => id, and back
+    private final Map<String, Long> ids = new ConcurrentHashMap<String, Long>();
+    private final Map<Long, String> interned = new ConcurrentHashMap<Long, String>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    /**
+     * @return high word of the key of the registration in chars[start, end)
+     */
+    long high(CharSequence chars, int start, int end) {
+        return packable(chars, start, end) ? pack(chars, start, Math.min(end, start + CHARS_PER_WORD)) : INTERNED;
+    }
+
+    /**
+     * @return low word of the key of the registration in chars[start, end),
+     *         NOT_INTERNED if it can be neither packed nor found interned
+     */
+    long low(CharSequence chars, int start, int end) {
+        if (packable(chars, start, end)) {
+            return start + CHARS_PER_WORD < end ? pack(chars, start + CHARS_PER_WORD, end) : 0;
+        }
+        Long id = ids.get(chars.subSequence(start, end).toString());
+        return id == null ? NOT_INTERNED : id;
+    }
+
+    /**
+     * Same as hash(high, low) of the key of the registration in chars[start,
+     * end), interned or not
+     */
+    int hash(CharSequence chars, int start, int end) {
+        if (packable(chars, start, end)) {
+            return mix(pack(chars, start, Math.min(end, start + CHARS_PER_WORD)),
+                    start + CHARS_PER_WORD < end ? pack(chars, start + CHARS_PER_WORD, end) : 0);
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+        return hash;
+    }
+
+    /**
+     * @return hash of a key => of its words if packed, String.hashCode of the
+     *         registration if interned, so it never depends on the id
+     */
+    int hash(long high, long low) {
+        return high == INTERNED ? interned.get(low).hashCode() : mix(high, low);
+    }
+
+    /**
+     * Interns an unpackable registration
+     *
+     * @return low word of its key
+     */
+    long intern(String registrationNumber) {
+        Long id = ids.get(registrationNumber);
+        if (id == null) {
+            id = nextId.getAndIncrement();
+            interned.put(id, registrationNumber);
+            ids.put(registrationNumber, id);
+        }
+        return id;
+    }
+
+    /**
+     * Drops an interned registration once its vehicle is gone
+     */
+    void release(long id) {
+        String registrationNumber = interned.remove(id);
+        if (registrationNumber != null) {
+            ids.remove(registrationNumber);
+        }
+    }
+
+    /**
+     * @return the exact registration number of a key
+     */
+    String decode(long high, long low) {
+        if (high == INTERNED) {
+            return interned.get(low);
+        }
+        byte[] text = new byte[MAX_PACKED_LENGTH];
+        int length = unpack(high, text, 0);
+        if (length == CHARS_PER_WORD) {
+            length = unpack(low, text, length);
+        }
+        return new String(text, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean packable(CharSequence chars, int start, int end) {
+        if (end - start > MAX_PACKED_LENGTH) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = chars.charAt(i);
+            if (c >= CODES.length || CODES[c] == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return up to 10 packable characters in one word, first one highest
+     */
+    private static long pack(CharSequence chars, int start, int end) {
+        long word = 0;
+        for (int i = 0; i < CHARS_PER_WORD; i++) {
+            word = (word << CHAR_BITS) | (start + i < end ? CODES[chars.charAt(start + i)] : 0);
+        }
+        return word;
+    }
+
+    /**
+     * @return offset after the characters of the word written at offset
+     */
+    private static int unpack(long word, byte[] text, int offset) {
+        for (int shift = CHAR_BITS * (CHARS_PER_WORD - 1); shift >= 0; shift -= CHAR_BITS) {
+            int code = (int) (word >>> shift) & ((1 << CHAR_BITS) - 1);
+            if (code == 0) {
+                break;
+            }
+            text[offset++] = (byte) ALPHABET[code - 1];
+        }
+        return offset;
+    }
+
+    private static int mix(long high, long low) {
+        long hash = (high ^ Long.rotateLeft(low, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,197 @@
+package com.parkinglot12.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Result of a command as the ISO-8859-1 bytes of the text protocol, rendered
+ * by the CommandExecutor from pre-encoded templates, characters and ints
+ * without making a String of it.
+ *
+ * The caller owns it and reuses one encoder line after line => reset, execute,
+ * then copy the bytes out with copyTo or appendTo. Its array only grows, so
+ * once it fits the longest result rendering allocates nothing.
+ *
+ * A character above U+00FF has no ISO-8859-1 byte. Once one is appended the
+ * line is kept as chars instead, as String does, so toString and appendTo stay
+ * lossless; copyTo writes such a character as '?'.
+ */
+public class ResponseEncoder {
+    private static final byte[] NULL = template("null");
+    // room for the digits and sign of any long
+    private static final int MAX_DIGITS = 20;
+
+    private byte[] bytes;
+    // the line once it holds a character above U+00FF, read only while wide
+    private char[] chars;
+    private boolean wide;
+    private int length;
+
+    public ResponseEncoder() {
+        bytes = new byte[256];
+    }
+
+    /**
+     * @return the text as bytes, to be rendered with append(byte[])
+     */
+    static byte[] template(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Empties the encoder, its array is kept
+     */
+    public void reset() {
+        length = 0;
+        wide = false;
+    }
+
+    /**
+     * @return number of bytes rendered
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Throws away the bytes rendered after a given length
+     */
+    void truncate(int length) {
+        this.length = length;
+    }
+
+    ResponseEncoder append(byte[] template) {
+        ensureCapacity(template.length);
+        if (wide) {
+            for (byte b : template) {
+                chars[length++] = (char) (b & 0xFF);
+            }
+            return this;
+        }
+        System.arraycopy(template, 0, bytes, length, template.length);
+        length += template.length;
+        return this;
+    }
+
+    ResponseEncoder append(char c) {
+        ensureCapacity(1);
+        if (c > 0xFF && !wide) {
+            widen();
+        }
+        if (wide) {
+            chars[length++] = c;
+        } else {
+            bytes[length++] = (byte) c;
+        }
+        return this;
+    }
+
+    /**
+     * Characters are written as ISO-8859-1, a null as "null"
+     */
+    ResponseEncoder append(CharSequence chars) {
+        return chars == null ? append(NULL) : append(chars, 0, chars.length());
+    }
+
+    ResponseEncoder append(CharSequence text, int start, int end) {
+        ensureCapacity(end - start);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c > 0xFF && !wide) {
+                widen();
+            }
+            if (wide) {
+                chars[length++] = c;
+            } else {
+                bytes[length++] = (byte) c;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes the decimal digits of a number, the same text as
+     * Long.toString(value)
+     */
+    ResponseEncoder append(long value) {
+        ensureCapacity(MAX_DIGITS);
+        if (wide) {
+            // rare => rendered as a String rather than digit by digit
+            return append(Long.toString(value));
+        }
+        if (value < 0) {
+            bytes[length++] = '-';
+        }
+        // digits of a negative value are taken as negative, so Long.MIN_VALUE works too
+        long remaining = value < 0 ? value : -value;
+        int digits = 1;
+        for (long rest = remaining / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            bytes[i] = (byte) ('0' - remaining % 10);
+            remaining /= 10;
+        }
+        length += digits;
+        return this;
+    }
+
+    /**
+     * Copies as many of the rendered bytes as the buffer has room for
+     *
+     * @param from => index of the first byte to copy
+     * @return index after the last byte copied, length() once every byte is
+     *         copied
+     */
+    public int copyTo(ByteBuffer buffer, int from) {
+        int count = Math.min(length - from, buffer.remaining());
+        if (wide) {
+            for (int i = from; i < from + count; i++) {
+                buffer.put(chars[i] > 0xFF ? (byte) '?' : (byte) chars[i]);
+            }
+        } else {
+            buffer.put(bytes, from, count);
+        }
+        return from + count;
+    }
+
+    /**
+     * Appends the rendered text, one character per byte
+     */
+    public void appendTo(Appendable out) throws IOException {
+        for (int i = 0; i < length; i++) {
+            out.append(wide ? chars[i] : (char) (bytes[i] & 0xFF));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return wide ? new String(chars, 0, length) : new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private void ensureCapacity(int more) {
+        if (length + more > bytes.length) {
+            byte[] grown = new byte[Math.max(bytes.length << 1, length + more)];
+            System.arraycopy(bytes, 0, grown, 0, length);
+            bytes = grown;
+        }
+        if (wide && length + more > chars.length) {
+            chars = Arrays.copyOf(chars, bytes.length);
+        }
+    }
+
+    /**
+     * Turns the bytes rendered so far into chars, the line goes on as chars
+     */
+    private void widen() {
+        if (chars == null || chars.length < bytes.length) {
+            chars = new char[bytes.length];
+        }
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (bytes[i] & 0xFF);
+        }
+        wide = true;
+    }
+}
@@ -0,0 +1,123 @@
+package com.parkinglot12.service;
+
+import java.util.Arrays;
+
+import com.parkinglot12.domain.FloorLayout;
+import com.parkinglot12.domain.SlotAllocationPolicy;
+import com.parkinglot12.domain.VehicleSize;
+
+/**
+ * The free pool of one VehicleSize in a lot with slots of several sizes.
+ *
+ * The slots of the size get a FreeSlotIndex of their own, counting only them
+ * floor after floor, and the strategy of the lot's policy runs over it as if
+ * they were a lot of their own. Every claim and release is mirrored to the
+ * lot's FreeSlotIndex by slot index. A full pool answers -1 from its counter
+ * alone, so a vehicle falling back to the next size never scans slots of the
+ * wrong size.
+ */
+class SizeClassStrategy implements SlotAllocationStrategy {
+    private final FreeSlotIndex occupancy;
+    private final FreeSlotIndex classOccupancy;
+    private final SlotAllocationStrategy strategy;
+    // run of consecutive slots of the size => its first index in the class and in the lot
+    private final int[] firstClassIndexes;
+    private final int[] firstIndexes;
+
+    /**
+     * @param occupancy => claims of all the slots of the lot, by slot index
+     */
+    SizeClassStrategy(SlotAllocationPolicy policy, FreeSlotIndex occupancy, FloorLayout layout, VehicleSize size) {
+        this.occupancy = occupancy;
+        classOccupancy = new FreeSlotIndex(layout.getSlotCount(size));
+        strategy = policy == SlotAllocationPolicy.LOWEST_SLOT_NUMBER ? new LowestSlotNumberStrategy(classOccupancy)
+                : new FloorAllocationStrategy(policy, classOccupancy, layout, size);
+        int[] classIndexes = new int[layout.getFloorCount()];
+        int[] indexes = new int[layout.getFloorCount()];
+        int runs = 0;
+        int classIndex = 0;
+        for (int floor = 0; floor < layout.getFloorCount(); floor++) {
+            int slots = layout.getSlotCount(floor, size);
+            if (slots > 0) {
+                classIndexes[runs] = classIndex;
+                indexes[runs++] = layout.getFirstSlotNumber(floor, size) - 1;
+                classIndex += slots;
+            }
+        }
+        firstClassIndexes = Arrays.copyOf(classIndexes, runs);
+        firstIndexes = Arrays.copyOf(indexes, runs);
+    }
+
+    @Override
+    public int allocate() {
+        int classIndex = strategy.allocate();
+        if (classIndex == -1) {
+            return -1;
+        }
+        int index = toIndex(classIndex);
+        occupancy.occupy(index);
+        return index;
+    }
+
+    @Override
+    public int allocate(int[] indexes, int count) {
+        int claimed = strategy.allocate(indexes, count);
+        // runs are in slot order, so the order of the claims is kept
+        for (int i = 0; i < claimed; i++) {
+            indexes[i] = toIndex(indexes[i]);
+            occupancy.occupy(indexes[i]);
+        }
+        return claimed;
+    }
+
+    @Override
+    public void release(int index) {
+        occupancy.release(index);
+        strategy.release(toClassIndex(index));
+    }
+
+    @Override
+    public void release(int[] indexes, int count) {
+        occupancy.release(indexes, count);
+        int[] classIndexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            classIndexes[i] = toClassIndex(indexes[i]);
+        }
+        strategy.release(classIndexes, count);
+    }
+
+    @Override
+    public void restored() {
+        for (int run = 0; run < firstIndexes.length; run++) {
+            int end = firstIndexes[run] + runLength(run);
+            for (int index = occupancy.nextOccupied(firstIndexes[run]); index != -1 && index < end;
+                    index = occupancy.nextOccupied(index + 1)) {
+                classOccupancy.occupy(firstClassIndexes[run] + index - firstIndexes[run]);
+            }
+        }
+        strategy.restored();
+    }
+
+    private int runLength(int run) {
+        return (run + 1 < firstClassIndexes.length ? firstClassIndexes[run + 1] : classOccupancy.getCapacity())
+                - firstClassIndexes[run];
+    }
+
+    private int toIndex(int classIndex) {
+        int run = runOf(firstClassIndexes, classIndex);
+        return firstIndexes[run] + classIndex - firstClassIndexes[run];
+    }
+
+    private int toClassIndex(int index) {
+        int run = runOf(firstIndexes, index);
+        return firstClassIndexes[run] + index - firstIndexes[run];
+    }
+
+    /**
+     * @return the last run starting at or before the index
+     */
+    private static int runOf(int[] firstIndexes, int index) {
+        int found = Arrays.binarySearch(firstIndexes, index);
+        return found >= 0 ? found : -found - 2;
+    }
+}
@@ -0,0 +1,39 @@
+package com.parkinglot12.service;
+
+/**
+ * Decides which free slot of a ParkingLot a vehicle gets.
+ *
+ * A strategy owns the claim => it marks the slot occupied in the lot's
+ * FreeSlotIndex as well as in whatever index of its own it keeps, and undoes
+ * both on release. Indexes are 0 based, ParkingLot translates to slot numbers.
+ * Safe for many gate threads at once.
+ */
+interface SlotAllocationStrategy {
+    /**
+     * @return index of the slot claimed, -1 if the lot is full
+     */
+    int allocate();
+
+    /**
+     * Claims several slots in one go
+     *
+     * @param indexes => receives the indexes claimed, best first
+     * @param count   => number of slots wanted
+     * @return number of slots claimed, less than count if the lot filled up
+     */
+    int allocate(int[] indexes, int count);
+
+    void release(int index);
+
+    /**
+     * @param indexes => indexes to be released, in increasing order
+     * @param count   => number of indexes in the array
+     */
+    void release(int[] indexes, int count);
+
+    /**
+     * Recovery only => takes over the slots SlotStore.restore marked occupied
+     * behind the back of the strategy
+     */
+    void restored();
+}
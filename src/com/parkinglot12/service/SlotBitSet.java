@@ -0,0 +1,135 @@
+package com.parkinglot12.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sparse set of slot indexes kept in slot order.
+ *
+ * Bits live in pages of 4096 which are only allocated once a bit of them is
+ * set, and a summary word per 64 pages records which pages exist. So a set
+ * holding few slots of a huge lot stays small, and walking it with nextSetBit
+ * skips pages that were never used without looking at them.
+ *
+ * Safe for many threads: bits are flipped with atomic word operations and a
+ * page, once published, is kept for the life of the set.
+ */
+class SlotBitSet {
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle PAGES = MethodHandles.arrayElementVarHandle(long[][].class);
+    private static final int WORD_SHIFT = 6;
+    private static final int PAGE_SHIFT = 12;
+    private static final int WORDS_PER_PAGE = 1 << (PAGE_SHIFT - WORD_SHIFT);
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+    private final int capacity;
+    private final long[][] pages;
+    // one bit per page => page allocated
+    private final long[] pagesInUse;
+    private final AtomicInteger cardinality = new AtomicInteger();
+
+    SlotBitSet(int capacity) {
+        this.capacity = capacity;
+        int pageCount = (capacity + PAGE_MASK) >>> PAGE_SHIFT;
+        pages = new long[pageCount][];
+        pagesInUse = new long[(pageCount + 63) >>> 6];
+    }
+
+    void set(int index) {
+        int page = index >>> PAGE_SHIFT;
+        long[] words = page(page);
+        if (words == null) {
+            long[] created = new long[WORDS_PER_PAGE];
+            words = PAGES.compareAndSet(pages, page, null, created) ? created : page(page);
+            // the thread losing the race may get here first, so both mark the page
+            WORDS.getAndBitwiseOr(pagesInUse, page >>> 6, 1L << page);
+        }
+        long bit = 1L << index;
+        long previous = (long) WORDS.getAndBitwiseOr(words, (index & PAGE_MASK) >>> WORD_SHIFT, bit);
+        if ((previous & bit) == 0) {
+            cardinality.incrementAndGet();
+        }
+    }
+
+    void clear(int index) {
+        long[] words = page(index >>> PAGE_SHIFT);
+        if (words == null) {
+            return;
+        }
+        long bit = 1L << index;
+        long previous = (long) WORDS.getAndBitwiseAnd(words, (index & PAGE_MASK) >>> WORD_SHIFT, ~bit);
+        if ((previous & bit) != 0) {
+            cardinality.decrementAndGet();
+        }
+    }
+
+    boolean get(int index) {
+        long[] words = page(index >>> PAGE_SHIFT);
+        return words != null && (word(words, (index & PAGE_MASK) >>> WORD_SHIFT) & (1L << index)) != 0;
+    }
+
+    /**
+     * @param fromIndex => index to start looking from, inclusive
+     * @return the first index >= fromIndex in the set, -1 if there is none
+     */
+    int nextSetBit(int fromIndex) {
+        if (fromIndex < 0) {
+            fromIndex = 0;
+        }
+        if (fromIndex >= capacity) {
+            return -1;
+        }
+        int page = fromIndex >>> PAGE_SHIFT;
+        int word = (fromIndex & PAGE_MASK) >>> WORD_SHIFT;
+        long mask = -1L << fromIndex;
+        while (true) {
+            long[] words = page(page);
+            if (words != null) {
+                for (; word < WORDS_PER_PAGE; word++, mask = -1L) {
+                    long bits = word(words, word) & mask;
+                    if (bits != 0) {
+                        return (page << PAGE_SHIFT) + (word << WORD_SHIFT) + Long.numberOfTrailingZeros(bits);
+                    }
+                }
+            }
+            page = nextPageInUse(page + 1);
+            if (page == -1) {
+                return -1;
+            }
+            word = 0;
+            mask = -1L;
+        }
+    }
+
+    private int nextPageInUse(int fromPage) {
+        int summaryWord = fromPage >>> 6;
+        if (summaryWord >= pagesInUse.length) {
+            return -1;
+        }
+        long bits = word(pagesInUse, summaryWord) & (-1L << fromPage);
+        while (bits == 0) {
+            if (++summaryWord == pagesInUse.length) {
+                return -1;
+            }
+            bits = word(pagesInUse, summaryWord);
+        }
+        return (summaryWord << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    private long[] page(int page) {
+        return (long[]) PAGES.getAcquire(pages, page);
+    }
+
+    private static long word(long[] words, int word) {
+        return (long) WORDS.getVolatile(words, word);
+    }
+
+    int cardinality() {
+        return cardinality.get();
+    }
+
+    boolean isEmpty() {
+        return cardinality.get() == 0;
+    }
+}
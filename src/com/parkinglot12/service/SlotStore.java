@@ -0,0 +1,1112 @@
+package com.parkinglot12.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+import com.parkinglot12.domain.LeaveReceipt;
+import com.parkinglot12.domain.ResultCode;
+import com.parkinglot12.domain.StatusSink;
+import com.parkinglot12.domain.Vehicle;
+import com.parkinglot12.domain.VehicleSize;
+
+/**
+ * Storage engine for the slots of one parking lot, laid out as primitive arrays
+ * indexed by slot number instead of an object per slot and per ticket.
+ *
+ * Per slot it holds an occupancy bit (the FreeSlotIndex), the driver age as a
+ * short (0 => empty), the VehicleSize as a byte, the entry time as a long and
+ * the registration as the two long key of the RegistrationCodec, so finding
+ * one compares two words per probe. Ages, entry times and keys live in pages
+ * of 4096 slots which are allocated when a slot of the page is first used; a missing page means its slots are
+ * empty, so creating even a huge lot costs next to nothing. A page of sizes is
+ * only made once a vehicle other than a car parks in it, a missing one means
+ * cars. Registration lookups go through an open addressing table of
+ * slot numbers, and age lookups through one SlotBitSet per age.
+ *
+ * ParkingLot allocates slots through it and TicketingSystem stores the parked
+ * vehicles in it.
+ *
+ * Safe for many gate threads without a global lock. The registration table is
+ * split in segments by hash and the slot rows are guarded by lock stripes by
+ * slot number; parking or removing a vehicle takes its segment and then its
+ * stripe, always in that order. Slots themselves are claimed lock free from the
+ * FreeSlotIndex.
+ *
+ * Reports can read a snapshot of the slots instead of the live rows. The rows
+ * changed while a snapshot is open are kept as they were in SlotVersions, and
+ * every change of a row bumps a sequence number of its stripe before and after
+ * it, so a snapshot reads the rows nobody changed without taking any lock =>
+ * it rereads a row whose stripe changed while it was reading.
+ */
+class SlotStore {
+    private static final VarHandle AGE_PAGES = MethodHandles.arrayElementVarHandle(short[][].class);
+    private static final VarHandle KEY_PAGES = MethodHandles.arrayElementVarHandle(long[][].class);
+    private static final VarHandle SIZE_PAGES = MethodHandles.arrayElementVarHandle(byte[][].class);
+    private static final VarHandle TIME_PAGES = MethodHandles.arrayElementVarHandle(long[][].class);
+    private static final VarHandle STRIPE_SEQUENCES = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VehicleSize[] VEHICLE_SIZES = VehicleSize.values();
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    private static final int SEGMENT_SHIFT = 6;
+    private static final int STRIPES = 1024;
+    // a stripe sequence number per 64 byte line, so gates on neighbouring stripes do not share one
+    private static final int SEQUENCE_SHIFT = 4;
+
+    private final int capacity;
+    private final FreeSlotIndex occupancy;
+    // page => driver ages of its slots, null until a slot of it is used
+    private final short[][] driverAges;
+    // page => registration keys of its slots, high then low word, null until a slot of it is used
+    private final long[][] registrations;
+    // page => VehicleSize ordinals of its slots, null while only cars parked there
+    private final byte[][] vehicleSizes;
+    // page => entry times of its slots in milliseconds, null until a slot of it is used
+    private final long[][] parkedTimes;
+    private final RegistrationCodec registrationCodec;
+    // registration hash => segment of the registration table
+    private final RegistrationSegment[] segments;
+    // slot number => lock guarding the row of the slot
+    private final Object[] stripes;
+    // stripe << SEQUENCE_SHIFT => number of row changes begun and ended under the stripe, odd during one
+    private final int[] stripeSequences;
+    // rows as the open snapshots see them
+    private final SlotVersions versions;
+
+    // driverAge => slots of that age
+    private volatile SlotBitSet[] slotsByDriverAge;
+    // ages whose slots exist in slotsByDriverAge, set once and never cleared
+    private final SlotBitSet driverAgesInUse;
+    // number of vehicles by driver age, for counts over a range of ages
+    private final DriverAgeTree driverAgeTree;
+    // told about every park and leave, replaced as a whole when one is added
+    private volatile TicketEventListener[] eventListeners;
+
+    SlotStore(int capacity) {
+        this.capacity = capacity;
+        occupancy = new FreeSlotIndex(capacity);
+        int pageCount = (capacity + PAGE_MASK) >>> PAGE_SHIFT;
+        driverAges = new short[pageCount][];
+        registrations = new long[pageCount][];
+        vehicleSizes = new byte[pageCount][];
+        parkedTimes = new long[pageCount][];
+        registrationCodec = new RegistrationCodec();
+        segments = new RegistrationSegment[1 << SEGMENT_SHIFT];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new RegistrationSegment();
+        }
+        stripes = new Object[STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+        stripeSequences = new int[STRIPES << SEQUENCE_SHIFT];
+        versions = new SlotVersions(capacity);
+        slotsByDriverAge = new SlotBitSet[128];
+        driverAgeTree = new DriverAgeTree();
+        driverAgesInUse = new SlotBitSet(Short.MAX_VALUE + 1);
+        eventListeners = new TicketEventListener[0];
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    FreeSlotIndex getOccupancy() {
+        return occupancy;
+    }
+
+    /**
+     * @param eventListener => told about every park and leave from now on
+     */
+    synchronized void addEventListener(TicketEventListener eventListener) {
+        TicketEventListener[] listeners = Arrays.copyOf(eventListeners, eventListeners.length + 1);
+        listeners[listeners.length - 1] = eventListener;
+        eventListeners = listeners;
+    }
+
+    /**
+     * Tells a listener about every vehicle parked right now, with its entry
+     * time. Each slot is locked while its vehicle is handed over, so a park or
+     * leave of the slot reaches the listener before or after it, never in
+     * between.
+     */
+    void announceParked(TicketEventListener eventListener) {
+        for (int slotNumber = nextOccupiedSlotNumber(1); slotNumber != -1;
+                slotNumber = nextOccupiedSlotNumber(slotNumber + 1)) {
+            int index = slotNumber - 1;
+            synchronized (stripeFor(slotNumber)) {
+                int driverAge = driverAge(index);
+                if (driverAge != 0) {
+                    eventListener.parked(slotNumber, readRegistration(index), driverAge, vehicleSize(index),
+                            parkedAt(index));
+                }
+            }
+        }
+    }
+
+    /**
+     * Parks a vehicle => claims a slot for it and stores it there
+     *
+     * @param registrationNumber => registration number of the vehicle
+     * @param driverAge          => age of the driver, 1 to 32767
+     * @param vehicleSize        => size of the vehicle
+     * @param parkedAt           => entry time in milliseconds since the epoch
+     * @param slotAllocator      => claims a free slot the vehicle fits and
+     *                           returns its number, or ResultCode.LOT_FULL
+     * @return slot number the vehicle was given, or the code of
+     *         ResultCode.LOT_FULL / DUPLICATE_REGISTRATION
+     */
+    int put(String registrationNumber, int driverAge, VehicleSize vehicleSize, long parkedAt,
+            IntSupplier slotAllocator) {
+        if (driverAge < 1 || driverAge > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Driver Age is out of range");
+        }
+        int length = registrationNumber.length();
+        int hash = spread(registrationCodec.hash(registrationNumber, 0, length));
+        RegistrationSegment segment = segmentFor(hash);
+        synchronized (segment) {
+            long high = registrationCodec.high(registrationNumber, 0, length);
+            long low = registrationCodec.low(registrationNumber, 0, length);
+            if (segment.find(hash, high, low) != -1) {
+                return ResultCode.DUPLICATE_REGISTRATION.getCode();
+            }
+            int slotNumber = slotAllocator.getAsInt();
+            if (slotNumber < 1) {
+                return slotNumber;
+            }
+            int index = slotNumber - 1;
+            if (high == RegistrationCodec.INTERNED) {
+                low = registrationCodec.intern(registrationNumber);
+            }
+            synchronized (stripeFor(slotNumber)) {
+                beginChange(index);
+                try {
+                    writeRegistration(index, high, low);
+                    setDriverAge(index, driverAge);
+                    setVehicleSize(index, vehicleSize);
+                    setParkedAt(index, parkedAt);
+                    slotsForDriverAge(driverAge).set(index);
+                    driverAgeTree.add(driverAge, 1);
+                } finally {
+                    endChange(index);
+                }
+                for (TicketEventListener eventListener : eventListeners) {
+                    eventListener.parked(slotNumber, registrationNumber, driverAge, vehicleSize, parkedAt);
+                }
+            }
+            segment.insert(hash, slotNumber);
+            return slotNumber;
+        }
+    }
+
+    /**
+     * Removes the vehicle parked at a slot and frees the slot
+     *
+     * @param slotNumber   => slot the vehicle is leaving
+     * @param leftAt       => exit time in milliseconds since the epoch
+     * @param receipt      => filled in with the vehicle which left
+     * @param slotReleaser => marks the slot free again
+     * @return false if the slot holds no vehicle
+     */
+    boolean remove(int slotNumber, long leftAt, LeaveReceipt receipt, IntConsumer slotReleaser) {
+        if (!isValidSlotNumber(slotNumber)) {
+            return false;
+        }
+        int index = slotNumber - 1;
+        Object stripe = stripeFor(slotNumber);
+        while (true) {
+            int hash;
+            synchronized (stripe) {
+                if (driverAge(index) == 0) {
+                    return false;
+                }
+                hash = spread(registrationHash(index));
+            }
+            RegistrationSegment segment = segmentFor(hash);
+            synchronized (segment) {
+                synchronized (stripe) {
+                    // the vehicle may have left and another one parked meanwhile
+                    int driverAge = driverAge(index);
+                    if (driverAge == 0) {
+                        return false;
+                    }
+                    if (spread(registrationHash(index)) != hash) {
+                        continue;
+                    }
+                    segment.delete(hash, slotNumber);
+                    String registrationNumber = readRegistration(index);
+                    VehicleSize vehicleSize = vehicleSize(index);
+                    long parkedAt = parkedAt(index);
+                    receipt.set(slotNumber, registrationNumber, driverAge, vehicleSize, parkedAt, leftAt);
+                    beginChange(index);
+                    try {
+                        slotsByDriverAge[driverAge].clear(index);
+                        driverAgeTree.add(driverAge, -1);
+                        clearSlot(index);
+                    } finally {
+                        endChange(index);
+                    }
+                    slotReleaser.accept(slotNumber);
+                    for (TicketEventListener eventListener : eventListeners) {
+                        eventListener.left(slotNumber, registrationNumber, driverAge, vehicleSize, parkedAt,
+                                leftAt);
+                    }
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Claims free slots in bulk for putAll
+     */
+    interface SlotsAllocator {
+        /**
+         * @param slotNumbers => receives the claimed slot numbers
+         * @param count       => number of slots wanted
+         * @return number of slots claimed
+         */
+        int allocate(int[] slotNumbers, int count);
+    }
+
+    /**
+     * Frees slots in bulk for putAll and removeAll
+     */
+    interface SlotsReleaser {
+        void release(int[] slotNumbers, int count);
+    }
+
+    /**
+     * Parks several cars at once, as if put was called for each in order.
+     *
+     * The segments of every registration in the batch are locked together, in
+     * increasing order so batches never deadlock with each other, and the slots
+     * are claimed in one pass up front. A duplicate within the batch is caught
+     * like any other since the registrations are indexed as they are stored.
+     * Slots left over by duplicates or a full lot are freed before returning.
+     *
+     * @param registrationNumbers => registration numbers of the vehicles
+     * @param driverAges          => ages of their drivers, 1 to 32767
+     * @param count               => number of vehicles
+     * @param parkedAt            => entry time of all of them
+     * @param results             => per vehicle, the slot number it was given or
+     *                            the code of ResultCode.LOT_FULL /
+     *                            DUPLICATE_REGISTRATION
+     * @return number of vehicles parked
+     */
+    int putAll(String[] registrationNumbers, int[] driverAges, int count, long parkedAt, int[] results,
+            SlotsAllocator slotsAllocator, SlotsReleaser slotsReleaser) {
+        int[] hashes = new int[count];
+        long segmentMask = 0;
+        for (int i = 0; i < count; i++) {
+            if (registrationNumbers[i] == null) {
+                throw new IllegalArgumentException("registrationNumber cannot be null");
+            }
+            if (driverAges[i] < 1 || driverAges[i] > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Driver Age is out of range");
+            }
+            hashes[i] = spread(registrationCodec.hash(registrationNumbers[i], 0, registrationNumbers[i].length()));
+            segmentMask |= 1L << segmentIndex(hashes[i]);
+        }
+        return withSegments(segmentMask, () -> {
+            int[] slotNumbers = new int[count];
+            int claimed = slotsAllocator.allocate(slotNumbers, count);
+            int used = 0;
+            int parked = 0;
+            for (int i = 0; i < count; i++) {
+                String registrationNumber = registrationNumbers[i];
+                RegistrationSegment segment = segmentFor(hashes[i]);
+                long high = registrationCodec.high(registrationNumber, 0, registrationNumber.length());
+                long low = registrationCodec.low(registrationNumber, 0, registrationNumber.length());
+                if (segment.find(hashes[i], high, low) != -1) {
+                    results[i] = ResultCode.DUPLICATE_REGISTRATION.getCode();
+                    continue;
+                }
+                if (used == claimed) {
+                    results[i] = ResultCode.LOT_FULL.getCode();
+                    continue;
+                }
+                int slotNumber = slotNumbers[used++];
+                int index = slotNumber - 1;
+                if (high == RegistrationCodec.INTERNED) {
+                    low = registrationCodec.intern(registrationNumber);
+                }
+                synchronized (stripeFor(slotNumber)) {
+                    beginChange(index);
+                    try {
+                        writeRegistration(index, high, low);
+                        setDriverAge(index, driverAges[i]);
+                        setParkedAt(index, parkedAt);
+                        slotsForDriverAge(driverAges[i]).set(index);
+                        driverAgeTree.add(driverAges[i], 1);
+                    } finally {
+                        endChange(index);
+                    }
+                    for (TicketEventListener eventListener : eventListeners) {
+                        eventListener.parked(slotNumber, registrationNumber, driverAges[i], VehicleSize.CAR,
+                                parkedAt);
+                    }
+                }
+                segment.insert(hashes[i], slotNumber);
+                results[i] = slotNumber;
+                parked++;
+            }
+            if (used < claimed) {
+                System.arraycopy(slotNumbers, used, slotNumbers, 0, claimed - used);
+                slotsReleaser.release(slotNumbers, claimed - used);
+            }
+            return parked;
+        });
+    }
+
+    /**
+     * Removes the vehicles of several slots at once, as if remove was called
+     * for each in order. The segments of the registrations parked there are
+     * locked together and the slots are freed in one pass; a slot whose vehicle
+     * changed to one of another segment before the locks were taken is left to
+     * remove afterwards.
+     *
+     * @param slotNumbers  => slots the vehicles are leaving
+     * @param count        => number of slots
+     * @param leftAt       => exit time of all of them
+     * @param receipts     => per slot, filled in with the vehicle which left
+     * @param results      => per slot, the code of ResultCode.SUCCESS or
+     *                     NO_VEHICLE_AT_SLOT
+     * @return number of vehicles removed
+     */
+    int removeAll(int[] slotNumbers, int count, long leftAt, LeaveReceipt[] receipts, int[] results,
+            SlotsReleaser slotsReleaser) {
+        long segmentMask = 0;
+        for (int i = 0; i < count; i++) {
+            int slotNumber = slotNumbers[i];
+            if (!isValidSlotNumber(slotNumber)) {
+                continue;
+            }
+            synchronized (stripeFor(slotNumber)) {
+                if (driverAge(slotNumber - 1) != 0) {
+                    segmentMask |= 1L << segmentIndex(spread(registrationHash(slotNumber - 1)));
+                }
+            }
+        }
+        long lockedMask = segmentMask;
+        // results of slots to be removed one by one once the locks are given back
+        int retry = Integer.MIN_VALUE;
+        int removed = withSegments(lockedMask, () -> {
+            int[] freed = new int[count];
+            int freedCount = 0;
+            for (int i = 0; i < count; i++) {
+                int slotNumber = slotNumbers[i];
+                results[i] = ResultCode.NO_VEHICLE_AT_SLOT.getCode();
+                if (!isValidSlotNumber(slotNumber)) {
+                    continue;
+                }
+                int index = slotNumber - 1;
+                synchronized (stripeFor(slotNumber)) {
+                    int driverAge = driverAge(index);
+                    if (driverAge == 0) {
+                        continue;
+                    }
+                    int hash = spread(registrationHash(index));
+                    if ((lockedMask & (1L << segmentIndex(hash))) == 0) {
+                        results[i] = retry;
+                        continue;
+                    }
+                    segmentFor(hash).delete(hash, slotNumber);
+                    String registrationNumber = readRegistration(index);
+                    VehicleSize vehicleSize = vehicleSize(index);
+                    long parkedAt = parkedAt(index);
+                    receipts[i].set(slotNumber, registrationNumber, driverAge, vehicleSize, parkedAt, leftAt);
+                    beginChange(index);
+                    try {
+                        slotsByDriverAge[driverAge].clear(index);
+                        driverAgeTree.add(driverAge, -1);
+                        clearSlot(index);
+                    } finally {
+                        endChange(index);
+                    }
+                    for (TicketEventListener eventListener : eventListeners) {
+                        eventListener.left(slotNumber, registrationNumber, driverAge, vehicleSize, parkedAt,
+                                leftAt);
+                    }
+                }
+                freed[freedCount++] = slotNumber;
+                results[i] = ResultCode.SUCCESS.getCode();
+            }
+            if (freedCount > 0) {
+                slotsReleaser.release(freed, freedCount);
+            }
+            return freedCount;
+        });
+        for (int i = 0; i < count; i++) {
+            if (results[i] == retry) {
+                boolean left = remove(slotNumbers[i], leftAt, receipts[i], slotNumber -> slotsReleaser.release(
+                        new int[] { slotNumber }, 1));
+                results[i] = left ? ResultCode.SUCCESS.getCode() : ResultCode.NO_VEHICLE_AT_SLOT.getCode();
+                removed += left ? 1 : 0;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Runs body holding the monitors of the segments in the mask, taken in
+     * increasing segment order
+     */
+    private int withSegments(long segmentMask, IntSupplier body) {
+        if (segmentMask == 0) {
+            return body.getAsInt();
+        }
+        synchronized (segments[Long.numberOfTrailingZeros(segmentMask)]) {
+            return withSegments(segmentMask & (segmentMask - 1), body);
+        }
+    }
+
+    /**
+     * Recovery only => puts a vehicle at a given slot, replacing the one there,
+     * without touching the registration table. Called by a single thread before
+     * the store is shared, followed by rebuildRegistrationTable.
+     */
+    void restore(int slotNumber, String registrationNumber, int driverAge, VehicleSize vehicleSize,
+            long parkedAt) {
+        if (driverAge < 1 || driverAge > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Driver Age is out of range");
+        }
+        int index = slotNumber - 1;
+        restoreEmpty(slotNumber);
+        int length = registrationNumber.length();
+        long high = registrationCodec.high(registrationNumber, 0, length);
+        writeRegistration(index, high, high == RegistrationCodec.INTERNED ? registrationCodec.intern(registrationNumber)
+                : registrationCodec.low(registrationNumber, 0, length));
+        setDriverAge(index, driverAge);
+        setVehicleSize(index, vehicleSize);
+        setParkedAt(index, parkedAt);
+        slotsForDriverAge(driverAge).set(index);
+        driverAgeTree.add(driverAge, 1);
+        occupancy.occupy(index);
+    }
+
+    /**
+     * Recovery only => empties a slot, see restore
+     */
+    void restoreEmpty(int slotNumber) {
+        int index = slotNumber - 1;
+        int driverAge = driverAge(index);
+        if (driverAge == 0) {
+            return;
+        }
+        slotsByDriverAge[driverAge].clear(index);
+        driverAgeTree.add(driverAge, -1);
+        clearSlot(index);
+        occupancy.release(index);
+    }
+
+    /**
+     * Recovery only => indexes the registrations of every occupied slot once
+     * restoring is done
+     */
+    void rebuildRegistrationTable() {
+        for (int slotNumber = nextOccupiedSlotNumber(1); slotNumber != -1;
+                slotNumber = nextOccupiedSlotNumber(slotNumber + 1)) {
+            int hash = spread(registrationHash(slotNumber - 1));
+            segmentFor(hash).insert(hash, slotNumber);
+        }
+    }
+
+    boolean isValidSlotNumber(int slotNumber) {
+        return slotNumber >= 1 && slotNumber <= capacity;
+    }
+
+    boolean hasVehicle(int slotNumber) {
+        return isValidSlotNumber(slotNumber) && getDriverAge(slotNumber) != 0;
+    }
+
+    /**
+     * @return driver age of the vehicle at the slot, 0 if it holds none
+     */
+    int getDriverAge(int slotNumber) {
+        synchronized (stripeFor(slotNumber)) {
+            return driverAge(slotNumber - 1);
+        }
+    }
+
+    /**
+     * @return the vehicle parked at the slot, null if it holds none
+     */
+    Vehicle getVehicle(int slotNumber) {
+        if (!isValidSlotNumber(slotNumber)) {
+            return null;
+        }
+        int index = slotNumber - 1;
+        synchronized (stripeFor(slotNumber)) {
+            int driverAge = driverAge(index);
+            return driverAge == 0 ? null : vehicleSize(index).newVehicle(readRegistration(index), driverAge);
+        }
+    }
+
+    /**
+     * @return entry time of the vehicle at the slot in milliseconds since the
+     *         epoch, -1 if it holds none
+     */
+    long getParkedAt(int slotNumber) {
+        if (!isValidSlotNumber(slotNumber)) {
+            return -1;
+        }
+        int index = slotNumber - 1;
+        synchronized (stripeFor(slotNumber)) {
+            return driverAge(index) == 0 ? -1 : parkedAt(index);
+        }
+    }
+
+    /**
+     * @return registration number of the vehicle at the slot, null if it holds
+     *         none
+     */
+    String getRegistrationNumber(int slotNumber) {
+        int index = slotNumber - 1;
+        synchronized (stripeFor(slotNumber)) {
+            return driverAge(index) == 0 ? null : readRegistration(index);
+        }
+    }
+
+    private String readRegistration(int index) {
+        long[] keys = keyPage(index);
+        int offset = keyOffset(index);
+        return registrationCodec.decode(keys[offset], keys[offset + 1]);
+    }
+
+    /**
+     * @return slot number holding the vehicle with given registration number, -1
+     *         if none
+     */
+    int findSlotNumber(String registrationNumber) {
+        return findSlotNumber(registrationNumber, 0, registrationNumber.length());
+    }
+
+    /**
+     * Same as findSlotNumber(String) for a registration number given as a range
+     * of characters, so the caller does not have to make a String of it
+     *
+     * @param chars => characters holding the registration number
+     * @param start => index of its first character
+     * @param end   => index after its last character
+     */
+    int findSlotNumber(CharSequence chars, int start, int end) {
+        int hash = spread(registrationCodec.hash(chars, start, end));
+        RegistrationSegment segment = segmentFor(hash);
+        synchronized (segment) {
+            long low = registrationCodec.low(chars, start, end);
+            // an unpackable registration which is not interned is not parked
+            return low == RegistrationCodec.NOT_INTERNED ? -1
+                    : segment.find(hash, registrationCodec.high(chars, start, end), low);
+        }
+    }
+
+    /**
+     * @return number of parked vehicles whose driver is fromAge to toAge old,
+     *         both inclusive
+     */
+    int countForDriverAges(int fromAge, int toAge) {
+        return driverAgeTree.count(fromAge, toAge);
+    }
+
+    /**
+     * Slot numbers of the vehicles whose driver is fromAge to toAge old, in
+     * slot order. Only the ages which ever held a vehicle are visited, and
+     * their slots are merged through a binary heap, so the cost follows the
+     * size of the result rather than the lot or the range. The ages are not
+     * taken from the DriverAgeTree => its sums, read while other gates park
+     * and leave, may skip an age which holds vehicles all along.
+     *
+     * @param sink => receives the slot numbers
+     */
+    void forEachSlotNumberForDriverAges(int fromAge, int toAge, IntConsumer sink) {
+        SlotBitSet[] byAge = slotsByDriverAge;
+        // per age holding vehicles, its next slot index packed above the age => min heap
+        long[] heap = new long[16];
+        int size = 0;
+        for (int driverAge = driverAgesInUse.nextSetBit(Math.max(fromAge, 1)); driverAge != -1
+                && driverAge <= toAge; driverAge = driverAgesInUse.nextSetBit(driverAge + 1)) {
+            int index = driverAge < byAge.length && byAge[driverAge] != null ? byAge[driverAge].nextSetBit(0) : -1;
+            if (index != -1) {
+                if (size == heap.length) {
+                    heap = Arrays.copyOf(heap, size << 1);
+                }
+                heap[size] = ((long) index << 16) | driverAge;
+                siftUp(heap, size++);
+            }
+        }
+        while (size > 0) {
+            int index = (int) (heap[0] >>> 16);
+            int driverAge = (int) (heap[0] & 0xFFFF);
+            sink.accept(index + 1);
+            int next = byAge[driverAge].nextSetBit(index + 1);
+            if (next != -1) {
+                heap[0] = ((long) next << 16) | driverAge;
+            } else {
+                heap[0] = heap[--size];
+            }
+            siftDown(heap, size);
+        }
+    }
+
+    /**
+     * Same as forEachSlotNumberForDriverAges, handing over the vehicles. Each
+     * slot is read under its stripe and skipped if its vehicle left, or one of
+     * another age parked, since the index was read.
+     *
+     * @param sink => receives the vehicles
+     */
+    void forEachVehicleForDriverAges(int fromAge, int toAge, StatusSink sink) {
+        forEachSlotNumberForDriverAges(fromAge, toAge, slotNumber -> {
+            int index = slotNumber - 1;
+            int driverAge;
+            String registrationNumber;
+            synchronized (stripeFor(slotNumber)) {
+                driverAge = driverAge(index);
+                if (driverAge == 0 || driverAge < fromAge || driverAge > toAge) {
+                    return;
+                }
+                registrationNumber = readRegistration(index);
+            }
+            sink.accept(slotNumber, registrationNumber, driverAge);
+        });
+    }
+
+    private static void siftUp(long[] heap, int position) {
+        long value = heap[position];
+        while (position > 0 && heap[(position - 1) >>> 1] > value) {
+            heap[position] = heap[(position - 1) >>> 1];
+            position = (position - 1) >>> 1;
+        }
+        heap[position] = value;
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        if (size == 0) {
+            return;
+        }
+        long value = heap[0];
+        int position = 0;
+        for (int child = 1; child < size; child = 2 * position + 1) {
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= value) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = value;
+    }
+
+    /**
+     * Opens a snapshot of the slots as they are now
+     *
+     * @return its epoch, to read it at and close it with
+     */
+    long openSnapshot() {
+        return versions.open();
+    }
+
+    void closeSnapshot(long epoch) {
+        versions.close(epoch);
+    }
+
+    /**
+     * Hands the vehicles parked at a snapshot to a sink, in slot order
+     *
+     * @param fromSlotNumber => slot number to start from
+     * @param pageSize       => most vehicles to hand over
+     * @return slot number of the first vehicle past the page, -1 if there is
+     *         none
+     */
+    int forEachVehicleAt(long epoch, int fromSlotNumber, int pageSize, StatusSink sink) {
+        int count = 0;
+        for (int index = Math.max(fromSlotNumber, 1) - 1; index < capacity;) {
+            // the live slots first => a vehicle gone from them since was touched before it went
+            int live = occupancy.nextOccupied(index);
+            int touched = versions.nextTouched(index);
+            int next = live == -1 || (touched != -1 && touched < live) ? touched : live;
+            if (next == -1) {
+                break;
+            }
+            if (count == pageSize) {
+                if (readAt(next, epoch, 1, Short.MAX_VALUE, null)) {
+                    return next + 1;
+                }
+            } else if (readAt(next, epoch, 1, Short.MAX_VALUE, sink)) {
+                count++;
+            }
+            index = next + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Hands the vehicles parked at a snapshot whose driver is fromAge to toAge
+     * old to a sink, in slot order. The slots of those ages now and the slots
+     * touched since the snapshot are merged, so the cost follows the size of
+     * the result plus the changes.
+     */
+    void forEachVehicleForDriverAgesAt(long epoch, int fromAge, int toAge, StatusSink sink) {
+        forEachForDriverAgesAt(epoch, fromAge, toAge, sink, null);
+    }
+
+    /**
+     * Same as forEachVehicleForDriverAgesAt, handing over the slot numbers only
+     * => no registration is decoded
+     */
+    void forEachSlotNumberForDriverAgesAt(long epoch, int fromAge, int toAge, IntConsumer sink) {
+        forEachForDriverAgesAt(epoch, fromAge, toAge, null, sink);
+    }
+
+    private void forEachForDriverAgesAt(long epoch, int fromAge, int toAge, StatusSink sink,
+            IntConsumer slotSink) {
+        // slot index the touched slots are not read up to yet
+        int[] touchedFrom = new int[1];
+        forEachSlotNumberForDriverAges(fromAge, toAge, slotNumber -> {
+            int index = slotNumber - 1;
+            // a slot met again as its age changed meanwhile was read already
+            if (index < touchedFrom[0]) {
+                return;
+            }
+            readTouchedAt(epoch, touchedFrom[0], index, fromAge, toAge, sink, slotSink);
+            if (readAt(index, epoch, fromAge, toAge, sink) && slotSink != null) {
+                slotSink.accept(slotNumber);
+            }
+            touchedFrom[0] = index + 1;
+        });
+        readTouchedAt(epoch, touchedFrom[0], capacity, fromAge, toAge, sink, slotSink);
+    }
+
+    private void readTouchedAt(long epoch, int fromIndex, int toIndex, int fromAge, int toAge, StatusSink sink,
+            IntConsumer slotSink) {
+        for (int index = versions.nextTouched(fromIndex); index != -1 && index < toIndex;
+                index = versions.nextTouched(index + 1)) {
+            if (readAt(index, epoch, fromAge, toAge, sink) && slotSink != null) {
+                slotSink.accept(index + 1);
+            }
+        }
+    }
+
+    /**
+     * Reads a slot as a snapshot sees it => its saved version if it changed
+     * since, else the live row, read without locking and read again if its
+     * stripe changed meanwhile
+     *
+     * @param sink => receives the vehicle if its driver is fromAge to toAge
+     *             old, null to only check that
+     * @return true if there is such a vehicle
+     */
+    private boolean readAt(int index, long epoch, int fromAge, int toAge, StatusSink sink) {
+        int sequence = (index + 1) & (STRIPES - 1);
+        while (true) {
+            SlotVersions.Version version = versions.versionAt(index, epoch);
+            if (version != null) {
+                if (version.driverAge < fromAge || version.driverAge > toAge) {
+                    return false;
+                }
+                if (sink != null) {
+                    sink.accept(index + 1, version.high == RegistrationCodec.INTERNED ? version.interned
+                            : registrationCodec.decode(version.high, version.low), version.driverAge);
+                }
+                return true;
+            }
+            int before = (int) STRIPE_SEQUENCES.getAcquire(stripeSequences, sequence << SEQUENCE_SHIFT);
+            if ((before & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            int driverAge = driverAge(index);
+            long high = 0;
+            long low = 0;
+            long[] keys = driverAge == 0 ? null : keyPage(index);
+            if (keys != null) {
+                high = keys[keyOffset(index)];
+                low = keys[keyOffset(index) + 1];
+            }
+            VarHandle.acquireFence();
+            if ((int) STRIPE_SEQUENCES.getAcquire(stripeSequences, sequence << SEQUENCE_SHIFT) != before
+                    || versions.versionAt(index, epoch) != null) {
+                // changed while read, or since the snapshot => read it again
+                continue;
+            }
+            if (driverAge < fromAge || driverAge > toAge) {
+                return false;
+            }
+            if (sink != null) {
+                String registrationNumber = registrationCodec.decode(high, low);
+                if (registrationNumber == null) {
+                    // an interned registration whose vehicle left since, its version holds it
+                    continue;
+                }
+                sink.accept(index + 1, registrationNumber, driverAge);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @param fromSlotNumber => slot number to start looking from, inclusive
+     * @return first occupied slot number >= fromSlotNumber, -1 if none
+     */
+    int nextOccupiedSlotNumber(int fromSlotNumber) {
+        int index = occupancy.nextOccupied(fromSlotNumber - 1);
+        return index == -1 ? -1 : index + 1;
+    }
+
+    private SlotBitSet slotsForDriverAge(int driverAge) {
+        SlotBitSet[] byAge = slotsByDriverAge;
+        SlotBitSet slots = driverAge < byAge.length ? byAge[driverAge] : null;
+        if (slots != null) {
+            return slots;
+        }
+        synchronized (this) {
+            byAge = slotsByDriverAge;
+            if (driverAge >= byAge.length) {
+                SlotBitSet[] grown = new SlotBitSet[Math.max(driverAge + 1, byAge.length << 1)];
+                System.arraycopy(byAge, 0, grown, 0, byAge.length);
+                byAge = grown;
+            } else if (byAge[driverAge] != null) {
+                return byAge[driverAge];
+            } else {
+                byAge = byAge.clone();
+            }
+            slots = new SlotBitSet(capacity);
+            byAge[driverAge] = slots;
+            // publish a new array so readers never see a half filled one
+            slotsByDriverAge = byAge;
+            // after the array, so an age found in use has its slots there
+            driverAgesInUse.set(driverAge);
+            return slots;
+        }
+    }
+
+    /**
+     * Called under the stripe of a slot before its row changes => makes the
+     * stripe sequence odd and saves the row for the open snapshots
+     */
+    private void beginChange(int index) {
+        STRIPE_SEQUENCES.getAndAdd(stripeSequences, ((index + 1) & (STRIPES - 1)) << SEQUENCE_SHIFT, 1);
+        long saveEpoch = versions.saveEpoch(index);
+        if (saveEpoch == -1) {
+            return;
+        }
+        int driverAge = driverAge(index);
+        if (driverAge == 0) {
+            versions.save(index, saveEpoch, 0, VehicleSize.CAR, 0, 0, null, 0);
+            return;
+        }
+        long[] keys = keyPage(index);
+        long high = keys[keyOffset(index)];
+        long low = keys[keyOffset(index) + 1];
+        versions.save(index, saveEpoch, driverAge, vehicleSize(index), high, low,
+                high == RegistrationCodec.INTERNED ? registrationCodec.decode(high, low) : null, parkedAt(index));
+    }
+
+    /**
+     * Called once the row changed => makes the stripe sequence even again
+     */
+    private void endChange(int index) {
+        STRIPE_SEQUENCES.getAndAdd(stripeSequences, ((index + 1) & (STRIPES - 1)) << SEQUENCE_SHIFT, 1);
+    }
+
+    private RegistrationSegment segmentFor(int spreadHash) {
+        return segments[segmentIndex(spreadHash)];
+    }
+
+    private static int segmentIndex(int spreadHash) {
+        return spreadHash >>> (32 - SEGMENT_SHIFT);
+    }
+
+    private Object stripeFor(int slotNumber) {
+        return stripes[slotNumber & (STRIPES - 1)];
+    }
+
+    /**
+     * @return driver age at the slot index, 0 if it is empty
+     */
+    private int driverAge(int index) {
+        short[] ages = (short[]) AGE_PAGES.getVolatile(driverAges, index >>> PAGE_SHIFT);
+        return ages == null ? 0 : ages[index & PAGE_MASK];
+    }
+
+    private void setDriverAge(int index, int driverAge) {
+        int page = index >>> PAGE_SHIFT;
+        short[] ages = (short[]) AGE_PAGES.getVolatile(driverAges, page);
+        if (ages == null) {
+            short[] created = new short[1 << PAGE_SHIFT];
+            ages = AGE_PAGES.compareAndSet(driverAges, page, null, created) ? created
+                    : (short[]) AGE_PAGES.getVolatile(driverAges, page);
+        }
+        ages[index & PAGE_MASK] = (short) driverAge;
+    }
+
+    private VehicleSize vehicleSize(int index) {
+        byte[] sizes = (byte[]) SIZE_PAGES.getVolatile(vehicleSizes, index >>> PAGE_SHIFT);
+        return sizes == null ? VehicleSize.CAR : VEHICLE_SIZES[sizes[index & PAGE_MASK]];
+    }
+
+    private void setVehicleSize(int index, VehicleSize vehicleSize) {
+        int page = index >>> PAGE_SHIFT;
+        byte[] sizes = (byte[]) SIZE_PAGES.getVolatile(vehicleSizes, page);
+        if (sizes == null) {
+            if (vehicleSize == VehicleSize.CAR) {
+                return;
+            }
+            byte[] created = new byte[1 << PAGE_SHIFT];
+            Arrays.fill(created, (byte) VehicleSize.CAR.ordinal());
+            sizes = SIZE_PAGES.compareAndSet(vehicleSizes, page, null, created) ? created
+                    : (byte[]) SIZE_PAGES.getVolatile(vehicleSizes, page);
+        }
+        sizes[index & PAGE_MASK] = (byte) vehicleSize.ordinal();
+    }
+
+    private long parkedAt(int index) {
+        long[] times = (long[]) TIME_PAGES.getVolatile(parkedTimes, index >>> PAGE_SHIFT);
+        return times == null ? 0 : times[index & PAGE_MASK];
+    }
+
+    private void setParkedAt(int index, long parkedAt) {
+        int page = index >>> PAGE_SHIFT;
+        long[] times = (long[]) TIME_PAGES.getVolatile(parkedTimes, page);
+        if (times == null) {
+            long[] created = new long[1 << PAGE_SHIFT];
+            times = TIME_PAGES.compareAndSet(parkedTimes, page, null, created) ? created
+                    : (long[]) TIME_PAGES.getVolatile(parkedTimes, page);
+        }
+        times[index & PAGE_MASK] = parkedAt;
+    }
+
+    /**
+     * @return page holding the registration key of the slot index, null if no
+     *         slot of it was used yet
+     */
+    private long[] keyPage(int index) {
+        return (long[]) KEY_PAGES.getVolatile(registrations, index >>> PAGE_SHIFT);
+    }
+
+    /**
+     * @return offset of the high word of the key of the slot index in its page
+     */
+    private static int keyOffset(int index) {
+        return (index & PAGE_MASK) << 1;
+    }
+
+    /**
+     * Empties the row of an occupied slot index, its pages are kept
+     */
+    private void clearSlot(int index) {
+        setDriverAge(index, 0);
+        setVehicleSize(index, VehicleSize.CAR);
+        long[] keys = keyPage(index);
+        int offset = keyOffset(index);
+        if (keys[offset] == RegistrationCodec.INTERNED) {
+            registrationCodec.release(keys[offset + 1]);
+        }
+    }
+
+    private void writeRegistration(int index, long high, long low) {
+        long[] keys = keyPage(index);
+        if (keys == null) {
+            int page = index >>> PAGE_SHIFT;
+            long[] created = new long[2 << PAGE_SHIFT];
+            keys = KEY_PAGES.compareAndSet(registrations, page, null, created) ? created : keyPage(index);
+        }
+        int offset = keyOffset(index);
+        keys[offset] = high;
+        keys[offset + 1] = low;
+    }
+
+    private boolean registrationEquals(int index, long high, long low) {
+        long[] keys = keyPage(index);
+        int offset = keyOffset(index);
+        return keys[offset] == high && keys[offset + 1] == low;
+    }
+
+    /**
+     * Same value as RegistrationCodec.hash of the registration stored at the
+     * slot
+     */
+    private int registrationHash(int index) {
+        long[] keys = keyPage(index);
+        int offset = keyOffset(index);
+        return registrationCodec.hash(keys[offset], keys[offset + 1]);
+    }
+
+    private static int spread(int hash) {
+        return (hash ^ (hash >>> 16)) * 0x9E3779B9;
+    }
+
+    /**
+     * One segment of the registration table => open addressing, linear probing
+     * over slot numbers, 0 = empty bucket. Guarded by its own monitor.
+     */
+    private class RegistrationSegment {
+        private int[] table = new int[16];
+        private int count;
+
+        int find(int hash, long high, long low) {
+            int mask = table.length - 1;
+            for (int bucket = hash & mask;; bucket = (bucket + 1) & mask) {
+                int slotNumber = table[bucket];
+                if (slotNumber == 0) {
+                    return -1;
+                }
+                if (registrationEquals(slotNumber - 1, high, low)) {
+                    return slotNumber;
+                }
+            }
+        }
+
+        void insert(int hash, int slotNumber) {
+            if ((count + 1) << 1 > table.length) {
+                resize(table.length << 1);
+            }
+            int mask = table.length - 1;
+            int bucket = hash & mask;
+            while (table[bucket] != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+            table[bucket] = slotNumber;
+            count++;
+        }
+
+        void delete(int hash, int slotNumber) {
+            int mask = table.length - 1;
+            int bucket = hash & mask;
+            while (table[bucket] != slotNumber) {
+                bucket = (bucket + 1) & mask;
+            }
+            // backward shift => move later entries of the probe run into the hole
+            int hole = bucket;
+            for (int next = (hole + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+                int home = spread(registrationHash(table[next] - 1)) & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    table[hole] = table[next];
+                    hole = next;
+                }
+            }
+            table[hole] = 0;
+            count--;
+        }
+
+        private void resize(int size) {
+            int[] old = table;
+            table = new int[size];
+            int mask = size - 1;
+            for (int slotNumber : old) {
+                if (slotNumber != 0) {
+                    int bucket = spread(registrationHash(slotNumber - 1)) & mask;
+                    while (table[bucket] != 0) {
+                        bucket = (bucket + 1) & mask;
+                    }
+                    table[bucket] = slotNumber;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.parkinglot12.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.TreeMap;
+
+import com.parkinglot12.domain.VehicleSize;
+
+/**
+ * Old rows of the slots of one SlotStore, kept for the snapshots open on it =>
+ * copy on write per slot.
+ *
+ * Opening a snapshot starts a new epoch. The first change of a slot within an
+ * epoch first saves the row as it was, tagged with that epoch, at the head of
+ * the slot's chain of versions, and marks the slot as touched. A snapshot of
+ * epoch e sees a slot as its oldest version tagged e or later if it has one,
+ * and as the live row otherwise. So opening a snapshot costs O(1), the gates
+ * save one row per slot they change while snapshots are open and nothing at
+ * all otherwise, and a reader only has to look at the live slots plus the
+ * touched ones.
+ *
+ * A chain is pushed to under the stripe of its slot and read without locking.
+ * Versions older than the oldest open snapshot are dropped as chains are pushed
+ * to, and every chain once the last snapshot closes.
+ */
+class SlotVersions {
+    private static final VarHandle CHAIN_PAGES = MethodHandles.arrayElementVarHandle(Version[][].class);
+    private static final VarHandle HEADS = MethodHandles.arrayElementVarHandle(Version[].class);
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    // oldest open epoch while no snapshot is open
+    private static final long NONE_OPEN = Long.MAX_VALUE;
+
+    /**
+     * A slot row as it was before the first change of an epoch
+     */
+    static final class Version {
+        final long epoch;
+        // 0 => the slot was empty
+        final int driverAge;
+        final VehicleSize vehicleSize;
+        // registration key, and the registration itself if it was interned
+        final long high;
+        final long low;
+        final String interned;
+        final long parkedAt;
+        // version of the epoch before, dropped once no snapshot can read it
+        Version older;
+
+        Version(long epoch, int driverAge, VehicleSize vehicleSize, long high, long low, String interned,
+                long parkedAt, Version older) {
+            this.epoch = epoch;
+            this.driverAge = driverAge;
+            this.vehicleSize = vehicleSize;
+            this.high = high;
+            this.low = low;
+            this.interned = interned;
+            this.parkedAt = parkedAt;
+            this.older = older;
+        }
+    }
+
+    // page => per slot index, its newest version, null if it has none
+    private final Version[][] chains;
+    // slot indexes which may have a chain
+    private final SlotBitSet touched;
+    // open epoch => number of snapshots open at it, guarded by this
+    private final TreeMap<Long, Integer> openEpochs;
+    // epoch of the newest snapshot, the one changes are saved for
+    private volatile long epoch;
+    private volatile long oldestOpen;
+
+    SlotVersions(int capacity) {
+        chains = new Version[(capacity + PAGE_MASK) >>> PAGE_SHIFT][];
+        touched = new SlotBitSet(capacity);
+        openEpochs = new TreeMap<Long, Integer>();
+        oldestOpen = NONE_OPEN;
+    }
+
+    /**
+     * @return epoch of the snapshot opened
+     */
+    synchronized long open() {
+        // the epoch first, so a gate seeing the snapshot open saves for it
+        long opened = epoch + 1;
+        epoch = opened;
+        openEpochs.merge(opened, 1, Integer::sum);
+        oldestOpen = openEpochs.firstKey();
+        return opened;
+    }
+
+    /**
+     * Closes a snapshot, the last one to close drops every version
+     */
+    synchronized void close(long closed) {
+        if (openEpochs.merge(closed, -1, Integer::sum) == 0) {
+            openEpochs.remove(closed);
+        }
+        if (!openEpochs.isEmpty()) {
+            oldestOpen = openEpochs.firstKey();
+            return;
+        }
+        oldestOpen = NONE_OPEN;
+        // a gate still saving for a closed snapshot may push again, its version is never read
+        for (int index = touched.nextSetBit(0); index != -1; index = touched.nextSetBit(index + 1)) {
+            touched.clear(index);
+            HEADS.setRelease(chains[index >>> PAGE_SHIFT], index & PAGE_MASK, null);
+        }
+    }
+
+    /**
+     * Called under the stripe of the slot before its row changes
+     *
+     * @return epoch to save the row for, -1 if it need not be saved
+     */
+    long saveEpoch(int index) {
+        if (oldestOpen == NONE_OPEN) {
+            return -1;
+        }
+        long current = epoch;
+        Version head = head(index);
+        return head != null && head.epoch >= current ? -1 : current;
+    }
+
+    /**
+     * Saves the row of a slot for saveEpoch, under the stripe of the slot
+     */
+    void save(int index, long saveEpoch, int driverAge, VehicleSize vehicleSize, long high, long low,
+            String interned, long parkedAt) {
+        int page = index >>> PAGE_SHIFT;
+        Version[] heads = (Version[]) CHAIN_PAGES.getAcquire(chains, page);
+        if (heads == null) {
+            Version[] created = new Version[1 << PAGE_SHIFT];
+            heads = CHAIN_PAGES.compareAndSet(chains, page, null, created) ? created
+                    : (Version[]) CHAIN_PAGES.getAcquire(chains, page);
+        }
+        Version head = (Version) HEADS.getAcquire(heads, index & PAGE_MASK);
+        // no open snapshot reads a version older than the oldest of them
+        long oldest = oldestOpen;
+        for (Version version = head; version != null; version = version.older) {
+            if (version.older != null && version.older.epoch < oldest) {
+                version.older = null;
+            }
+        }
+        if (head != null && head.epoch < oldest) {
+            head = null;
+        }
+        touched.set(index);
+        HEADS.setRelease(heads, index & PAGE_MASK,
+                new Version(saveEpoch, driverAge, vehicleSize, high, low, interned, parkedAt, head));
+    }
+
+    /**
+     * @return the row of the slot as the snapshot of an epoch sees it, null if
+     *         that is the live row
+     */
+    Version versionAt(int index, long snapshotEpoch) {
+        Version found = null;
+        for (Version version = head(index); version != null && version.epoch >= snapshotEpoch;
+                version = version.older) {
+            found = version;
+        }
+        return found;
+    }
+
+    /**
+     * @return first slot index >= fromIndex which may have versions, -1 if none
+     */
+    int nextTouched(int fromIndex) {
+        return touched.nextSetBit(fromIndex);
+    }
+
+    private Version head(int index) {
+        Version[] heads = (Version[]) CHAIN_PAGES.getAcquire(chains, index >>> PAGE_SHIFT);
+        return heads == null ? null : (Version) HEADS.getAcquire(heads, index & PAGE_MASK);
+    }
+}
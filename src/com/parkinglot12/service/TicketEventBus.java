@@ -0,0 +1,127 @@
+package com.parkinglot12.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.parkinglot12.domain.BackpressurePolicy;
+import com.parkinglot12.domain.TicketEvent;
+import com.parkinglot12.domain.TicketEventHandler;
+import com.parkinglot12.domain.VehicleSize;
+
+/**
+ * In process feed of the park and leave events of one parking lot.
+ *
+ * Events go to a ring buffer preallocated as one primitive array per field,
+ * so publishing allocates nothing. A gate claims the next sequence and writes
+ * its entry under a seqlock: the entry version is odd while it is written and
+ * 2 * (sequence + 1) once it is complete. Gates never wait for subscribers; a
+ * subscriber which is lapped finds a newer version in the entry and follows
+ * its BackpressurePolicy.
+ *
+ * Every subscriber keeps its own sequence and reads on its own thread, backing
+ * off from spinning to parking while the feed is idle.
+ */
+class TicketEventBus implements TicketEventListener {
+    private static final VarHandle VERSIONS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int CAPACITY = 1 << 14;
+    private static final int MASK = CAPACITY - 1;
+    private static final byte PARKED = 1;
+    private static final byte LEFT = 2;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private final long[] versions = new long[CAPACITY];
+    private final byte[] types = new byte[CAPACITY];
+    private final int[] slotNumbers = new int[CAPACITY];
+    private final short[] driverAges = new short[CAPACITY];
+    private final VehicleSize[] vehicleSizes = new VehicleSize[CAPACITY];
+    private final String[] registrationNumbers = new String[CAPACITY];
+    private final long[] timestamps = new long[CAPACITY];
+
+    @Override
+    public void parked(int slotNumber, String registrationNumber, int driverAge, VehicleSize vehicleSize,
+            long timestamp) {
+        publish(PARKED, slotNumber, registrationNumber, driverAge, vehicleSize, timestamp);
+    }
+
+    @Override
+    public void left(int slotNumber, String registrationNumber, int driverAge, VehicleSize vehicleSize,
+            long parkedAt, long timestamp) {
+        publish(LEFT, slotNumber, registrationNumber, driverAge, vehicleSize, timestamp);
+    }
+
+    private void publish(byte type, int slotNumber, String registrationNumber, int driverAge,
+            VehicleSize vehicleSize, long timestamp) {
+        long sequence = claimed.getAndIncrement();
+        int entry = (int) sequence & MASK;
+        long writing = 2 * sequence + 1;
+        while (true) {
+            long version = (long) VERSIONS.getVolatile(versions, entry);
+            if (version >= writing) {
+                // a gate a whole lap ahead took the entry => this event is already overwritten
+                return;
+            }
+            if (VERSIONS.compareAndSet(versions, entry, version, writing)) {
+                break;
+            }
+        }
+        types[entry] = type;
+        slotNumbers[entry] = slotNumber;
+        driverAges[entry] = (short) driverAge;
+        vehicleSizes[entry] = vehicleSize;
+        registrationNumbers[entry] = registrationNumber;
+        timestamps[entry] = timestamp;
+        VERSIONS.compareAndSet(versions, entry, writing, writing + 1);
+    }
+
+    /**
+     * Starts a subscriber thread reading the events published from now on
+     */
+    TicketSubscription subscribe(TicketEventHandler handler, BackpressurePolicy policy) {
+        TicketSubscription subscription = new TicketSubscription(this, handler, policy, claimed.get());
+        subscription.start();
+        return subscription;
+    }
+
+    /**
+     * @return sequence of the next event to be published
+     */
+    long getClaimedSequence() {
+        return claimed.get();
+    }
+
+    /**
+     * Copies the event at a sequence into a reusable TicketEvent
+     *
+     * @return 1 if it was read, 0 if it is not published yet, -1 if it was
+     *         overwritten
+     */
+    int read(long sequence, TicketEvent event) {
+        int entry = (int) sequence & MASK;
+        long complete = 2 * sequence + 2;
+        long before = (long) VERSIONS.getAcquire(versions, entry);
+        if (before != complete) {
+            return before < complete && claimed.get() - sequence <= CAPACITY ? 0 : -1;
+        }
+        byte type = types[entry];
+        int slotNumber = slotNumbers[entry];
+        int driverAge = driverAges[entry];
+        VehicleSize vehicleSize = vehicleSizes[entry];
+        String registrationNumber = registrationNumbers[entry];
+        long timestamp = timestamps[entry];
+        VarHandle.loadLoadFence();
+        if ((long) VERSIONS.getVolatile(versions, entry) != complete) {
+            return -1;
+        }
+        event.set(sequence, type == PARKED ? TicketEvent.Type.PARKED : TicketEvent.Type.LEFT, slotNumber,
+                registrationNumber, driverAge, vehicleSize, timestamp);
+        return 1;
+    }
+
+    /**
+     * @return sequence of the oldest event which may still be read
+     */
+    long oldestSequence() {
+        return Math.max(0, claimed.get() - CAPACITY + 1);
+    }
+}
@@ -0,0 +1,32 @@
+package com.parkinglot12.service;
+
+import com.parkinglot12.domain.VehicleSize;
+
+/**
+ * Told about every vehicle parked in or leaving a SlotStore.
+ *
+ * Called while the slot is still locked, so the events of one slot arrive in
+ * the order they happened. Implementations must be quick and must not call
+ * back into the store.
+ */
+interface TicketEventListener {
+    /**
+     * @param slotNumber         => slot the vehicle was given
+     * @param registrationNumber => registration number of the vehicle
+     * @param driverAge          => age of the driver
+     * @param vehicleSize        => size of the vehicle
+     * @param timestamp          => entry time, in milliseconds since the epoch
+     */
+    void parked(int slotNumber, String registrationNumber, int driverAge, VehicleSize vehicleSize, long timestamp);
+
+    /**
+     * @param slotNumber         => slot the vehicle left
+     * @param registrationNumber => registration number of the vehicle
+     * @param driverAge          => age of the driver
+     * @param vehicleSize        => size of the vehicle
+     * @param parkedAt           => entry time of the vehicle
+     * @param timestamp          => exit time, in milliseconds since the epoch
+     */
+    void left(int slotNumber, String registrationNumber, int driverAge, VehicleSize vehicleSize, long parkedAt,
+            long timestamp);
+}
@@ -0,0 +1,373 @@
+package com.parkinglot12.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.parkinglot12.domain.VehicleSize;
+
+/**
+ * Append only history of the park and leave events of one parking lot, kept
+ * column by column for analytics.
+ *
+ * Events go to segments of one partition of time (a day) each, where every
+ * field is a primitive array => timestamp, slot number, driver age, event
+ * type, registration id and, for a leave, the stay in seconds. Registration
+ * numbers are interned to ids, so a vehicle coming back every day costs an
+ * int per visit. A segment is sealed, trimmed and never written again once an
+ * event of a later partition arrives, or once it is full.
+ *
+ * Queries run on a snapshot of the segments, one parallel task per segment,
+ * and merge the partial results. A segment keeps its time range and its park
+ * and leave counts, so segments outside the queried range are skipped or
+ * counted without being read.
+ *
+ * Appends come from the SlotStore under the lock of the slot and are guarded
+ * by the monitor of the history; queries hold it only to take the snapshot.
+ * The history lives in memory and is not kept over a restart.
+ */
+class TicketHistory implements TicketEventListener {
+    static final long HOUR_MILLIS = 3_600_000L;
+    private static final long PARTITION_MILLIS = 24 * HOUR_MILLIS;
+    private static final int MAX_SEGMENT_EVENTS = 1 << 22;
+    private static final byte PARKED = 1;
+    private static final byte LEFT = 2;
+
+    // sealed segments in the order they were started, replaced as a whole when one is added
+    private volatile Segment[] sealed = new Segment[0];
+    // guarded by this
+    private Segment active;
+    private final Map<String, Integer> registrationIds = new HashMap<String, Integer>();
+    private final List<String> registrationNumbers = new ArrayList<String>();
+    // slot index => a park was recorded and its leave was not yet
+    private final SlotBitSet parked;
+
+    /**
+     * @param capacity => number of slots of the lot
+     */
+    TicketHistory(int capacity) {
+        parked = new SlotBitSet(capacity);
+    }
+
+    @Override
+    public synchronized void parked(int slotNumber, String registrationNumber, int driverAge,
+            VehicleSize vehicleSize, long timestamp) {
+        if (parked.get(slotNumber - 1)) {
+            // replayed by SlotStore.announceParked after the real event was recorded
+            return;
+        }
+        parked.set(slotNumber - 1);
+        segmentFor(timestamp).append(timestamp, slotNumber, driverAge, PARKED, registrationId(registrationNumber),
+                0);
+    }
+
+    @Override
+    public synchronized void left(int slotNumber, String registrationNumber, int driverAge, VehicleSize vehicleSize,
+            long parkedAt, long timestamp) {
+        if (!parked.get(slotNumber - 1)) {
+            // parked before the history started, its park is announced afterwards
+            return;
+        }
+        parked.clear(slotNumber - 1);
+        long stay = Math.max(0, (timestamp - parkedAt) / 1000);
+        segmentFor(timestamp).append(timestamp, slotNumber, driverAge, LEFT, registrationId(registrationNumber),
+                (int) Math.min(stay, Integer.MAX_VALUE));
+    }
+
+    private int registrationId(String registrationNumber) {
+        Integer id = registrationIds.get(registrationNumber);
+        if (id == null) {
+            id = registrationNumbers.size();
+            registrationIds.put(registrationNumber, id);
+            registrationNumbers.add(registrationNumber);
+        }
+        return id;
+    }
+
+    /**
+     * @return the active segment, after sealing it if the event belongs to a
+     *         later partition or it is full
+     */
+    private Segment segmentFor(long timestamp) {
+        long partition = Math.floorDiv(timestamp, PARTITION_MILLIS);
+        if (active != null && (partition > active.partition || active.count == MAX_SEGMENT_EVENTS)) {
+            Segment[] grown = Arrays.copyOf(sealed, sealed.length + 1);
+            grown[grown.length - 1] = active.view(true);
+            sealed = grown;
+            active = null;
+        }
+        if (active == null) {
+            active = new Segment(partition);
+        }
+        return active;
+    }
+
+    /**
+     * @return every segment, the active one as of now
+     */
+    private Segment[] snapshot() {
+        synchronized (this) {
+            Segment[] segments = sealed;
+            if (active == null) {
+                return segments;
+            }
+            segments = Arrays.copyOf(segments, segments.length + 1);
+            segments[segments.length - 1] = active.view(false);
+            return segments;
+        }
+    }
+
+    /**
+     * @return number of events recorded
+     */
+    long size() {
+        long size = 0;
+        for (Segment segment : snapshot()) {
+            size += segment.count;
+        }
+        return size;
+    }
+
+    /**
+     * Average number of parked vehicles in each hour of a range, from the
+     * times vehicles came and went => the vehicles parked when the hour
+     * started, plus each arrival and minus each departure weighted by the
+     * part of the hour left after it
+     *
+     * @param fromMillis => start of the range, rounded down to a whole hour
+     * @param toMillis   => end of the range, exclusive
+     * @return average occupancy per hour
+     */
+    double[] averageOccupancyByHour(long fromMillis, long toMillis) {
+        long start = Math.floorDiv(fromMillis, HOUR_MILLIS) * HOUR_MILLIS;
+        int hours = (int) Math.max(0, -Math.floorDiv(-(toMillis - start), HOUR_MILLIS));
+        long end = start + hours * HOUR_MILLIS;
+        // [0, hours) => net arrivals of the hour, [hours, 2 hours) => their
+        // weight in milliseconds, 2 hours => net arrivals before the range
+        long[] totals = Arrays.stream(snapshot()).parallel().map(segment -> segment.occupancy(start, end, hours))
+                .reduce(new long[2 * hours + 1], TicketHistory::add);
+        double[] occupancy = new double[hours];
+        long parkedAtHour = totals[2 * hours];
+        for (int hour = 0; hour < hours; hour++) {
+            occupancy[hour] = parkedAtHour + (double) totals[hours + hour] / HOUR_MILLIS;
+            parkedAtHour += totals[hour];
+        }
+        return occupancy;
+    }
+
+    /**
+     * Stays of the vehicles which left within a range, counted by length
+     *
+     * @param bucketSeconds => length of stay each bucket covers
+     * @param buckets       => number of buckets, the last one takes every
+     *                      longer stay as well
+     * @return number of stays per bucket
+     */
+    long[] stayHistogram(long fromMillis, long toMillis, int bucketSeconds, int buckets) {
+        if (bucketSeconds < 1 || buckets < 1) {
+            throw new IllegalArgumentException("Stay buckets must be at least 1 second and 1 bucket");
+        }
+        return Arrays.stream(snapshot()).parallel()
+                .map(segment -> segment.stays(fromMillis, toMillis, bucketSeconds, buckets))
+                .reduce(new long[buckets], TicketHistory::add);
+    }
+
+    /**
+     * Parks within a range counted by the age of the driver
+     *
+     * @return number of parks indexed by driver age, up to the oldest driver
+     *         recorded
+     */
+    long[] driverAgeDistribution(long fromMillis, long toMillis) {
+        return Arrays.stream(snapshot()).parallel().map(segment -> segment.driverAges(fromMillis, toMillis))
+                .reduce(new long[0], TicketHistory::add);
+    }
+
+    /**
+     * @return number of different vehicles which parked within a range
+     */
+    int distinctVehicles(long fromMillis, long toMillis) {
+        return Arrays.stream(snapshot()).parallel().map(segment -> segment.vehicles(fromMillis, toMillis))
+                .reduce(new BitSet(), (left, right) -> {
+                    BitSet merged = (BitSet) left.clone();
+                    merged.or(right);
+                    return merged;
+                }).cardinality();
+    }
+
+    /**
+     * @return element wise sum of two partial results, as long as the longer
+     */
+    private static long[] add(long[] left, long[] right) {
+        long[] sum = Arrays.copyOf(left.length >= right.length ? left : right, Math.max(left.length, right.length));
+        long[] other = left.length >= right.length ? right : left;
+        for (int i = 0; i < other.length; i++) {
+            sum[i] += other[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Events of one partition of time, column by column. Rows below count are
+     * never written again, so a view sharing the arrays with a fixed count can
+     * be read without locking.
+     */
+    private static final class Segment {
+        private final long partition;
+        private long[] timestamps;
+        private int[] slotNumbers;
+        private short[] driverAges;
+        private byte[] types;
+        private int[] registrationIds;
+        private int[] staySeconds;
+        private int count;
+        private long minTimestamp = Long.MAX_VALUE;
+        private long maxTimestamp = Long.MIN_VALUE;
+        private int parks;
+        private int leaves;
+
+        Segment(long partition) {
+            this(partition, 1024);
+        }
+
+        private Segment(long partition, int capacity) {
+            this.partition = partition;
+            timestamps = new long[capacity];
+            slotNumbers = new int[capacity];
+            driverAges = new short[capacity];
+            types = new byte[capacity];
+            registrationIds = new int[capacity];
+            staySeconds = new int[capacity];
+        }
+
+        void append(long timestamp, int slotNumber, int driverAge, byte type, int registrationId, int stay) {
+            if (count == timestamps.length) {
+                resize(Math.min(count << 1, MAX_SEGMENT_EVENTS));
+            }
+            timestamps[count] = timestamp;
+            slotNumbers[count] = slotNumber;
+            driverAges[count] = (short) driverAge;
+            types[count] = type;
+            registrationIds[count] = registrationId;
+            staySeconds[count] = stay;
+            count++;
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            if (type == PARKED) {
+                parks++;
+            } else {
+                leaves++;
+            }
+        }
+
+        private void resize(int capacity) {
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            slotNumbers = Arrays.copyOf(slotNumbers, capacity);
+            driverAges = Arrays.copyOf(driverAges, capacity);
+            types = Arrays.copyOf(types, capacity);
+            registrationIds = Arrays.copyOf(registrationIds, capacity);
+            staySeconds = Arrays.copyOf(staySeconds, capacity);
+        }
+
+        /**
+         * @param trim => true when sealing, so the arrays are cut to the rows
+         * @return the rows so far, to be read without the lock
+         */
+        Segment view(boolean trim) {
+            if (trim) {
+                resize(count);
+            }
+            Segment view = new Segment(partition, 0);
+            view.timestamps = timestamps;
+            view.slotNumbers = slotNumbers;
+            view.driverAges = driverAges;
+            view.types = types;
+            view.registrationIds = registrationIds;
+            view.staySeconds = staySeconds;
+            view.count = count;
+            view.minTimestamp = minTimestamp;
+            view.maxTimestamp = maxTimestamp;
+            view.parks = parks;
+            view.leaves = leaves;
+            return view;
+        }
+
+        private boolean outside(long fromMillis, long toMillis) {
+            return count == 0 || maxTimestamp < fromMillis || minTimestamp >= toMillis;
+        }
+
+        long[] occupancy(long start, long end, int hours) {
+            long[] totals = new long[2 * hours + 1];
+            if (count == 0 || minTimestamp >= end) {
+                return totals;
+            }
+            if (maxTimestamp < start) {
+                totals[2 * hours] = parks - leaves;
+                return totals;
+            }
+            for (int row = 0; row < count; row++) {
+                long timestamp = timestamps[row];
+                if (timestamp >= end) {
+                    continue;
+                }
+                int sign = types[row] == PARKED ? 1 : -1;
+                if (timestamp < start) {
+                    totals[2 * hours] += sign;
+                    continue;
+                }
+                int hour = (int) ((timestamp - start) / HOUR_MILLIS);
+                totals[hour] += sign;
+                totals[hours + hour] += sign * (start + (hour + 1) * HOUR_MILLIS - timestamp);
+            }
+            return totals;
+        }
+
+        long[] stays(long fromMillis, long toMillis, int bucketSeconds, int buckets) {
+            long[] histogram = new long[buckets];
+            if (outside(fromMillis, toMillis) || leaves == 0) {
+                return histogram;
+            }
+            for (int row = 0; row < count; row++) {
+                if (types[row] == LEFT && timestamps[row] >= fromMillis && timestamps[row] < toMillis) {
+                    histogram[Math.min(staySeconds[row] / bucketSeconds, buckets - 1)]++;
+                }
+            }
+            return histogram;
+        }
+
+        long[] driverAges(long fromMillis, long toMillis) {
+            long[] distribution = new long[128];
+            int oldest = -1;
+            if (outside(fromMillis, toMillis) || parks == 0) {
+                return new long[0];
+            }
+            for (int row = 0; row < count; row++) {
+                if (types[row] == PARKED && timestamps[row] >= fromMillis && timestamps[row] < toMillis) {
+                    int driverAge = driverAges[row];
+                    if (driverAge >= distribution.length) {
+                        distribution = Arrays.copyOf(distribution, Short.MAX_VALUE + 1);
+                    }
+                    distribution[driverAge]++;
+                    oldest = Math.max(oldest, driverAge);
+                }
+            }
+            return Arrays.copyOf(distribution, oldest + 1);
+        }
+
+        BitSet vehicles(long fromMillis, long toMillis) {
+            BitSet vehicles = new BitSet();
+            if (outside(fromMillis, toMillis) || parks == 0) {
+                return vehicles;
+            }
+            for (int row = 0; row < count; row++) {
+                if (types[row] == PARKED && timestamps[row] >= fromMillis && timestamps[row] < toMillis) {
+                    vehicles.set(registrationIds[row]);
+                }
+            }
+            return vehicles;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.parkinglot12.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.parkinglot12.domain.BackpressurePolicy;
+import com.parkinglot12.domain.TicketEvent;
+import com.parkinglot12.domain.TicketEventHandler;
+
+/**
+ * One subscriber of the event feed of a parking lot, reading on its own
+ * daemon thread from its own sequence.
+ *
+ * An event whose handler throws is missed like an overwritten one => under
+ * BackpressurePolicy.DISCONNECT it stops the subscription, else it is counted
+ * and the next event follows. Only the first failure is printed, so a handler
+ * failing on every event cannot flood the output.
+ */
+public class TicketSubscription {
+    private static final AtomicInteger THREAD_NUMBERS = new AtomicInteger();
+    private static final int SPINS = 100;
+    private static final int YIELDS = 100;
+    private static final long PARK_NANOS = 100_000;
+
+    private final TicketEventBus eventBus;
+    private final TicketEventHandler handler;
+    private final BackpressurePolicy policy;
+    private final Thread thread;
+    private volatile long sequence;
+    private volatile long droppedCount;
+    private volatile long failedCount;
+    private volatile boolean connected;
+
+    TicketSubscription(TicketEventBus eventBus, TicketEventHandler handler, BackpressurePolicy policy,
+            long sequence) {
+        this.eventBus = eventBus;
+        this.handler = handler;
+        this.policy = policy;
+        this.sequence = sequence;
+        this.connected = true;
+        this.thread = new Thread(this::run, "ticket-events-" + THREAD_NUMBERS.incrementAndGet());
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    private void run() {
+        TicketEvent event = new TicketEvent();
+        int idle = 0;
+        while (connected) {
+            long next = sequence;
+            int read = eventBus.read(next, event);
+            if (read == 1) {
+                try {
+                    handler.onEvent(event);
+                } catch (RuntimeException e) {
+                    if (failedCount++ == 0) {
+                        System.out.println("Ticket event subscriber failed, further failures are only counted");
+                        e.printStackTrace();
+                    }
+                    if (policy == BackpressurePolicy.DISCONNECT) {
+                        connected = false;
+                    }
+                }
+                sequence = next + 1;
+                idle = 0;
+            } else if (read == -1) {
+                if (policy == BackpressurePolicy.DISCONNECT) {
+                    connected = false;
+                } else {
+                    long oldest = Math.max(eventBus.oldestSequence(), next + 1);
+                    droppedCount += oldest - next;
+                    sequence = oldest;
+                }
+            } else if (idle < SPINS) {
+                idle++;
+                Thread.onSpinWait();
+            } else if (idle < SPINS + YIELDS) {
+                idle++;
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Stops the subscription, the handler gets no event after this returns
+     */
+    public void close() {
+        connected = false;
+        if (Thread.currentThread() != thread) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return sequence of the next event the subscriber will get
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return number of events to be read yet
+     */
+    public long getLag() {
+        return Math.max(0, eventBus.getClaimedSequence() - sequence);
+    }
+
+    /**
+     * @return number of events skipped under BackpressurePolicy.DROP_OLDEST
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return number of events whose handler threw
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return false once closed, or disconnected under
+     *         BackpressurePolicy.DISCONNECT
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+}
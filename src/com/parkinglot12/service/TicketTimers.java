@@ -0,0 +1,216 @@
+package com.parkinglot12.service;
+
+import java.lang.ref.WeakReference;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+import com.parkinglot12.domain.VehicleSize;
+
+/**
+ * Timers of one parking lot => overstays of the parked vehicles and the expiry
+ * of reservations, on one TimingWheel with a tick of a second.
+ *
+ * A parked vehicle gets a timer at its entry time plus the maximum stay; when
+ * it fires the slot is flagged as overstayed until the vehicle leaves. A
+ * reservation holds a claimed slot for a registration number, and its timer
+ * gives the slot back if the vehicle has not parked by then. Either way a
+ * slot has one timer at most, so the slot index is the timer id.
+ *
+ * Listens to the SlotStore to start and stop overstay timers, so they follow
+ * every park and leave under the lock of the slot. The wheel is moved by a
+ * shared ticker thread every tick, and up to the clock before every query, so
+ * a lot driven by a fake clock answers as of that clock. Guarded by its own
+ * monitor, taken after the stripe of a slot and never before one.
+ */
+class TicketTimers implements TicketEventListener {
+    private static final long TICK_MILLIS = 1000;
+    // one thread moves the wheels of every lot, a lot nobody holds anymore drops out of it
+    private static final ScheduledExecutorService TICKER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "parking-lot-timers");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Clock clock;
+    private final IntConsumer slotReleaser;
+    private final TimingWheel wheel;
+    private final IntConsumer expired;
+    // slot index => set once the vehicle there stayed too long
+    private final SlotBitSet overstayed;
+    // registration number => reserved slot number, and back
+    private final Map<String, Integer> reservations;
+    private final Map<Integer, String> reservedSlots;
+    private final ScheduledFuture<?> ticker;
+    // 0 => stays are not limited
+    private long maxStayMillis;
+    // read without the monitor, so parks skip it while nothing is reserved
+    private volatile int reservationCount;
+
+    /**
+     * @param capacity     => number of slots of the lot
+     * @param slotReleaser => gives a reserved slot back to the lot
+     */
+    TicketTimers(int capacity, Clock clock, IntConsumer slotReleaser) {
+        this.clock = clock;
+        this.slotReleaser = slotReleaser;
+        wheel = new TimingWheel(capacity, tickOf(clock.millis()));
+        expired = this::expired;
+        overstayed = new SlotBitSet(capacity);
+        reservations = new HashMap<String, Integer>();
+        reservedSlots = new HashMap<Integer, String>();
+        WeakReference<TicketTimers> reference = new WeakReference<TicketTimers>(this);
+        ScheduledFuture<?>[] self = new ScheduledFuture<?>[1];
+        ticker = TICKER.scheduleAtFixedRate(() -> {
+            TicketTimers timers = reference.get();
+            if (timers == null) {
+                self[0].cancel(false);
+            } else {
+                timers.advance();
+            }
+        }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        self[0] = ticker;
+    }
+
+    @Override
+    public synchronized void parked(int slotNumber, String registrationNumber, int driverAge,
+            VehicleSize vehicleSize, long timestamp) {
+        long deadline = deadlineOf(timestamp + maxStayMillis);
+        if (maxStayMillis > 0 && deadline <= wheel.getCurrentTick()) {
+            // overstayed before it was timed, e.g. parked before the limit was set
+            wheel.cancel(slotNumber - 1);
+            overstayed.set(slotNumber - 1);
+        } else if (maxStayMillis > 0) {
+            overstayed.clear(slotNumber - 1);
+            wheel.schedule(slotNumber - 1, deadline);
+        } else {
+            overstayed.clear(slotNumber - 1);
+            wheel.cancel(slotNumber - 1);
+        }
+    }
+
+    @Override
+    public synchronized void left(int slotNumber, String registrationNumber, int driverAge, VehicleSize vehicleSize,
+            long parkedAt, long timestamp) {
+        wheel.cancel(slotNumber - 1);
+        overstayed.clear(slotNumber - 1);
+    }
+
+    /**
+     * Sets the stay after which a vehicle is flagged. Only the vehicles parked
+     * from now on are timed by it, the caller brings the parked ones in line
+     * by replaying them to parked.
+     *
+     * @param maxStayMillis => 0 for no limit
+     */
+    synchronized void setMaxStay(long maxStayMillis) {
+        advance();
+        this.maxStayMillis = maxStayMillis;
+    }
+
+    /**
+     * Holds a claimed slot for a registration number until a deadline
+     *
+     * @return false if the registration number holds a reservation already,
+     *         the slot is left to the caller then
+     */
+    synchronized boolean reserve(String registrationNumber, int slotNumber, long untilMillis) {
+        advance();
+        if (reservations.containsKey(registrationNumber)) {
+            return false;
+        }
+        reservations.put(registrationNumber, slotNumber);
+        reservedSlots.put(slotNumber, registrationNumber);
+        reservationCount++;
+        wheel.schedule(slotNumber - 1, deadlineOf(untilMillis));
+        return true;
+    }
+
+    /**
+     * @return true if some slot is reserved, read without locking
+     */
+    boolean hasReservations() {
+        return reservationCount > 0;
+    }
+
+    /**
+     * @return true if the registration number holds a reservation which has
+     *         not expired
+     */
+    synchronized boolean hasReservation(String registrationNumber) {
+        advance();
+        return reservations.containsKey(registrationNumber);
+    }
+
+    /**
+     * Ends the reservation of a registration number as its vehicle arrives
+     *
+     * @return the reserved slot, now the caller's to park in or give back, 0
+     *         if there is no reservation or it has expired
+     */
+    synchronized int claimReservation(String registrationNumber) {
+        advance();
+        Integer slotNumber = reservations.remove(registrationNumber);
+        if (slotNumber == null) {
+            return 0;
+        }
+        reservedSlots.remove(slotNumber);
+        reservationCount--;
+        wheel.cancel(slotNumber - 1);
+        return slotNumber;
+    }
+
+    /**
+     * @return slot numbers whose vehicle stayed longer than the maximum stay,
+     *         in slot order
+     */
+    synchronized int[] getOverstayedSlotNumbers() {
+        advance();
+        int[] slotNumbers = new int[overstayed.cardinality()];
+        int count = 0;
+        for (int index = overstayed.nextSetBit(0); index != -1 && count < slotNumbers.length;
+                index = overstayed.nextSetBit(index + 1)) {
+            slotNumbers[count++] = index + 1;
+        }
+        return count == slotNumbers.length ? slotNumbers : Arrays.copyOf(slotNumbers, count);
+    }
+
+    /**
+     * Stops the ticker, the timers are not fired anymore
+     */
+    void close() {
+        ticker.cancel(false);
+    }
+
+    private synchronized void advance() {
+        wheel.advance(tickOf(clock.millis()), expired);
+    }
+
+    private void expired(int index) {
+        String registrationNumber = reservedSlots.remove(index + 1);
+        if (registrationNumber == null) {
+            overstayed.set(index);
+            return;
+        }
+        reservations.remove(registrationNumber);
+        reservationCount--;
+        slotReleaser.accept(index + 1);
+    }
+
+    private static long tickOf(long millis) {
+        return Math.floorDiv(millis, TICK_MILLIS);
+    }
+
+    /**
+     * @return first tick at or after the time
+     */
+    private static long deadlineOf(long millis) {
+        return -Math.floorDiv(-millis, TICK_MILLIS);
+    }
+}
@@ -1,61 +1,92 @@
 
 package com.parkinglot12.service;
 
+import java.time.Clock;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
 import java.io.*;
 
 
+import com.parkinglot12.domain.BackpressurePolicy;
+import com.parkinglot12.domain.FloorLayout;
+import com.parkinglot12.domain.LeaveReceipt;
+import com.parkinglot12.domain.ResultCode;
+import com.parkinglot12.domain.SlotAllocationPolicy;
 import com.parkinglot12.domain.StatusResponse;
+import com.parkinglot12.domain.StatusSink;
+import com.parkinglot12.domain.TicketEventHandler;
 import com.parkinglot12.domain.Vehicle;
+import com.parkinglot12.domain.VehicleSize;
 import com.parkinglot12.service.exceptions.ParkingLotException;
 
 
 class TicketingSystem {
-    private static TicketingSystem ticketingSystem;
     private ParkingLot parkingLot;
-    private Map<Integer, Ticket> tickets;
+    // parked vehicles, one row per slot
+    private SlotStore slotStore;
+    // kept as fields so the park and leave paths do not allocate them per call;
+    // vehicle size => claims a slot the vehicle fits
+    private final IntSupplier[] slotAllocators;
+    private final IntConsumer slotReleaser;
+    private final SlotStore.SlotsAllocator slotsAllocator;
+    private final SlotStore.SlotsReleaser slotsReleaser;
+    // null when the lot lives in memory only
+    private final ParkingLotJournal journal;
+    // entry and exit times are read from it
+    private final Clock clock;
+    // created by the first subscriber, so a lot nobody listens to publishes nothing
+    private TicketEventBus eventBus;
+    // created by the first maximum stay or reservation, so a lot without them times nothing
+    private volatile TicketTimers timers;
+    // null until history is recorded for the lot
+    private volatile TicketHistory history;
+    // turned away parks and leaves, read by CommandMetrics
+    private final LongAdder lotFullCount = new LongAdder();
+    private final LongAdder duplicateCount = new LongAdder();
+    private final LongAdder noVehicleCount = new LongAdder();
 
 
 
     /**
-     * VisibleForTesting(otherwise = PRIVATE)
+     * Created by ParkingLotRegistry => one per parking lot
      */
     TicketingSystem(ParkingLot parkingLot) {
-        this.parkingLot = parkingLot;
-        tickets = new HashMap<Integer, Ticket>();
+        this(parkingLot, null);
     }
 
     /**
-     * Singleton Class => Returns a single instance of the class
-     *
-     * @param numberOfSlots => Number of slots of the parking lot that this
-     *                      ticketing system is managing
-     * @return TicketingSystem instance
+     * Created by ParkingLotJournal => a lot whose parks and leaves are on disk
+     * before they are reported
      */
-    static TicketingSystem createInstance(int numberOfSlots) {
-        if(numberOfSlots < 1) {
-            throw new ParkingLotException("Number of slots cannot be less than 1");
-        }
-        if (ticketingSystem == null) {
-            ParkingLot parkingLot = ParkingLot.getInstance(numberOfSlots);
-            ticketingSystem = new TicketingSystem(parkingLot);
-        }
-        return ticketingSystem;
+    TicketingSystem(ParkingLot parkingLot, ParkingLotJournal journal) {
+        this(parkingLot, journal, Clock.systemUTC());
     }
 
     /**
-     *
-     * @return TicketingSystem instance
+     * @param clock => gives the entry and exit times and drives the timers
      */
-    static TicketingSystem getInstance() {
-        if(ticketingSystem == null) {
-            throw new IllegalStateException("Parking Lot is not initialized");
+    TicketingSystem(ParkingLot parkingLot, ParkingLotJournal journal, Clock clock) {
+        this.parkingLot = parkingLot;
+        this.clock = clock;
+        this.slotStore = parkingLot.getSlotStore();
+        this.slotAllocators = new IntSupplier[VehicleSize.values().length];
+        for (VehicleSize vehicleSize : VehicleSize.values()) {
+            slotAllocators[vehicleSize.ordinal()] = () -> parkingLot.claimAvailableSlot(vehicleSize);
+        }
+        this.slotReleaser = parkingLot::emptySlot;
+        this.slotsAllocator = parkingLot::claimAvailableSlots;
+        this.slotsReleaser = parkingLot::emptySlots;
+        this.journal = journal;
+        if (journal != null) {
+            slotStore.addEventListener(journal);
         }
-        return ticketingSystem;
     }
 
     /**
-     * Parks a vehicle
+     * Parks a vehicle. The duplicate check, the slot claim and the indexes are
+     * updated as one step, so it is safe to call from many gates at once.
      *
      * @return slotNumber => slot number at which the vehicle needs to be parked
      */
@@ -63,30 +94,304 @@ class TicketingSystem {
         if (vehicle == null) {
             throw new IllegalArgumentException("Vehicle cannot be null");
         }
-        int assignedSlotNumber = parkingLot.fillAvailableSlot();
-        Ticket ticket = new Ticket(assignedSlotNumber, vehicle);
-        tickets.put(assignedSlotNumber, ticket);
-        return assignedSlotNumber;
+        int result = parkVehicle(vehicle.getRegistrationNumber(), vehicle.getDriverAge(), vehicle.getVehicleSize());
+        if (result == ResultCode.DUPLICATE_REGISTRATION.getCode()) {
+            throw new IllegalArgumentException(ResultCode.DUPLICATE_REGISTRATION.getMessage());
+        } else if (result < 0) {
+            throw new ParkingLotException(ResultCode.of(result).getMessage());
+        }
+        return result;
     }
 
     /**
-     * Exits a vehicle from the parking lot
+     * Same as issueParkingTicket, but reports the expected failures as result
+     * codes instead of exceptions. A vehicle holding a reservation is parked
+     * in its reserved slot if it fits there.
      *
-     * @param registrationNumber
-     * @return slotNumber => the slot from the car has exited.
+     * @param registrationNumber => registration number of the vehicle
+     * @param driverAge          => age of the driver, 1 to 32767
+     * @param vehicleSize        => size of the vehicle, it gets a slot it fits
+     * @return slot number given to the vehicle, or the code of
+     *         ResultCode.LOT_FULL / DUPLICATE_REGISTRATION
+     */
+    int parkVehicle(String registrationNumber, int driverAge, VehicleSize vehicleSize) {
+        if (registrationNumber == null || vehicleSize == null) {
+            throw new IllegalArgumentException("registrationNumber and vehicleSize cannot be null");
+        }
+        TicketTimers currentTimers = timers;
+        int reserved = currentTimers != null && currentTimers.hasReservations()
+                ? claimReservation(currentTimers, registrationNumber, vehicleSize)
+                : 0;
+        int result = 0;
+        try {
+            result = slotStore.put(registrationNumber, driverAge, vehicleSize, clock.millis(),
+                    reserved > 0 ? () -> reserved : slotAllocators[vehicleSize.ordinal()]);
+        } finally {
+            if (reserved > 0 && result < 1) {
+                // parked already, or refused => the reserved slot goes back to the lot
+                parkingLot.emptySlot(reserved);
+            }
+        }
+        if (result > 0) {
+            if (journal != null) {
+                journal.commit();
+            }
+        } else if (result == ResultCode.LOT_FULL.getCode()) {
+            lotFullCount.increment();
+        } else {
+            duplicateCount.increment();
+        }
+        return result;
+    }
+
+    /**
+     * @return the slot reserved for the vehicle, 0 if there is none or the
+     *         vehicle does not fit it
      */
-    void exitVehicle(int slotNumber) {
-        if (tickets.containsKey(slotNumber)) {
+    private int claimReservation(TicketTimers currentTimers, String registrationNumber, VehicleSize vehicleSize) {
+        int slotNumber = currentTimers.claimReservation(registrationNumber);
+        if (slotNumber > 0 && !vehicleSize.fits(parkingLot.getFloorLayout().getSlotSize(slotNumber))) {
             parkingLot.emptySlot(slotNumber);
-            tickets.remove(slotNumber);
+            return 0;
+        }
+        return slotNumber;
+    }
+
+    /**
+     * Holds a free slot for a vehicle which has not arrived yet. Its park
+     * takes that slot; if it has not parked by the end of the hold, the slot
+     * is given back to the lot.
+     *
+     * @param registrationNumber => registration number of the vehicle
+     * @param vehicleSize        => size of the vehicle, it gets a slot it fits
+     * @param holdMillis         => how long the slot is held, at least 1
+     * @return slot number reserved, or the code of ResultCode.LOT_FULL /
+     *         DUPLICATE_REGISTRATION when the vehicle is parked or holds a
+     *         reservation already
+     */
+    int reserveSlot(String registrationNumber, VehicleSize vehicleSize, long holdMillis) {
+        if (registrationNumber == null || vehicleSize == null) {
+            throw new IllegalArgumentException("registrationNumber and vehicleSize cannot be null");
+        }
+        if (holdMillis < 1) {
+            throw new IllegalArgumentException("Reservation cannot be shorter than 1 millisecond");
+        }
+        TicketTimers currentTimers = timers;
+        // checked before a slot is claimed, so a full lot does not hide a duplicate
+        if (slotStore.findSlotNumber(registrationNumber) != -1
+                || (currentTimers != null && currentTimers.hasReservation(registrationNumber))) {
+            duplicateCount.increment();
+            return ResultCode.DUPLICATE_REGISTRATION.getCode();
+        }
+        int slotNumber = parkingLot.claimAvailableSlot(vehicleSize);
+        if (slotNumber < 1) {
+            lotFullCount.increment();
+            return slotNumber;
+        }
+        if (!timers().reserve(registrationNumber, slotNumber, clock.millis() + holdMillis)) {
+            parkingLot.emptySlot(slotNumber);
+            duplicateCount.increment();
+            return ResultCode.DUPLICATE_REGISTRATION.getCode();
+        }
+        return slotNumber;
+    }
+
+    /**
+     * Sets how long a vehicle may stay before it is flagged as overstayed,
+     * for the vehicles parked now as well as the ones to come
+     *
+     * @param maxStayMillis => 0 for no limit
+     */
+    void setMaxStay(long maxStayMillis) {
+        if (maxStayMillis < 0) {
+            throw new IllegalArgumentException("Maximum stay cannot be negative");
+        }
+        if (maxStayMillis == 0 && timers == null) {
             return;
-        } else {
-            throw new ParkingLotException("No vehicle found at given slot. Incorrect input");
         }
+        TicketTimers currentTimers = timers();
+        currentTimers.setMaxStay(maxStayMillis);
+        // parks from here on are timed by the new limit, the ones before are retimed
+        slotStore.announceParked(currentTimers);
+    }
+
+    /**
+     * @return registration numbers of the vehicles which stayed longer than the
+     *         maximum stay, in slot order
+     */
+    List<String> getOverstayedRegistrationNumbers() {
+        TicketTimers currentTimers = timers;
+        if (currentTimers == null) {
+            return new ArrayList<String>();
+        }
+        int[] slotNumbers = currentTimers.getOverstayedSlotNumbers();
+        List<String> registrationNumbers = new ArrayList<String>(slotNumbers.length);
+        for (int slotNumber : slotNumbers) {
+            // the vehicle may have left since the flags were read
+            String registrationNumber = slotStore.getRegistrationNumber(slotNumber);
+            if (registrationNumber != null) {
+                registrationNumbers.add(registrationNumber);
+            }
+        }
+        return registrationNumbers;
+    }
+
+    /**
+     * @return entry time of the vehicle at the slot in milliseconds since the
+     *         epoch, or the code of ResultCode.NO_VEHICLE_AT_SLOT
+     */
+    long getParkedAt(int slotNumber) {
+        long parkedAt = slotStore.getParkedAt(slotNumber);
+        return parkedAt == -1 ? ResultCode.NO_VEHICLE_AT_SLOT.getCode() : parkedAt;
+    }
+
+    private TicketTimers timers() {
+        TicketTimers currentTimers = timers;
+        if (currentTimers != null) {
+            return currentTimers;
+        }
+        synchronized (this) {
+            if (timers == null) {
+                TicketTimers created = new TicketTimers(parkingLot.getNumberOfSlots(), clock,
+                        parkingLot::emptySlot);
+                slotStore.addEventListener(created);
+                timers = created;
+            }
+            return timers;
+        }
+    }
+
+    /**
+     * Same as parkVehicle for several cars, in order, with the slots
+     * claimed in one pass and a single journal commit for the whole batch.
+     * Cars holding a reservation are parked in their reserved slots first,
+     * one by one.
+     *
+     * @param results => per vehicle, slot number or the code of
+     *                ResultCode.LOT_FULL / DUPLICATE_REGISTRATION
+     * @return number of vehicles parked
+     */
+    int parkVehicles(String[] registrationNumbers, int[] driverAges, int count, int[] results) {
+        TicketTimers currentTimers = timers;
+        if (currentTimers != null && currentTimers.hasReservations()) {
+            return parkVehiclesWithReservations(currentTimers, registrationNumbers, driverAges, count, results);
+        }
+        return parkUnreservedVehicles(registrationNumbers, driverAges, count, results);
+    }
+
+    private int parkVehiclesWithReservations(TicketTimers currentTimers, String[] registrationNumbers,
+            int[] driverAges, int count, int[] results) {
+        // the arguments are checked up front, as putAll does, so a bad one parks nothing
+        for (int i = 0; i < count; i++) {
+            if (registrationNumbers[i] == null) {
+                throw new IllegalArgumentException("registrationNumber cannot be null");
+            }
+            if (driverAges[i] < 1 || driverAges[i] > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Driver Age is out of range");
+            }
+        }
+        // vehicles without a reservation => their position in the batch
+        String[] unreserved = new String[count];
+        int[] unreservedAges = new int[count];
+        int[] positions = new int[count];
+        int unreservedCount = 0;
+        int parked = 0;
+        for (int i = 0; i < count; i++) {
+            if (currentTimers.hasReservation(registrationNumbers[i])) {
+                results[i] = parkVehicle(registrationNumbers[i], driverAges[i], VehicleSize.CAR);
+                if (results[i] > 0) {
+                    parked++;
+                }
+            } else {
+                unreserved[unreservedCount] = registrationNumbers[i];
+                unreservedAges[unreservedCount] = driverAges[i];
+                positions[unreservedCount++] = i;
+            }
+        }
+        if (unreservedCount == 0) {
+            return parked;
+        }
+        // a repeat of a reserved vehicle comes after it, so it is caught as a duplicate here
+        int[] unreservedResults = new int[unreservedCount];
+        parked += parkUnreservedVehicles(unreserved, unreservedAges, unreservedCount, unreservedResults);
+        for (int i = 0; i < unreservedCount; i++) {
+            results[positions[i]] = unreservedResults[i];
+        }
+        return parked;
+    }
+
+    private int parkUnreservedVehicles(String[] registrationNumbers, int[] driverAges, int count, int[] results) {
+        int parked = slotStore.putAll(registrationNumbers, driverAges, count, clock.millis(), results,
+                slotsAllocator, slotsReleaser);
+        if (parked > 0 && journal != null) {
+            journal.commit();
+        }
+        for (int i = 0; i < count; i++) {
+            if (results[i] == ResultCode.LOT_FULL.getCode()) {
+                lotFullCount.increment();
+            } else if (results[i] == ResultCode.DUPLICATE_REGISTRATION.getCode()) {
+                duplicateCount.increment();
+            }
+        }
+        return parked;
+    }
+
+    /**
+     * Exits a vehicle from the parking lot
+     *
+     * @param slotNumber => the slot from which the car exits
+     * @return the vehicle which left, read in the same step as the exit
+     */
+    Vehicle exitVehicle(int slotNumber) {
+        LeaveReceipt receipt = new LeaveReceipt();
+        int result = leaveSlot(slotNumber, receipt);
+        if (result < 0) {
+            throw new ParkingLotException(ResultCode.of(result).getMessage());
+        }
+        return receipt;
+    }
+
+    /**
+     * Same as exitVehicle, but reports an empty slot as a result code
+     *
+     * @param slotNumber => the slot from which the car exits
+     * @param receipt    => filled in with the vehicle which left
+     * @return the code of ResultCode.SUCCESS or NO_VEHICLE_AT_SLOT
+     */
+    int leaveSlot(int slotNumber, LeaveReceipt receipt) {
+        if (!slotStore.remove(slotNumber, clock.millis(), receipt, slotReleaser)) {
+            noVehicleCount.increment();
+            return ResultCode.NO_VEHICLE_AT_SLOT.getCode();
+        }
+        if (journal != null) {
+            journal.commit();
+        }
+        return ResultCode.SUCCESS.getCode();
+    }
+
+    /**
+     * Same as leaveSlot for several slots, in order, with the slots freed in
+     * one pass and a single journal commit for the whole batch
+     *
+     * @param receipts => per slot, filled in with the vehicle which left
+     * @param results  => per slot, the code of ResultCode.SUCCESS or
+     *                 NO_VEHICLE_AT_SLOT
+     * @return number of vehicles which left
+     */
+    int leaveSlots(int[] slotNumbers, int count, LeaveReceipt[] receipts, int[] results) {
+        int left = slotStore.removeAll(slotNumbers, count, clock.millis(), receipts, results, slotsReleaser);
+        if (left > 0 && journal != null) {
+            journal.commit();
+        }
+        if (left < count) {
+            noVehicleCount.add(count - left);
+        }
+        return left;
     }
 
     /**
-     * returns all the registration numbers of the vehicles with the given driverAge
+     * returns all the registration numbers of the vehicles with the given driverAge,
+     * in slot order
      *
      * @param driverAge => age of the driver of the Vehicle
      * @return List of all the registration numbers of the vehicles with the given
@@ -96,13 +401,7 @@ class TicketingSystem {
         if (driverAge == 0) {
             throw new IllegalArgumentException("driver Age cannot be null");
         }
-        List<String> registrationNumbers = new ArrayList<String>();
-        for (Ticket ticket : tickets.values()) {
-            if (Objects.equals(driverAge, ticket.vehicle.getDriverAge())) {
-                registrationNumbers.add(ticket.vehicle.getRegistrationNumber());
-            }
-        }
-        return registrationNumbers;
+        return getRegistrationNumbersFromDriverAges(driverAge, driverAge);
     }
 
     /**
@@ -111,14 +410,7 @@ class TicketingSystem {
      * @return
      */
     boolean ragistrationNumberAvailable(String registration_number){
-        String string1 = new String(registration_number);
-
-        for(Ticket ticket:tickets.values()){
-            String string2 = new String(ticket.vehicle.getRegistrationNumber());
-            if(string1.equals(string2))
-                return true;
-        }
-        return false;
+        return slotStore.findSlotNumber(registration_number) != -1;
     }
 
     /**
@@ -130,20 +422,46 @@ class TicketingSystem {
      *         parked
      */
     int getSlotNumberFromRegistrationNumber(String registrationNumber) {
+        int slotNumber = findSlotNumber(registrationNumber);
+        if (slotNumber > 0) {
+            return slotNumber;
+        }
+
+        throw new ParkingLotException(ResultCode.NOT_FOUND.getMessage());
+    }
+
+    /**
+     * Same as getSlotNumberFromRegistrationNumber, but reports an unknown
+     * registration number as a result code
+     *
+     * @param registrationNumber => Registration Number of the Vehicle
+     * @return slot number, or the code of ResultCode.NOT_FOUND
+     */
+    int findSlotNumber(String registrationNumber) {
         if (registrationNumber == null) {
             throw new IllegalArgumentException("registrationNumber cannot be null");
         }
-        for (Ticket ticket : tickets.values()) {
-            if (registrationNumber.equals(ticket.vehicle.getRegistrationNumber())) {
-                return ticket.slotNumber;
-            }
-        }
+        int slotNumber = slotStore.findSlotNumber(registrationNumber);
+        return slotNumber != -1 ? slotNumber : ResultCode.NOT_FOUND.getCode();
+    }
 
-        throw new ParkingLotException("Not found");
+    /**
+     * Same as findSlotNumber(String) for a registration number given as a range
+     * of characters
+     *
+     * @param chars => characters holding the registration number
+     * @param start => index of its first character
+     * @param end   => index after its last character
+     * @return slot number, or the code of ResultCode.NOT_FOUND
+     */
+    int findSlotNumber(CharSequence chars, int start, int end) {
+        int slotNumber = slotStore.findSlotNumber(chars, start, end);
+        return slotNumber != -1 ? slotNumber : ResultCode.NOT_FOUND.getCode();
     }
 
     /**
-     * returns all the slot numbers of the vehicles with the given color
+     * returns all the slot numbers of the vehicles with the given driverAge, in
+     * slot order
      *
      * @param driverAge => age of the driver of the Vehicle
      * @return List of all the slot numbers of the vehicles with the given color
@@ -152,16 +470,39 @@ class TicketingSystem {
         if (driverAge == 0) {
             throw new IllegalArgumentException("Driver Age cannot be 0");
         }
-        List<Integer> registrationNumbers = new ArrayList<Integer>();
-        for (Ticket ticket : tickets.values()) {
-            if (Objects.equals(driverAge, ticket.vehicle.getDriverAge())) {
-                registrationNumbers.add(ticket.slotNumber);
-            }
-        }
-        return registrationNumbers;
+        return getSlotNumbersFromDriverAges(driverAge, driverAge);
     }
 
 
+    /**
+     * @return number of parked vehicles whose driver is fromAge to toAge old,
+     *         both inclusive
+     */
+    int countForDriverAges(int fromAge, int toAge) {
+        return slotStore.countForDriverAges(fromAge, toAge);
+    }
+
+    /**
+     * @return slot numbers of the vehicles whose driver is fromAge to toAge
+     *         old, both inclusive, in slot order
+     */
+    List<Integer> getSlotNumbersFromDriverAges(int fromAge, int toAge) {
+        List<Integer> slotNumbers = new ArrayList<Integer>(slotStore.countForDriverAges(fromAge, toAge));
+        slotStore.forEachSlotNumberForDriverAges(fromAge, toAge, slotNumbers::add);
+        return slotNumbers;
+    }
+
+    /**
+     * @return registration numbers of the vehicles whose driver is fromAge to
+     *         toAge old, both inclusive, in slot order
+     */
+    List<String> getRegistrationNumbersFromDriverAges(int fromAge, int toAge) {
+        List<String> registrationNumbers = new ArrayList<String>(slotStore.countForDriverAges(fromAge, toAge));
+        slotStore.forEachVehicleForDriverAges(fromAge, toAge,
+                (slotNumber, registrationNumber, driverAge) -> registrationNumbers.add(registrationNumber));
+        return registrationNumbers;
+    }
+
     /**
      * returns the registration number of a car on a particular slot number
      * @param slotNumber
@@ -169,8 +510,8 @@ class TicketingSystem {
      */
 
     String getVehicleRegistrationFromSlotNumber(int slotNumber){
-        if(tickets.containsKey(slotNumber)){
-            return tickets.get(slotNumber).vehicle.getRegistrationNumber();
+        if(slotStore.hasVehicle(slotNumber)){
+            return slotStore.getRegistrationNumber(slotNumber);
 
         }
         else
@@ -186,8 +527,8 @@ class TicketingSystem {
 
     int getDriverAge(int slotNumber){
 
-        if(tickets.containsKey(slotNumber)){
-            return tickets.get(slotNumber).vehicle.getDriverAge();
+        if(slotStore.hasVehicle(slotNumber)){
+            return slotStore.getDriverAge(slotNumber);
         }
         else
             throw new ParkingLotException("Car is not present at this slot number");
@@ -197,34 +538,157 @@ class TicketingSystem {
 
 
     /**
-     * returns the status of the ticketing system, a list of all the tickets
-     * converted to status objects
+     * @return total number of slots in the parking lot
+     */
+    int getNumberOfSlots() {
+        return parkingLot.getNumberOfSlots();
+    }
+
+    FloorLayout getFloorLayout() {
+        return parkingLot.getFloorLayout();
+    }
+
+    SlotAllocationPolicy getAllocationPolicy() {
+        return parkingLot.getAllocationPolicy();
+    }
+
+    /**
+     * @return number of slots available right now
+     */
+    int getFreeSlotCount() {
+        return parkingLot.getFreeSlotCount();
+    }
+
+    /**
+     * @return number of slots holding a vehicle right now => a slot claimed by
+     *         a reservation holds none until its vehicle parks
+     */
+    int getOccupiedSlotCount() {
+        return slotStore.countForDriverAges(1, Short.MAX_VALUE);
+    }
+
+    /**
+     * Subscribes to the park and leave events of the lot from now on
+     *
+     * @param handler => called with every event on the subscriber's own thread
+     * @param policy  => what happens when the subscriber falls behind
+     * @return the subscription, to be closed when done
+     */
+    synchronized TicketSubscription subscribe(TicketEventHandler handler, BackpressurePolicy policy) {
+        if (eventBus == null) {
+            eventBus = new TicketEventBus();
+            slotStore.addEventListener(eventBus);
+        }
+        return eventBus.subscribe(handler, policy);
+    }
+
+    /**
+     * Starts recording the park and leave events of the lot for the history
+     * queries. The vehicles parked now are recorded as parked at their entry
+     * time; calling it again does nothing.
+     */
+    synchronized void recordHistory() {
+        if (history == null) {
+            TicketHistory created = new TicketHistory(parkingLot.getNumberOfSlots());
+            slotStore.addEventListener(created);
+            // a vehicle parking meanwhile reaches the history twice, which it ignores
+            slotStore.announceParked(created);
+            history = created;
+        }
+    }
+
+    /**
+     * @return the history of the lot
+     */
+    TicketHistory getHistory() {
+        TicketHistory current = history;
+        if (current == null) {
+            throw new IllegalStateException("History is not recorded for this parking lot");
+        }
+        return current;
+    }
+
+    /**
+     * @return parks turned away because the lot was full
+     */
+    long getLotFullCount() {
+        return lotFullCount.sum();
+    }
+
+    /**
+     * @return parks turned away because the registration was already parked
+     */
+    long getDuplicateCount() {
+        return duplicateCount.sum();
+    }
+
+    /**
+     * @return leaves from a slot holding no vehicle
+     */
+    long getNoVehicleCount() {
+        return noVehicleCount.sum();
+    }
+
+    /**
+     * Stops the timers, writes out what the journal still holds and stops
+     * journaling
+     */
+    void close() throws IOException {
+        if (timers != null) {
+            timers.close();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * returns the status of the ticketing system, a list of all the parked
+     * vehicles converted to status objects, in slot order
      *
      * @return List of StatusResponse => List of (slotNumber, registrationNumber,
      *         driverAge)
      */
     List<StatusResponse> getStatus() {
-        List<StatusResponse> statusResponseList = new ArrayList<StatusResponse>();
-        for (Ticket ticket : tickets.values()) {
-            statusResponseList.add(new StatusResponse(ticket.slotNumber, ticket.vehicle.getRegistrationNumber(),
-                    ticket.vehicle.getDriverAge()));
+        try (ParkingLotSnapshot snapshot = snapshot()) {
+            return snapshot.getStatus();
         }
-        return statusResponseList;
     }
 
-
+    /**
+     * @return a snapshot of the parked vehicles as they are now, to be closed
+     *         once read
+     */
+    ParkingLotSnapshot snapshot() {
+        return new ParkingLotSnapshot(slotStore);
+    }
 
     /**
-     * Ticketing System issues a ticket => an object known only to Ticketing System
+     * Hands one page of the parked vehicles to a sink, in slot order, without
+     * collecting them first. Each vehicle is read on its own, so a long dump
+     * never holds up the gates.
      *
+     * @param fromSlotNumber => slot number to start from, 1 or a token returned
+     *                       by the previous page
+     * @param pageSize       => most vehicles to hand over
+     * @param sink           => receives the vehicles
+     * @return token to pass as fromSlotNumber for the next page, -1 if there
+     *         are no more vehicles
      */
-    private class Ticket {
-        int slotNumber;
-        Vehicle vehicle;
-
-        Ticket(int slotNumber, Vehicle vehicle) {
-            this.slotNumber = slotNumber;
-            this.vehicle = vehicle;
+    int streamStatus(int fromSlotNumber, int pageSize, StatusSink sink) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size cannot be less than 1");
+        }
+        int slotNumber = slotStore.nextOccupiedSlotNumber(Math.max(fromSlotNumber, 1));
+        for (int count = 0; slotNumber != -1 && count < pageSize;
+                slotNumber = slotStore.nextOccupiedSlotNumber(slotNumber + 1)) {
+            // the vehicle may have left since the index was read
+            Vehicle vehicle = slotStore.getVehicle(slotNumber);
+            if (vehicle != null) {
+                sink.accept(slotNumber, vehicle.getRegistrationNumber(), vehicle.getDriverAge());
+                count++;
+            }
         }
+        return slotNumber;
     }
 }
@@ -0,0 +1,186 @@
+package com.parkinglot12.service;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Hierarchical timing wheel of timers identified by slot index, one timer per
+ * slot at most.
+ *
+ * Time goes in ticks. There are LEVELS wheels of 64 buckets; a timer sits on
+ * the lowest level whose range still covers its deadline, in the bucket given
+ * by that level's 6 bits of the deadline. Level 0 buckets hold the timers due at
+ * one tick, a level l bucket the ones due within a span of 64^l ticks. When the
+ * current tick enters the span of a higher bucket, its timers are moved down a
+ * level or more (cascaded), so each timer is touched at most LEVELS times
+ * between scheduling and firing. Scheduling, cancelling and firing are O(1)
+ * and nothing ever scans the timers which are not due.
+ *
+ * The buckets are doubly linked lists threaded through int arrays indexed by
+ * slot index, in pages of 4096 slots made when a timer of the page is first
+ * scheduled, so a lot without timers holds none of them.
+ *
+ * Not thread safe, the owner guards it.
+ */
+class TimingWheel {
+    private static final int BUCKET_SHIFT = 6;
+    private static final int BUCKETS = 1 << BUCKET_SHIFT;
+    private static final int BUCKET_MASK = BUCKETS - 1;
+    private static final int LEVELS = 6;
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+    // level * BUCKETS + bucket => first timer of the bucket + 1, 0 if empty
+    private final int[] heads = new int[LEVELS * BUCKETS];
+    // page => per slot index, next and previous timer of its bucket + 1 (0
+    // ends the list), the bucket it is in + 1 (0 if not scheduled) and its
+    // deadline in ticks
+    private final int[][] nexts;
+    private final int[][] previous;
+    private final int[][] buckets;
+    private final long[][] deadlines;
+
+    private long currentTick;
+    private int count;
+
+    /**
+     * @param capacity => number of timer ids, 0 to capacity - 1
+     * @param tick     => tick the wheel starts at
+     */
+    TimingWheel(int capacity, long tick) {
+        int pageCount = (capacity + PAGE_MASK) >>> PAGE_SHIFT;
+        nexts = new int[pageCount][];
+        previous = new int[pageCount][];
+        buckets = new int[pageCount][];
+        deadlines = new long[pageCount][];
+        currentTick = tick;
+    }
+
+    long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * @return number of timers scheduled
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Schedules a timer, replacing the one the id already had
+     *
+     * @param id       => id of the timer
+     * @param deadline => tick at which it fires, one past the current tick if
+     *                 it is already due
+     */
+    void schedule(int id, long deadline) {
+        cancel(id);
+        int page = id >>> PAGE_SHIFT;
+        if (nexts[page] == null) {
+            nexts[page] = new int[1 << PAGE_SHIFT];
+            previous[page] = new int[1 << PAGE_SHIFT];
+            buckets[page] = new int[1 << PAGE_SHIFT];
+            deadlines[page] = new long[1 << PAGE_SHIFT];
+        }
+        deadlines[page][id & PAGE_MASK] = Math.max(deadline, currentTick + 1);
+        link(id);
+        count++;
+    }
+
+    /**
+     * @return false if the id had no timer
+     */
+    boolean cancel(int id) {
+        int[] bucketPage = buckets[id >>> PAGE_SHIFT];
+        if (bucketPage == null || bucketPage[id & PAGE_MASK] == 0) {
+            return false;
+        }
+        unlink(id);
+        count--;
+        return true;
+    }
+
+    /**
+     * @return deadline of the timer of the id, -1 if it has none
+     */
+    long deadline(int id) {
+        int page = id >>> PAGE_SHIFT;
+        return buckets[page] == null || buckets[page][id & PAGE_MASK] == 0 ? -1 : deadlines[page][id & PAGE_MASK];
+    }
+
+    /**
+     * Moves the wheel up to a tick, firing every timer due by then in order
+     * of deadline. A timer fired is no longer scheduled when expired is called,
+     * so expired may schedule it again.
+     *
+     * @param tick    => tick to move to, nothing happens if it is not ahead
+     * @param expired => called with the id of every timer fired
+     */
+    void advance(long tick, IntConsumer expired) {
+        while (currentTick < tick) {
+            if (count == 0) {
+                currentTick = tick;
+                return;
+            }
+            currentTick++;
+            // higher levels first, their timers may land in a lower bucket due now
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (BUCKET_SHIFT * level)) - 1)) == 0) {
+                    cascade(level * BUCKETS + (int) ((currentTick >>> (BUCKET_SHIFT * level)) & BUCKET_MASK));
+                }
+            }
+            int bucket = (int) (currentTick & BUCKET_MASK);
+            for (int head = heads[bucket]; head != 0; head = heads[bucket]) {
+                unlink(head - 1);
+                count--;
+                expired.accept(head - 1);
+            }
+        }
+    }
+
+    private void cascade(int bucket) {
+        int head = heads[bucket];
+        heads[bucket] = 0;
+        while (head != 0) {
+            int id = head - 1;
+            head = nexts[id >>> PAGE_SHIFT][id & PAGE_MASK];
+            link(id);
+        }
+    }
+
+    /**
+     * Adds the timer to the bucket of its deadline => the level is the highest
+     * 6 bit digit in which the deadline differs from the current tick
+     */
+    private void link(int id) {
+        int page = id >>> PAGE_SHIFT;
+        int offset = id & PAGE_MASK;
+        long deadline = deadlines[page][offset];
+        int level = Math.min((63 - Long.numberOfLeadingZeros(deadline ^ currentTick)) / BUCKET_SHIFT, LEVELS - 1);
+        int bucket = level * BUCKETS + (int) ((deadline >>> (BUCKET_SHIFT * level)) & BUCKET_MASK);
+        int head = heads[bucket];
+        nexts[page][offset] = head;
+        previous[page][offset] = 0;
+        if (head != 0) {
+            previous[(head - 1) >>> PAGE_SHIFT][(head - 1) & PAGE_MASK] = id + 1;
+        }
+        heads[bucket] = id + 1;
+        buckets[page][offset] = bucket + 1;
+    }
+
+    private void unlink(int id) {
+        int page = id >>> PAGE_SHIFT;
+        int offset = id & PAGE_MASK;
+        int next = nexts[page][offset];
+        int prev = previous[page][offset];
+        if (prev == 0) {
+            heads[buckets[page][offset] - 1] = next;
+        } else {
+            nexts[(prev - 1) >>> PAGE_SHIFT][(prev - 1) & PAGE_MASK] = next;
+        }
+        if (next != 0) {
+            previous[(next - 1) >>> PAGE_SHIFT][(next - 1) & PAGE_MASK] = prev;
+        }
+        buckets[page][offset] = 0;
+    }
+}